@@ -0,0 +1,81 @@
+package com.sellerscope.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MD5-хэши фото и описания товара так же, как их считает {@link CardResponseReader} для
+ * {@link CardResponseReader.Card#photoHash()} и {@link CardResponseReader.Card#descriptionHash()}:
+ * ссылки на фото подаются в дайджест по одной через запятую, описание — в UTF-8, результат в hex.
+ * Данные берутся из товаров записанного ответа {@code cards-detail-50.json}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentHashBenchmark {
+
+    private static final byte[] PHOTO_SEPARATOR = {','};
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final List<List<String>> photos = new ArrayList<>();
+    private final List<String> descriptions = new ArrayList<>();
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        JsonNode products = new ObjectMapper()
+                .readTree(WbProductParserBenchmark.readPayload("cards-detail-50.json"))
+                .at("/data/products");
+        for (JsonNode product : products) {
+            List<String> urls = new ArrayList<>();
+            product.get("photos").forEach(url -> urls.add(url.asText()));
+            photos.add(urls);
+            descriptions.add(product.get("description").asText());
+        }
+    }
+
+    @Benchmark
+    public String photoHash() {
+        MessageDigest digest = md5();
+        boolean first = true;
+        for (String url : photos.get(nextIndex())) {
+            if (!first) {
+                digest.update(PHOTO_SEPARATOR);
+            }
+            first = false;
+            digest.update(url.getBytes(StandardCharsets.UTF_8));
+        }
+        return HEX.formatHex(digest.digest());
+    }
+
+    @Benchmark
+    public String descriptionHash() {
+        return HEX.formatHex(md5().digest(descriptions.get(nextIndex()).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private int nextIndex() {
+        next = (next + 1) % photos.size();
+        return next;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
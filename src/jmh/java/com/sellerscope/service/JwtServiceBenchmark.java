@@ -0,0 +1,77 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость проверки access-токена на один запрос.
+ * <p>
+ * {@code legacyFilterPath} повторяет прежний путь фильтра: три разбора токена с проверкой HMAC,
+ * каждый раз с новым парсером. {@code parseOnce} — текущий путь через {@link JwtService#parse}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    static final String SECRET = "0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private JwtService jwtService;
+    private Key key;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = jwtService();
+        key = Keys.hmacShaKeyFor(SECRET.getBytes());
+        user = User.builder().id(1L).email("seller@example.com").password("hash").build();
+        token = jwtService.generateAccessToken(user);
+    }
+
+    @Benchmark
+    public boolean legacyFilterPath() {
+        String email = legacyClaims().getSubject();
+        boolean subjectMatches = legacyClaims().getSubject().equals(user.getUsername());
+        boolean notExpired = legacyClaims().getExpiration().after(new java.util.Date());
+        return email != null && subjectMatches && notExpired;
+    }
+
+    @Benchmark
+    public boolean parseOnce() {
+        ParsedToken parsed = jwtService.parse(token);
+        return jwtService.isAccessTokenValid(parsed, user);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtService.generateAccessToken(user);
+    }
+
+    private Claims legacyClaims() {
+        return Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    static JwtService jwtService() {
+        JwtService service = new JwtService();
+        ReflectionTestUtils.setField(service, "secretKey", SECRET);
+        ReflectionTestUtils.setField(service, "accessTokenExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(service, "refreshTokenExpiration", 3_600_000L);
+        service.init();
+        return service;
+    }
+}
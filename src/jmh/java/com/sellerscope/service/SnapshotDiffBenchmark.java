@@ -0,0 +1,68 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение нового снапшота с последним сохранённым ({@link WbProductParserService#compareWithSnapshot}),
+ * на котором построен {@link WbProductParserService#compareWithLastSnapshot}:
+ * товар без изменений, товар с изменением всех полей и новый товар.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotDiffBenchmark {
+
+    private WbProductParserService service;
+    private ProductSnapshot last;
+    private ProductSnapshot unchanged;
+    private ProductSnapshot allChanged;
+
+    @Setup
+    public void setUp() {
+        service = new WbProductParserService(null, null, null, null, null);
+        last = snapshot(new BigDecimal("1299.00"), 1520, 4.7, "3f2b6c1d9a8e7f60a1b2c3d4e5f60718", "9a8b7c6d5e4f30211f2e3d4c5b6a7980");
+        unchanged = snapshot(new BigDecimal("1299.00"), 1520, 4.7, "3f2b6c1d9a8e7f60a1b2c3d4e5f60718", "9a8b7c6d5e4f30211f2e3d4c5b6a7980");
+        allChanged = snapshot(new BigDecimal("1199.00"), 1521, 4.8, "0718e5f63f2b6c1d9a8e7f60a1b2c3d4", "79809a8b7c6d5e4f30211f2e3d4c5b6a");
+    }
+
+    @Benchmark
+    public boolean unchanged() {
+        unchanged.getChangedFields().clear();
+        return service.compareWithSnapshot(unchanged, last);
+    }
+
+    @Benchmark
+    public boolean allFieldsChanged() {
+        allChanged.getChangedFields().clear();
+        return service.compareWithSnapshot(allChanged, last);
+    }
+
+    @Benchmark
+    public boolean newProduct() {
+        unchanged.getChangedFields().clear();
+        return service.compareWithSnapshot(unchanged, null);
+    }
+
+    private static ProductSnapshot snapshot(BigDecimal price, int reviews, double rating, String photoHash, String descriptionHash) {
+        return ProductSnapshot.builder()
+                .productId("100007919")
+                .name("Кроссовки Nike Air 42")
+                .price(price)
+                .reviewCount(reviews)
+                .rating(rating)
+                .photoHash(photoHash)
+                .descriptionHash(descriptionHash)
+                .createdAt(LocalDateTime.now())
+                .changedFields(new HashSet<>())
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package com.sellerscope.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор ответа {@code cards/detail} в снапшоты: один товар и пакет из 50 товаров.
+ * Ответы лежат в {@code src/jmh/resources/payloads} и повторяют структуру ответа Wildberries
+ * (размеры, склады, фото, описание).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WbProductParserBenchmark {
+
+    @Param({"cards-detail-1.json", "cards-detail-50.json"})
+    public String payload;
+
+    private WbProductParserService service;
+    private String json;
+    private List<String> articles;
+
+    @Setup
+    public void setUp() throws IOException {
+        service = new WbProductParserService(null, null, null, null, null);
+        json = readPayload(payload);
+        articles = new ArrayList<>();
+        for (JsonNode product : new ObjectMapper().readTree(json).at("/data/products")) {
+            articles.add(product.get("id").asText());
+        }
+    }
+
+    @Benchmark
+    public BatchFetchResult parseProducts() throws Exception {
+        return service.parseProducts(json, articles);
+    }
+
+    static String readPayload(String name) throws IOException {
+        try (InputStream in = WbProductParserBenchmark.class.getResourceAsStream("/payloads/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Payload not found: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.sellerscope.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * HTTP-клиент для API Wildberries: Apache HttpClient 5 с пулом keep-alive соединений.
+ * <p>
+ * Таймауты и размер пула задаются в {@code wb.http.*}. Ответы в gzip/deflate запрашиваются
+ * и распаковываются клиентом. Состояние пула публикуется метриками
+ * {@code httpcomponents.httpclient.pool.*} с тегом {@code httpclient=wb}.
+ */
+@Configuration
+public class WbHttpClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient wbHttpClient(
+            @Value("${wb.http.connect-timeout:2s}") Duration connectTimeout,
+            @Value("${wb.http.read-timeout:10s}") Duration readTimeout,
+            @Value("${wb.http.connection-request-timeout:2s}") Duration connectionRequestTimeout,
+            @Value("${wb.http.max-connections:64}") int maxConnections,
+            @Value("${wb.http.idle-timeout:30s}") Duration idleTimeout,
+            @Value("${wb.http.time-to-live:5m}") Duration timeToLive,
+            MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                // все запросы идут на один хост Wildberries
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(timeout(connectTimeout))
+                        .setSocketTimeout(timeout(readTimeout))
+                        .setTimeToLive(TimeValue.of(timeToLive))
+                        .setValidateAfterInactivity(TimeValue.of(idleTimeout))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "wb").bindTo(meterRegistry);
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(timeout(connectionRequestTimeout))
+                        .setResponseTimeout(timeout(readTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleTimeout))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate wbRestTemplate(@Qualifier("wbHttpClient") CloseableHttpClient wbHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(wbHttpClient));
+    }
+
+    private static Timeout timeout(Duration duration) {
+        return Timeout.of(duration);
+    }
+}
@@ -1,85 +1,230 @@
 package com.sellerscope.controller;
 
+import com.sellerscope.dto.BulkTrackRequest;
+import com.sellerscope.dto.BulkTrackResult;
+import com.sellerscope.dto.TrendPoint;
 import com.sellerscope.entity.ProductSnapshot;
-import com.sellerscope.entity.TrackedProduct;
+import com.sellerscope.entity.RollupGranularity;
 import com.sellerscope.entity.User;
-import com.sellerscope.repository.ProductSnapshotRepository;
-import com.sellerscope.repository.TrackedProductRepository;
+import com.sellerscope.service.BulkTrackingService;
+import com.sellerscope.service.ProductChangeNotifier;
+import com.sellerscope.service.SnapshotHistoryService;
+import com.sellerscope.service.SnapshotRollupService;
 import com.sellerscope.service.TrackingService;
 import com.sellerscope.service.WbProductParserService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
-import java.time.LocalDateTime;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/track")
 public class TrackingController {
 
+    // Заголовки с курсором следующей страницы: значения для параметров before и beforeId
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Before";
+    public static final String NEXT_CURSOR_ID_HEADER = "X-Next-Before-Id";
+    public static final String NDJSON = "application/x-ndjson";
+
     private final WbProductParserService wbService;
-    private final ProductSnapshotRepository repository;
+    private final SnapshotHistoryService historyService;
     private final TrackingService trackingService;
+    private final SnapshotRollupService rollupService;
+    private final BulkTrackingService bulkTrackingService;
+    private final ProductChangeNotifier changeNotifier;
 
     public TrackingController(
             WbProductParserService wbService,
-            ProductSnapshotRepository repository,
-            TrackingService trackingService
+            SnapshotHistoryService historyService,
+            TrackingService trackingService,
+            SnapshotRollupService rollupService,
+            BulkTrackingService bulkTrackingService,
+            ProductChangeNotifier changeNotifier
     ) {
         this.wbService = wbService;
-        this.repository = repository;
+        this.historyService = historyService;
         this.trackingService = trackingService;
+        this.rollupService = rollupService;
+        this.bulkTrackingService = bulkTrackingService;
+        this.changeNotifier = changeNotifier;
     }
 
     // POST /track/{article} — отслеживает товар по артикулу
+    // Запрос к Wildberries выполняется асинхронно: поток сервлета освобождается до получения карточки
     @PostMapping("/{article}")
-    public ResponseEntity<ProductSnapshot> trackProduct(@PathVariable String article) {
+    public CompletableFuture<ResponseEntity<ProductSnapshot>> trackProduct(@PathVariable String article) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (!(auth.getPrincipal() instanceof User user)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+        }
+        try {
+            return trackingService.trackProductAsync(user, article)
+                    .handle((snapshot, error) -> error == null ? ResponseEntity.ok(snapshot) : trackingError(error));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(trackingError(e));
+        }
+    }
+
+    // POST /track/bulk — отслеживает список артикулов {"articles": [...]}, статус по каждому артикулу
+    // Отсутствующие снапшоты запрашиваются у Wildberries пакетами, записи сохраняются пакетами
+    @PostMapping("/bulk")
+    public ResponseEntity<List<BulkTrackResult>> trackProducts(@RequestBody BulkTrackRequest request) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (!(auth.getPrincipal() instanceof User user)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         try {
-            ProductSnapshot snapshot = trackingService.trackProduct(user, article);
-            return ResponseEntity.ok(snapshot);
-        } catch (IllegalStateException e) {
+            return ResponseEntity.ok(bulkTrackingService.trackProducts(user, request.getArticles()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // POST /track/bulk/untrack — прекращает отслеживание списка артикулов, статус по каждому артикулу
+    @PostMapping("/bulk/untrack")
+    public ResponseEntity<List<BulkTrackResult>> untrackProducts(@RequestBody BulkTrackRequest request) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (!(auth.getPrincipal() instanceof User user)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.ok(bulkTrackingService.untrackProducts(user, request.getArticles()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static ResponseEntity<ProductSnapshot> trackingError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IllegalStateException) {
             return ResponseEntity.status(HttpStatus.CONFLICT).build();
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
     }
 
     // GET /track/history/{article} — получает историю сохранения снепшотов(даже те, которые не изменились)
+    // С параметрами before (и beforeId) и/или limit возвращает страницу истории (keyset-пагинация)
     @GetMapping("/history/{article}")
-    public ResponseEntity<List<ProductSnapshot>> getHistory(@PathVariable String article) {
-        List<ProductSnapshot> history = wbService.getSnapshotHistory(article);
-        return ResponseEntity.ok(history);
+    public ResponseEntity<List<ProductSnapshot>> getHistory(
+            @PathVariable String article,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Integer limit) {
+        if (before == null && limit == null) {
+            return ResponseEntity.ok(wbService.getSnapshotHistory(article));
+        }
+        return page(historyService.getHistoryPage(article, before, beforeId, limit), limit);
+    }
+
+    // GET /track/history/{article}/export — выгружает всю историю потоком в формате NDJSON
+    @GetMapping(value = "/history/{article}/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportHistory(@PathVariable String article) {
+        StreamingResponseBody body = out -> historyService.exportHistory(article, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
     }
 
     // GET /track/changes/{article} — получает снепшоты, где были изменения продукта
+    // С параметрами before (и beforeId) и/или limit возвращает страницу изменений (keyset-пагинация)
     @GetMapping("/changes/{article}")
-    public ResponseEntity<List<ProductSnapshot>> getChanges(@PathVariable String article) {
-        List<ProductSnapshot> changes = repository.findByProductIdOrderByCreatedAtDesc(article).stream()
-                .filter(ProductSnapshot::isChanged)
-                .toList();
-
-        return ResponseEntity.ok(changes);
+    public ResponseEntity<List<ProductSnapshot>> getChanges(
+            @PathVariable String article,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Integer limit) {
+        if (before == null && limit == null) {
+            return ResponseEntity.ok(historyService.getChanges(article));
+        }
+        return page(historyService.getChangesPage(article, before, beforeId, limit), limit);
     }
 
     // GET /track/changed-fields/{article} - получает только измененные поля в карточке, где были изменения
     @GetMapping("/changed-fields/{article}")
-    public ResponseEntity<List<Map<String, Object>>> getChangedFields(@PathVariable String article) {
-        List<Map<String, Object>> result = repository.findByProductIdOrderByCreatedAtDesc(article).stream()
-                .filter(ProductSnapshot::isChanged)
+    public ResponseEntity<List<Map<String, Object>>> getChangedFields(
+            @PathVariable String article,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Integer limit) {
+        boolean paged = before != null || limit != null;
+        List<ProductSnapshot> changes = paged
+                ? historyService.getChangesPage(article, before, beforeId, limit)
+                : historyService.getChanges(article);
+        List<Map<String, Object>> result = changes.stream()
                 .map(snapshot -> Map.of(
                         "createdAt", snapshot.getCreatedAt(),
                         "changedFields", snapshot.getChangedFields()
                 ))
                 .toList();
 
-        return ResponseEntity.ok(result);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (paged) {
+            nextCursor(response, changes, limit);
+        }
+        return response.body(result);
+    }
+
+    // GET /track/stream — поток SSE: событие change со снапшотом при каждом изменении отслеживаемого товара
+    // Параметр articles ограничивает поток этими артикулами; заменяет периодический опрос /track/changes
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChanges(@RequestParam(required = false) Set<String> articles) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (!(auth.getPrincipal() instanceof User user)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.ok(changeNotifier.open(user, articles == null ? Set.of() : articles));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+    }
+
+    // GET /track/trend/{article}?granularity=hour|day|week — тренд цены, рейтинга и отзывов по агрегатам истории
+    // from и to ограничивают период, buckets — число последних интервалов
+    @GetMapping("/trend/{article}")
+    public ResponseEntity<List<TrendPoint>> getTrend(
+            @PathVariable String article,
+            @RequestParam(defaultValue = "day") String granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer buckets) {
+        RollupGranularity step;
+        try {
+            step = RollupGranularity.parse(granularity);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(rollupService.getTrend(article, step, from, to, buckets));
+    }
+
+    private static ResponseEntity<List<ProductSnapshot>> page(List<ProductSnapshot> snapshots, Integer limit) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        nextCursor(response, snapshots, limit);
+        return response.body(snapshots);
+    }
+
+    // Курсор отдаётся, только если страница заполнена целиком — значит, дальше могут быть ещё записи.
+    // id последнего снапшота отдаётся, если он есть (в режиме delta у восстановленных снапшотов его нет)
+    private static void nextCursor(ResponseEntity.BodyBuilder response, List<ProductSnapshot> snapshots, Integer limit) {
+        if (snapshots.isEmpty() || snapshots.size() < SnapshotHistoryService.pageSize(limit)) {
+            return;
+        }
+        ProductSnapshot last = snapshots.get(snapshots.size() - 1);
+        response.header(NEXT_CURSOR_HEADER, last.getCreatedAt().toString());
+        if (last.getId() != null) {
+            response.header(NEXT_CURSOR_ID_HEADER, last.getId().toString());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package com.sellerscope.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Результат пакетного добавления или удаления из отслеживания по одному артикулу.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkTrackResult {
+    private String article;
+    private Status status;
+
+    public enum Status {
+        /** Товар добавлен в отслеживание */
+        TRACKED,
+        /** Пользователь уже отслеживает товар */
+        ALREADY_TRACKED,
+        /** Товар удалён из отслеживания */
+        UNTRACKED,
+        /** Пользователь не отслеживал товар */
+        NOT_TRACKED,
+        /** Wildberries не вернул карточку товара */
+        NOT_FOUND,
+        /** Карточку не удалось получить или сохранить, запрос можно повторить */
+        FAILED,
+        /** Артикул не является числом */
+        INVALID
+    }
+}
@@ -0,0 +1,24 @@
+package com.sellerscope.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendPoint {
+    private LocalDateTime bucketStart;
+    private BigDecimal openPrice;
+    private BigDecimal closePrice;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private double averageRating;
+    private int reviewDelta;
+    private int samples;
+}
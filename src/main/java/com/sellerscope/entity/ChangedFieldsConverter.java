@@ -0,0 +1,48 @@
+package com.sellerscope.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Хранит набор изменённых полей снапшота битовой маской в одной колонке {@code smallint}.
+ * <p>
+ * Номер бита — позиция поля в {@link #FIELDS}; порядок менять нельзя, только дописывать в конец.
+ */
+@Converter
+public class ChangedFieldsConverter implements AttributeConverter<Set<String>, Short> {
+
+    static final List<String> FIELDS = List.of("price", "reviewCount", "rating", "photos", "description", "new");
+
+    @Override
+    public Short convertToDatabaseColumn(Set<String> fields) {
+        int mask = 0;
+        if (fields != null) {
+            for (String field : fields) {
+                int bit = FIELDS.indexOf(field);
+                if (bit < 0) {
+                    throw new IllegalArgumentException("Unknown changed field: " + field);
+                }
+                mask |= 1 << bit;
+            }
+        }
+        return (short) mask;
+    }
+
+    @Override
+    public Set<String> convertToEntityAttribute(Short mask) {
+        Set<String> fields = new LinkedHashSet<>();
+        if (mask == null) {
+            return fields;
+        }
+        for (int bit = 0; bit < FIELDS.size(); bit++) {
+            if ((mask & (1 << bit)) != 0) {
+                fields.add(FIELDS.get(bit));
+            }
+        }
+        return fields;
+    }
+}
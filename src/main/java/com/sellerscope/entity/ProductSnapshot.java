@@ -12,12 +12,18 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@Table(indexes = {
+        @Index(name = "idx_product_snapshot_product_created", columnList = "product_id, created_at DESC")
+})
 public class ProductSnapshot {
 
+    // Идентификаторы из последовательности блоками по 50: IDENTITY отключает пакетную вставку в Hibernate
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_snapshot_seq")
+    @SequenceGenerator(name = "product_snapshot_seq", sequenceName = "product_snapshot_seq", allocationSize = 50)
     private Long id;
 
+    @Column(name = "product_id")
     private String productId;
 
     private String name;
@@ -28,12 +34,12 @@ public class ProductSnapshot {
     private String photoHash;
     private String descriptionHash;
 
+    @Column(name = "created_at")
     private LocalDateTime createdAt;
     private boolean changed;
 
     @Builder.Default
-    @ElementCollection(fetch = FetchType.EAGER)
-    @CollectionTable(name = "snapshot_changes", joinColumns = @JoinColumn(name = "snapshot_id"))
-    @Column(name = "field")
+    @Convert(converter = ChangedFieldsConverter.class)
+    @Column(name = "changed_mask", nullable = false)
     private Set<String> changedFields = new HashSet<>();
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.sellerscope.entity;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+/**
+ * Шаг агрегатов истории товара ({@link SnapshotRollup}).
+ */
+public enum RollupGranularity {
+    HOUR,
+    DAY,
+    /** Неделя с понедельника. */
+    WEEK;
+
+    /**
+     * @return начало интервала, в который попадает момент {@code time}
+     */
+    public LocalDateTime bucketStart(LocalDateTime time) {
+        return switch (this) {
+            case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> time.truncatedTo(ChronoUnit.DAYS);
+            case WEEK -> time.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        };
+    }
+
+    /**
+     * @param value {@code hour}, {@code day} или {@code week} без учёта регистра
+     * @throws IllegalArgumentException если шаг неизвестен
+     */
+    public static RollupGranularity parse(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown granularity: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.sellerscope.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Изменение снапшота относительно предыдущего состояния товара (режим хранения {@code delta}).
+ * <p>
+ * Заполнены только колонки изменившихся полей, остальные — {@code null}.
+ * Полный снапшот восстанавливается применением дельт к ближайшему предшествующему
+ * ключевому снапшоту ({@link ProductSnapshot}).
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "snapshot_deltas", indexes = {
+        @Index(name = "idx_snapshot_delta_product_created", columnList = "product_id, created_at")
+})
+public class SnapshotDelta {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "snapshot_delta_seq")
+    @SequenceGenerator(name = "snapshot_delta_seq", sequenceName = "snapshot_delta_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private String productId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    private boolean changed;
+
+    private BigDecimal price;
+    private Integer reviewCount;
+    private Double rating;
+    private String photoHash;
+    private String descriptionHash;
+
+    /**
+     * Создаёт дельту из снапшота: переносит только поля из {@code changedFields}.
+     */
+    public static SnapshotDelta of(ProductSnapshot snapshot) {
+        Set<String> fields = snapshot.getChangedFields();
+        return SnapshotDelta.builder()
+                .productId(snapshot.getProductId())
+                .createdAt(snapshot.getCreatedAt())
+                .changed(snapshot.isChanged())
+                .price(fields.contains("price") ? snapshot.getPrice() : null)
+                .reviewCount(fields.contains("reviewCount") ? snapshot.getReviewCount() : null)
+                .rating(fields.contains("rating") ? snapshot.getRating() : null)
+                .photoHash(fields.contains("photos") ? snapshot.getPhotoHash() : null)
+                .descriptionHash(fields.contains("description") ? snapshot.getDescriptionHash() : null)
+                .build();
+    }
+
+    /**
+     * @return имена изменившихся полей в терминах {@link ProductSnapshot#getChangedFields()}
+     */
+    public Set<String> changedFields() {
+        Set<String> fields = new HashSet<>();
+        if (price != null) {
+            fields.add("price");
+        }
+        if (reviewCount != null) {
+            fields.add("reviewCount");
+        }
+        if (rating != null) {
+            fields.add("rating");
+        }
+        if (photoHash != null) {
+            fields.add("photos");
+        }
+        if (descriptionHash != null) {
+            fields.add("description");
+        }
+        return fields;
+    }
+
+    /**
+     * Применяет дельту к предыдущему состоянию товара.
+     *
+     * @param previous полный снапшот, предшествующий дельте
+     * @return новый полный снапшот без id
+     */
+    public ProductSnapshot applyTo(ProductSnapshot previous) {
+        return ProductSnapshot.builder()
+                .productId(productId)
+                .name(previous.getName())
+                .price(price != null ? price : previous.getPrice())
+                .reviewCount(reviewCount != null ? reviewCount : previous.getReviewCount())
+                .rating(rating != null ? rating : previous.getRating())
+                .photoHash(photoHash != null ? photoHash : previous.getPhotoHash())
+                .descriptionHash(descriptionHash != null ? descriptionHash : previous.getDescriptionHash())
+                .createdAt(createdAt)
+                .changed(changed)
+                .changedFields(changedFields())
+                .build();
+    }
+}
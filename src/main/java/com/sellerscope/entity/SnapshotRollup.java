@@ -0,0 +1,106 @@
+package com.sellerscope.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Агрегат сохранённых снапшотов товара за час, день или неделю.
+ * <p>
+ * Снапшоты сохраняются только при изменении, поэтому между ними цена и число отзывов не меняются:
+ * интервал открывается значениями закрытия предыдущего интервала, а если его нет — первым снапшотом.
+ * Средний рейтинг считается по снапшотам интервала.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "snapshot_rollups", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_snapshot_rollup_bucket", columnNames = {"product_id", "granularity", "bucket_start"})
+})
+public class SnapshotRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "snapshot_rollup_seq")
+    @SequenceGenerator(name = "snapshot_rollup_seq", sequenceName = "snapshot_rollup_seq", allocationSize = 50)
+    private Long id;
+
+    // Один интервал обновляют планировщик и добавление товара в отслеживание: конкурирующее
+    // обновление отклоняется, а не затирает счётчики
+    @Version
+    private long version;
+
+    @Column(name = "product_id", nullable = false)
+    private String productId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private RollupGranularity granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    private BigDecimal openPrice;
+    private BigDecimal closePrice;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+
+    private int openReviewCount;
+    private int closeReviewCount;
+
+    private double ratingSum;
+    private int samples;
+
+    // Время последнего учтённого снапшота: более ранние снапшоты не сдвигают закрытие
+    private LocalDateTime closedAt;
+
+    /**
+     * Открывает интервал, в который попадает снапшот.
+     *
+     * @param previous агрегат предыдущего интервала или {@code null}, если это первый интервал товара
+     */
+    public static SnapshotRollup open(RollupGranularity granularity, ProductSnapshot snapshot, SnapshotRollup previous) {
+        BigDecimal openPrice = previous != null ? previous.getClosePrice() : snapshot.getPrice();
+        SnapshotRollup rollup = SnapshotRollup.builder()
+                .productId(snapshot.getProductId())
+                .granularity(granularity)
+                .bucketStart(granularity.bucketStart(snapshot.getCreatedAt()))
+                .openPrice(openPrice)
+                .closePrice(openPrice)
+                .minPrice(openPrice)
+                .maxPrice(openPrice)
+                .openReviewCount(previous != null ? previous.getCloseReviewCount() : snapshot.getReviewCount())
+                .closeReviewCount(previous != null ? previous.getCloseReviewCount() : snapshot.getReviewCount())
+                .closedAt(snapshot.getCreatedAt())
+                .build();
+        rollup.add(snapshot);
+        return rollup;
+    }
+
+    /**
+     * Учитывает снапшот того же интервала.
+     */
+    public void add(ProductSnapshot snapshot) {
+        BigDecimal price = snapshot.getPrice();
+        minPrice = minPrice.compareTo(price) <= 0 ? minPrice : price;
+        maxPrice = maxPrice.compareTo(price) >= 0 ? maxPrice : price;
+        if (!snapshot.getCreatedAt().isBefore(closedAt)) {
+            closePrice = price;
+            closeReviewCount = snapshot.getReviewCount();
+            closedAt = snapshot.getCreatedAt();
+        }
+        ratingSum += snapshot.getRating();
+        samples++;
+    }
+
+    public double averageRating() {
+        return samples == 0 ? 0 : ratingSum / samples;
+    }
+
+    public int reviewDelta() {
+        return closeReviewCount - openReviewCount;
+    }
+}
@@ -15,8 +15,10 @@ import java.time.LocalDateTime;
 })
 public class TrackedProduct {
 
+    // Идентификаторы из последовательности блоками по 50, чтобы пакетное добавление вставлялось пакетами JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tracked_products_seq")
+    @SequenceGenerator(name = "tracked_products_seq", sequenceName = "tracked_products_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(optional = false)
@@ -1,10 +1,93 @@
 package com.sellerscope.repository;
 
 import com.sellerscope.entity.ProductSnapshot;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface ProductSnapshotRepository extends JpaRepository<ProductSnapshot, Long> {
     List<ProductSnapshot> findByProductIdOrderByCreatedAtDesc(String productId);
-}
\ No newline at end of file
+
+    Optional<ProductSnapshot> findFirstByProductIdOrderByCreatedAtDesc(String productId);
+
+    /**
+     * Последние снапшоты сразу для нескольких артикулов одним запросом.
+     * Использует индекс {@code (product_id, created_at desc)}.
+     */
+    @Query("SELECT s FROM ProductSnapshot s WHERE s.productId IN :productIds AND s.createdAt = " +
+            "(SELECT MAX(l.createdAt) FROM ProductSnapshot l WHERE l.productId = s.productId)")
+    List<ProductSnapshot> findLatestByProductIdIn(@Param("productIds") Collection<String> productIds);
+
+    // Keyset-пагинация истории: первая страница и страницы после курсора createdAt
+    List<ProductSnapshot> findByProductIdOrderByCreatedAtDesc(String productId, Limit limit);
+
+    List<ProductSnapshot> findByProductIdAndCreatedAtBeforeOrderByCreatedAtDesc(String productId, LocalDateTime before, Limit limit);
+
+    // Keyset-пагинация по составному курсору (createdAt, id): снапшоты одного пакета сохраняются
+    // с одинаковым createdAt, и граница страницы внутри такой группы не должна пропускать её остаток
+    List<ProductSnapshot> findByProductIdOrderByCreatedAtDescIdDesc(String productId, Limit limit);
+
+    @Query("SELECT s FROM ProductSnapshot s WHERE s.productId = :productId AND (s.createdAt < :before " +
+            "OR (s.createdAt = :before AND s.id < :beforeId)) ORDER BY s.createdAt DESC, s.id DESC")
+    List<ProductSnapshot> findPageBefore(@Param("productId") String productId, @Param("before") LocalDateTime before,
+                                         @Param("beforeId") long beforeId, Limit limit);
+
+    List<ProductSnapshot> findByProductIdAndChangedTrueOrderByCreatedAtDescIdDesc(String productId, Limit limit);
+
+    @Query("SELECT s FROM ProductSnapshot s WHERE s.productId = :productId AND s.changed = true AND (s.createdAt < :before " +
+            "OR (s.createdAt = :before AND s.id < :beforeId)) ORDER BY s.createdAt DESC, s.id DESC")
+    List<ProductSnapshot> findChangesPageBefore(@Param("productId") String productId, @Param("before") LocalDateTime before,
+                                                @Param("beforeId") long beforeId, Limit limit);
+
+    // То же только для снапшотов с изменениями, фильтр changed = true выполняется в БД
+    List<ProductSnapshot> findByProductIdAndChangedTrueOrderByCreatedAtDesc(String productId);
+
+    List<ProductSnapshot> findByProductIdAndChangedTrueOrderByCreatedAtDesc(String productId, Limit limit);
+
+    List<ProductSnapshot> findByProductIdAndChangedTrueAndCreatedAtBeforeOrderByCreatedAtDesc(String productId, LocalDateTime before, Limit limit);
+
+    // Ключевые снапшоты для восстановления истории в режиме хранения delta
+    Optional<ProductSnapshot> findFirstByProductIdAndCreatedAtLessThanEqualOrderByCreatedAtDesc(String productId, LocalDateTime createdAt);
+
+    List<ProductSnapshot> findByProductIdAndCreatedAtBetweenOrderByCreatedAtAsc(String productId, LocalDateTime from, LocalDateTime to);
+
+    // Перенос холодной истории в архив
+    Optional<ProductSnapshot> findFirstByProductIdOrderByCreatedAtAsc(String productId);
+
+    // Артикулы, у которых раньше before есть снапшот, не являющийся последним
+    @Query("SELECT DISTINCT s.productId FROM ProductSnapshot s WHERE s.createdAt < :before"
+            + " AND s.createdAt < (SELECT MAX(l.createdAt) FROM ProductSnapshot l WHERE l.productId = s.productId)")
+    List<String> findProductIdsWithSnapshotsBeforeLatest(@Param("before") LocalDateTime before);
+
+    // Артикулы, у которых есть снапшот раньше последнего ключевого не позже before (режим delta)
+    @Query("SELECT DISTINCT s.productId FROM ProductSnapshot s WHERE s.createdAt < (SELECT MAX(k.createdAt)"
+            + " FROM ProductSnapshot k WHERE k.productId = s.productId AND k.createdAt <= :before)")
+    List<String> findProductIdsWithSnapshotsBeforeKeyframe(@Param("before") LocalDateTime before);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ProductSnapshot s WHERE s.productId = :productId AND s.createdAt < :before")
+    int deleteByProductIdAndCreatedAtBefore(@Param("productId") String productId, @Param("before") LocalDateTime before);
+
+    /**
+     * Потоковое чтение всей истории артикула. Вызывать внутри транзакции и закрывать поток.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT s FROM ProductSnapshot s WHERE s.productId = :productId ORDER BY s.createdAt DESC")
+    Stream<ProductSnapshot> streamByProductId(@Param("productId") String productId);
+}
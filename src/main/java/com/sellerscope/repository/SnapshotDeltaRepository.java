@@ -0,0 +1,43 @@
+package com.sellerscope.repository;
+
+import com.sellerscope.entity.SnapshotDelta;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface SnapshotDeltaRepository extends JpaRepository<SnapshotDelta, Long> {
+
+    List<SnapshotDelta> findByProductIdAndCreatedAtBetweenOrderByCreatedAtAsc(String productId, LocalDateTime from, LocalDateTime to);
+
+    List<SnapshotDelta> findByProductIdOrderByCreatedAtDesc(String productId, Limit limit);
+
+    List<SnapshotDelta> findByProductIdAndCreatedAtBeforeOrderByCreatedAtDesc(String productId, LocalDateTime before, Limit limit);
+
+    List<SnapshotDelta> findByProductIdAndChangedTrueOrderByCreatedAtDesc(String productId, Limit limit);
+
+    List<SnapshotDelta> findByProductIdAndChangedTrueAndCreatedAtBeforeOrderByCreatedAtDesc(String productId, LocalDateTime before, Limit limit);
+
+    // Перенос холодной истории в архив
+    // Артикулы, у которых есть дельта раньше последнего ключевого снапшота не позже before
+    @Query("SELECT DISTINCT d.productId FROM SnapshotDelta d WHERE d.createdAt < (SELECT MAX(k.createdAt)"
+            + " FROM ProductSnapshot k WHERE k.productId = d.productId AND k.createdAt <= :before)")
+    List<String> findProductIdsWithDeltasBeforeKeyframe(@Param("before") LocalDateTime before);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM SnapshotDelta d WHERE d.productId = :productId AND d.createdAt < :before")
+    int deleteByProductIdAndCreatedAtBefore(@Param("productId") String productId, @Param("before") LocalDateTime before);
+
+    /**
+     * Дельты, записанные после последнего ключевого снапшота каждого из артикулов, по возрастанию времени.
+     */
+    @Query("SELECT d FROM SnapshotDelta d WHERE d.productId IN :productIds AND d.createdAt > " +
+            "(SELECT MAX(k.createdAt) FROM ProductSnapshot k WHERE k.productId = d.productId) " +
+            "ORDER BY d.createdAt ASC")
+    List<SnapshotDelta> findSinceLatestKeyframe(@Param("productIds") Collection<String> productIds);
+}
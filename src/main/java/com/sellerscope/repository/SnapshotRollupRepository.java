@@ -0,0 +1,26 @@
+package com.sellerscope.repository;
+
+import com.sellerscope.entity.RollupGranularity;
+import com.sellerscope.entity.SnapshotRollup;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface SnapshotRollupRepository extends JpaRepository<SnapshotRollup, Long> {
+
+    /**
+     * Последние интервалы каждого шага для набора артикулов одним запросом.
+     * Использует уникальный индекс {@code (product_id, granularity, bucket_start)}.
+     */
+    @Query("SELECT r FROM SnapshotRollup r WHERE r.productId IN :productIds AND r.bucketStart = " +
+            "(SELECT MAX(l.bucketStart) FROM SnapshotRollup l WHERE l.productId = r.productId AND l.granularity = r.granularity)")
+    List<SnapshotRollup> findLatestByProductIdIn(@Param("productIds") Collection<String> productIds);
+
+    List<SnapshotRollup> findByProductIdAndGranularityAndBucketStartBetweenOrderByBucketStartDesc(
+            String productId, RollupGranularity granularity, LocalDateTime from, LocalDateTime to, Limit limit);
+}
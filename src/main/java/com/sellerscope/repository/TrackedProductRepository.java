@@ -4,7 +4,9 @@ import com.sellerscope.entity.TrackedProduct;
 import com.sellerscope.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface TrackedProductRepository extends JpaRepository<TrackedProduct, Long> {
@@ -12,4 +14,14 @@ public interface TrackedProductRepository extends JpaRepository<TrackedProduct,
     @Query("SELECT DISTINCT t.productId FROM TrackedProduct t")
     List<String> findAllDistinctProductIds();
     boolean existsByUserAndProductId(User user, String productId);
+
+    // Пакетное добавление и удаление: уже отслеживаемые артикулы пользователя одним запросом
+    @Query("SELECT t.productId FROM TrackedProduct t WHERE t.user = :user AND t.productId IN :productIds")
+    List<String> findProductIdsByUserAndProductIdIn(@Param("user") User user,
+                                                    @Param("productIds") Collection<String> productIds);
+
+    List<TrackedProduct> findByUserAndProductIdIn(User user, Collection<String> productIds);
+
+    // Кому из подключённых к потоку изменений пользователей отправлять изменения артикулов
+    List<TrackedProduct> findByUserIdInAndProductIdIn(Collection<Long> userIds, Collection<String> productIds);
 }
@@ -0,0 +1,162 @@
+package com.sellerscope.scheduler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+/**
+ * Движок параллельного обновления артикулов.
+ * <p>
+ * Артикулы разбиваются на чанки по {@code refresh.chunk-size}; каждый чанк обрабатывается
+ * в отдельном виртуальном потоке одним пакетным запросом. Число одновременно
+ * выполняемых чанков ограничено {@code refresh.concurrency}; частоту обращений
+ * к Wildberries для всего кластера ограничивает {@link com.sellerscope.service.UpstreamGuard}.
+ * По завершении цикла движок формирует {@link RefreshCycleReport} и публикует метрики:
+ * <ul>
+ *     <li>{@code refresh.cycle.duration} — длительность цикла;</li>
+ *     <li>{@code refresh.articles} — количество артикулов по исходу ({@code outcome});</li>
+ *     <li>{@code refresh.chunk.latency} — латентность обновления одного чанка.</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class ProductRefreshEngine {
+
+    private final int concurrency;
+    private final int chunkSize;
+    private final Timer cycleTimer;
+    private final Timer chunkTimer;
+    private final Map<RefreshOutcome, Counter> outcomeCounters = new EnumMap<>(RefreshOutcome.class);
+
+    public ProductRefreshEngine(@Value("${refresh.concurrency:32}") int concurrency,
+                                @Value("${refresh.chunk-size:50}") int chunkSize,
+                                MeterRegistry meterRegistry) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("refresh.concurrency must be positive: " + concurrency);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("refresh.chunk-size must be positive: " + chunkSize);
+        }
+        this.concurrency = concurrency;
+        this.chunkSize = chunkSize;
+        this.cycleTimer = Timer.builder("refresh.cycle.duration")
+                .description("Длительность цикла обновления отслеживаемых товаров")
+                .register(meterRegistry);
+        this.chunkTimer = Timer.builder("refresh.chunk.latency")
+                .description("Латентность обновления одного чанка артикулов")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        for (RefreshOutcome outcome : RefreshOutcome.values()) {
+            outcomeCounters.put(outcome, Counter.builder("refresh.articles")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Выполняет задачу обновления для каждого чанка артикулов и дожидается завершения всех задач.
+     * Исключение внутри задачи засчитывается как {@link RefreshOutcome#FAILED} для всего чанка,
+     * артикул без исхода в результате задачи — тоже как {@link RefreshOutcome#FAILED}.
+     *
+     * @param articles  артикулы для обновления
+     * @param chunkTask обновление одного чанка, возвращает исход по каждому артикулу
+     * @return итоги цикла
+     */
+    public RefreshCycleReport run(List<String> articles, Function<List<String>, Map<String, RefreshOutcome>> chunkTask) {
+        long cycleStart = System.nanoTime();
+        int chunkCount = (articles.size() + chunkSize - 1) / chunkSize;
+        long[] latencies = new long[chunkCount];
+        AtomicIntegerArray outcomes = new AtomicIntegerArray(RefreshOutcome.values().length);
+        Semaphore permits = new Semaphore(concurrency);
+        int submitted = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int from = 0; from < articles.size(); from += chunkSize) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Цикл обновления прерван, запущено {} из {} чанков", submitted, chunkCount);
+                    break;
+                }
+                List<String> chunk = articles.subList(from, Math.min(from + chunkSize, articles.size()));
+                int index = submitted++;
+                executor.submit(() -> {
+                    try {
+                        for (RefreshOutcome outcome : refresh(chunk, chunkTask, latencies, index)) {
+                            outcomes.incrementAndGet(outcome.ordinal());
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+
+        Duration duration = Duration.ofNanos(System.nanoTime() - cycleStart);
+        cycleTimer.record(duration);
+        int processed = 0;
+        for (RefreshOutcome outcome : RefreshOutcome.values()) {
+            processed += outcomes.get(outcome.ordinal());
+            outcomeCounters.get(outcome).increment(outcomes.get(outcome.ordinal()));
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, submitted);
+        Arrays.sort(sorted);
+        return new RefreshCycleReport(
+                duration,
+                articles.size(),
+                outcomes.get(RefreshOutcome.UPDATED.ordinal()),
+                outcomes.get(RefreshOutcome.UNCHANGED.ordinal()),
+                outcomes.get(RefreshOutcome.NOT_MODIFIED.ordinal()),
+                outcomes.get(RefreshOutcome.SKIPPED.ordinal()) + articles.size() - processed,
+                outcomes.get(RefreshOutcome.FAILED.ordinal()),
+                percentile(sorted, 0.50),
+                percentile(sorted, 0.95),
+                percentile(sorted, 0.99)
+        );
+    }
+
+    private List<RefreshOutcome> refresh(List<String> chunk,
+                                         Function<List<String>, Map<String, RefreshOutcome>> chunkTask,
+                                         long[] latencies, int index) {
+        long start = System.nanoTime();
+        List<RefreshOutcome> result;
+        try {
+            Map<String, RefreshOutcome> outcomes = chunkTask.apply(chunk);
+            result = chunk.stream()
+                    .map(article -> outcomes.getOrDefault(article, RefreshOutcome.FAILED))
+                    .toList();
+        } catch (Exception e) {
+            log.warn("Ошибка обновления чанка из {} товаров: {}", chunk.size(), e.getMessage());
+            result = Collections.nCopies(chunk.size(), RefreshOutcome.FAILED);
+        }
+        long elapsed = System.nanoTime() - start;
+        latencies[index] = elapsed;
+        chunkTimer.record(Duration.ofNanos(elapsed));
+        return result;
+    }
+
+    private static Duration percentile(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return Duration.ZERO;
+        }
+        int rank = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return Duration.ofNanos(sortedNanos[Math.max(rank, 0)]);
+    }
+}
@@ -1,29 +1,46 @@
 package com.sellerscope.scheduler;
 
 import com.sellerscope.entity.ProductSnapshot;
-import com.sellerscope.repository.ProductSnapshotRepository;
 import com.sellerscope.repository.TrackedProductRepository;
+import com.sellerscope.service.BatchFetchResult;
+import com.sellerscope.service.LatestSnapshotCache;
+import com.sellerscope.service.ProductChangeNotifier;
+import com.sellerscope.service.SnapshotRollupService;
+import com.sellerscope.service.SnapshotStorageService;
 import com.sellerscope.service.WbProductParserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
 
 /**
- * Планировщик для периодического обновления информации о товарах, которые отслеживают пользователи.
+ * Планировщик обновления информации о товарах, которые отслеживают пользователи.
  * <p>
- * Каждые 10 минут:
+ * Артикулы обновляются по адаптивному расписанию {@link RefreshSchedule}:
  * <ul>
- *     <li>Получает список уникальных артикулов отслеживаемых товаров.</li>
- *     <li>Для каждого артикула получает Redis-лок для предотвращения параллельных обновлений.</li>
- *     <li>Обновляет снапшот товара через сервис парсинга.</li>
- *     <li>Сохраняет изменённые снапшоты в базу данных.</li>
- *     <li>Логирует информацию об обновлениях.</li>
+ *     <li>Раз в 10 минут расписание сверяется со списком отслеживаемых артикулов.</li>
+ *     <li>Каждые {@code refresh.tick} мс узел забирает из общего расписания порции наступивших артикулов;
+ *     расписание общее для всех экземпляров, поэтому каждый артикул обновляет один узел. Забранная порция —
+ *     аренда на {@code refresh.claim-lease}: отдельные локи на артикулы не берутся.</li>
+ *     <li>Забранные артикулы параллельно обновляются чанками через {@link ProductRefreshEngine}.</li>
+ *     <li>Запрашивает снапшоты чанка пакетными запросами через асинхронный API сервиса парсинга.</li>
+ *     <li>Сохраняет изменённые снапшоты каждого пакета в базу данных, в кэш последних снапшотов
+ *     и в агрегаты истории, пока запрашивается следующий пакет, и публикует их подписчикам
+ *     потока изменений ({@link ProductChangeNotifier}).</li>
+ *     <li>Назначает следующее обновление каждого артикула по итогам обновления.</li>
+ *     <li>Логирует итоги цикла: длительность, число обновлённых, пропущенных и ошибочных артикулов,
+ *     долю артикулов, ответ по которым совпал с сохранённым без разбора, латентность.</li>
  * </ul>
  */
 @Slf4j
@@ -31,55 +48,221 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ProductUpdateScheduler {
 
-    private final ProductSnapshotRepository productSnapshotRepository;
+    private final SnapshotStorageService snapshotStorageService;
     private final TrackedProductRepository trackedProductRepository;
     private final WbProductParserService wbProductParserService;
-    private final RedissonClient redissonClient;
+    private final ProductRefreshEngine refreshEngine;
+    private final LatestSnapshotCache latestSnapshotCache;
+    private final RefreshSchedule refreshSchedule;
+    private final SnapshotRollupService snapshotRollupService;
+    private final ProductChangeNotifier productChangeNotifier;
+
+    // Максимум артикулов, обновляемых за один тик
+    @Value("${refresh.max-per-tick:5000}")
+    private int maxPerTick = 5000;
+
+    // Артикулов, забираемых из общей очереди за один раз
+    @Value("${refresh.claim-size:500}")
+    private int claimSize = 500;
+
+    /**
+     * Запускается каждые 10 минут (и сразу после старта).
+     * Добавляет в расписание новые отслеживаемые артикулы и удаляет те, что больше не отслеживаются,
+     * вместе с их последними снапшотами в {@link LatestSnapshotCache}.
+     */
+    @Scheduled(fixedRate = 600_000)
+    public void reconcileSchedule() {
+        List<String> distinctArticles = trackedProductRepository.findAllDistinctProductIds();
+        int added = refreshSchedule.reconcile(distinctArticles);
+        int evicted = latestSnapshotCache.retainAll(distinctArticles);
+        log.info("Расписание обновления сверено: отслеживается {} артикулов, добавлено {}, удалено из кэша {}",
+                distinctArticles.size(), added, evicted);
+    }
+
+    /**
+     * Запускается каждые {@code refresh.tick} мс после завершения предыдущего запуска.
+     * Забирает из общего расписания порции наступивших артикулов по {@code refresh.claim-size},
+     * пока они не закончатся или не наберётся {@code refresh.max-per-tick}, и обновляет каждую
+     * через {@link ProductRefreshEngine}. Быстрый узел забирает больше порций, медленный — меньше.
+     * Пока цепь вызовов Wildberries разомкнута, новые порции не забираются.
+     */
+    @Scheduled(fixedDelayString = "${refresh.tick:30000}")
+    public void refreshDueProducts() {
+        int processed = 0;
+        while (processed < maxPerTick) {
+            if (wbProductParserService.isUpstreamCircuitOpen()) {
+                log.warn("Цепь вызовов Wildberries разомкнута, обновление отложено до следующего тика");
+                return;
+            }
+            List<String> claimed = refreshSchedule.claimDue(Math.min(claimSize, maxPerTick - processed));
+            if (claimed.isEmpty()) {
+                return;
+            }
+            processed += claimed.size();
+            log.info("Запущено обновление {} отслеживаемых товаров...", claimed.size());
+
+            RefreshCycleReport report = refreshEngine.run(claimed, this::refreshAndReschedule);
+
+            log.info("Цикл обновления завершён за {} мс: артикулов {}, обновлено {}, без изменений {}, "
+                            + "по отпечатку ответа {} ({}% успешных), пропущено {}, ошибок {}; "
+                            + "латентность p50={} мс, p95={} мс, p99={} мс",
+                    report.duration().toMillis(), report.total(), report.updated(), report.unchanged(),
+                    report.notModified(), Math.round(report.shortCircuitRate() * 100),
+                    report.skipped(), report.failed(),
+                    report.p50().toMillis(), report.p95().toMillis(), report.p99().toMillis());
+        }
+    }
 
     /**
-     * Запускается каждые 10 минут.
-     * Для каждого уникального артикула товара:
+     * Обновляет чанк и назначает следующее обновление его артикулов.
+     * Ошибка обновления чанка засчитывается как {@link RefreshOutcome#FAILED} для всех его артикулов,
+     * чтобы они повторились через минимальный интервал, а не на каждом тике.
+     */
+    private Map<String, RefreshOutcome> refreshAndReschedule(List<String> chunk) {
+        Map<String, RefreshOutcome> outcomes;
+        try {
+            outcomes = refreshChunk(chunk);
+        } catch (RuntimeException e) {
+            log.warn("Ошибка обновления чанка из {} артикулов: {}", chunk.size(), e.getMessage());
+            outcomes = new HashMap<>();
+            for (String article : chunk) {
+                outcomes.put(article, RefreshOutcome.FAILED);
+            }
+        }
+        try {
+            refreshSchedule.reschedule(outcomes);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось обновить расписание для {} артикулов: {}", chunk.size(), e.getMessage());
+        }
+        return outcomes;
+    }
+
+    /**
+     * Обновляет чанк артикулов пакетными запросами.
      * <ul>
-     *     <li>Получает Redis-лок.</li>
-     *     <li>Обновляет снапшот товара через сервис.</li>
-     *     <li>Сохраняет изменённые снапшоты.</li>
-     *     <li>Логирует изменения.</li>
+     *     <li>Запрашивает снапшоты артикулов чанка через {@link WbProductParserService#fetchSnapshotsAsync}.</li>
+     *     <li>Сохраняет изменённые снапшоты каждого пакета одной пакетной вставкой по мере получения пакетов.</li>
      * </ul>
+     * Исключительность обновления обеспечивает аренда, под которой артикулы забраны из {@link RefreshSchedule}:
+     * пока она не истекла, другие узлы эти артикулы не получат, поэтому обращений к Redis на отдельный артикул нет.
+     * Если поток пакетов оборвался, артикулы без исхода считаются ошибочными.
+     * Если цепь вызовов Wildberries разомкнута, чанк пропускается целиком без запросов:
+     * его артикулы снова станут доступны по истечении аренды.
+     *
+     * @param chunk артикулы товаров
+     * @return результат обновления по каждому артикулу
      */
-    @Scheduled(fixedRate = 600_000)
-    public void updateTrackedProducts() {
-        log.info("Запущено обновление отслеживаемых товаров...");
+    Map<String, RefreshOutcome> refreshChunk(List<String> chunk) {
+        Map<String, RefreshOutcome> outcomes = new ConcurrentHashMap<>();
+        if (wbProductParserService.isUpstreamCircuitOpen()) {
+            chunk.forEach(article -> outcomes.put(article, RefreshOutcome.SKIPPED));
+            return outcomes;
+        }
+        BatchConsumer consumer = new BatchConsumer(result -> applyBatch(result, outcomes));
+        wbProductParserService.fetchSnapshotsAsync(chunk).subscribe(consumer);
+        try {
+            consumer.done.join();
+        } catch (CompletionException e) {
+            log.warn("Ошибка получения пакетов для {} товаров: {}", chunk.size(), e.getMessage());
+            chunk.forEach(article -> outcomes.putIfAbsent(article, RefreshOutcome.FAILED));
+        }
+        return outcomes;
+    }
 
-        List<String> distinctArticles = trackedProductRepository.findAllDistinctProductIds();
-        List<ProductSnapshot> updatedSnapshots = new ArrayList<>();
+    private void applyBatch(BatchFetchResult result, Map<String, RefreshOutcome> outcomes) {
+        result.missing().forEach(article -> {
+            log.warn("Товар {} не найден в ответе Wildberries", article);
+            outcomes.put(article, RefreshOutcome.FAILED);
+        });
+        result.failed().forEach(article -> outcomes.put(article, RefreshOutcome.FAILED));
+        result.unchanged().forEach(article -> outcomes.put(article, RefreshOutcome.NOT_MODIFIED));
+
+        List<ProductSnapshot> changed = new ArrayList<>();
+        for (ProductSnapshot snapshot : result.snapshots().values()) {
+            if (snapshot.isChanged()) {
+                changed.add(snapshot);
+            } else {
+                log.debug("Товар {} не изменился", snapshot.getProductId());
+                outcomes.put(snapshot.getProductId(), RefreshOutcome.UNCHANGED);
+            }
+        }
+        saveChanged(changed, result.fingerprints(), outcomes);
+    }
+
+    /**
+     * Сохраняет изменённые снапшоты чанка одним вызовом, чтобы Hibernate записал их пакетами JDBC.
+     * В кэш последних снапшотов они попадают вместе с отпечатками ответа — только после записи в БД,
+     * иначе несохранённое изменение при следующем обновлении было бы принято за отсутствие изменений.
+     * При ошибке записи все артикулы набора считаются ошибочными.
+     * Затем снапшоты учитываются в агрегатах истории и публикуются в поток изменений;
+     * ошибка агрегатов или публикации не отменяет обновление.
+     */
+    private void saveChanged(List<ProductSnapshot> changed, Map<String, String> fingerprints,
+                             Map<String, RefreshOutcome> outcomes) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            snapshotStorageService.saveAll(changed);
+        } catch (Exception e) {
+            log.warn("Ошибка сохранения {} изменённых товаров: {}", changed.size(), e.getMessage());
+            changed.forEach(snapshot -> outcomes.put(snapshot.getProductId(), RefreshOutcome.FAILED));
+            return;
+        }
+        latestSnapshotCache.putAll(changed, fingerprints);
+        try {
+            snapshotRollupService.record(changed);
+        } catch (Exception e) {
+            log.warn("Ошибка обновления агрегатов истории для {} товаров: {}", changed.size(), e.getMessage());
+        }
+        productChangeNotifier.publish(changed);
+        for (ProductSnapshot snapshot : changed) {
+            log.info("Товар {} обновлён, изменённые поля: {}", snapshot.getProductId(), snapshot.getChangedFields());
+            outcomes.put(snapshot.getProductId(), RefreshOutcome.UPDATED);
+        }
+    }
 
-        for (String article : distinctArticles) {
-            String lockKey = "product-update-lock:" + article;
-            RLock lock = redissonClient.getLock(lockKey);
-            boolean locked = false;
+    /**
+     * Подписчик, обрабатывающий пакеты по одному: следующий пакет запрашивается только
+     * после обработки предыдущего, поэтому запросы к Wildberries не опережают запись в БД
+     * больше чем на буфер издателя.
+     */
+    private static final class BatchConsumer implements Flow.Subscriber<BatchFetchResult> {
+
+        private final Consumer<BatchFetchResult> handler;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        private BatchConsumer(Consumer<BatchFetchResult> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(BatchFetchResult result) {
             try {
-                locked = lock.tryLock();
-                if (locked) {
-                    ProductSnapshot snapshot = wbProductParserService.fetchSnapshotByArticle(article);
-                    if (snapshot != null && snapshot.isChanged()) {
-                        productSnapshotRepository.save(snapshot);
-                        updatedSnapshots.add(snapshot);
-                        log.info("Товар {} обновлён, изменённые поля: {}", article, snapshot.getChangedFields());
-                    } else {
-                        log.debug("Товар {} не изменился", article);
-                    }
-                } else {
-                    log.warn("Не удалось получить лок для товара {}, пропускаем обновление", article);
-                }
-            } catch (Exception e) {
-                log.warn("Ошибка обновления товара {}: {}", article, e.getMessage());
-            } finally {
-                if (locked) {
-                    lock.unlock();
-                }
+                handler.accept(result);
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                done.completeExceptionally(e);
+                return;
             }
+            subscription.request(1);
         }
 
-        log.info("Обновлено {} товаров", updatedSnapshots.size());
+        @Override
+        public void onError(Throwable error) {
+            done.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package com.sellerscope.scheduler;
+
+import java.time.Duration;
+
+/**
+ * Итоги одного цикла обновления отслеживаемых товаров.
+ *
+ * @param duration    общая длительность цикла
+ * @param total       количество артикулов в цикле
+ * @param updated     артикулы с изменениями, сохранённые в БД
+ * @param unchanged   артикулы без изменений, определённых сравнением снапшотов
+ * @param notModified артикулы без изменений, определённых по отпечатку ответа без разбора и сравнения
+ * @param skipped     пропущенные артикулы
+ * @param failed      артикулы, обновление которых завершилось ошибкой
+ * @param p50         медианная латентность обновления одного чанка
+ * @param p95         95-й перцентиль латентности чанка
+ * @param p99         99-й перцентиль латентности чанка
+ */
+public record RefreshCycleReport(
+        Duration duration,
+        int total,
+        int updated,
+        int unchanged,
+        int notModified,
+        int skipped,
+        int failed,
+        Duration p50,
+        Duration p95,
+        Duration p99
+) {
+
+    /**
+     * @return количество успешно обработанных артикулов (с изменениями и без)
+     */
+    public int succeeded() {
+        return updated + unchanged + notModified;
+    }
+
+    /**
+     * @return доля успешно обработанных артикулов, для которых разбор и сравнение были пропущены, от 0 до 1
+     */
+    public double shortCircuitRate() {
+        int succeeded = succeeded();
+        return succeeded == 0 ? 0 : (double) notModified / succeeded;
+    }
+}
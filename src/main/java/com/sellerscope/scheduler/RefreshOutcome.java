@@ -0,0 +1,17 @@
+package com.sellerscope.scheduler;
+
+/**
+ * Результат обновления одного артикула в рамках цикла.
+ */
+public enum RefreshOutcome {
+    /** Снапшот изменился и сохранён. */
+    UPDATED,
+    /** Снапшот получен, изменений нет. */
+    UNCHANGED,
+    /** Ответ совпал с последним сохранённым (по отпечатку или 304): разбор и сравнение пропущены. */
+    NOT_MODIFIED,
+    /** Обновление пропущено (например, цепь вызовов Wildberries разомкнута). */
+    SKIPPED,
+    /** Обновление завершилось ошибкой. */
+    FAILED
+}
@@ -0,0 +1,182 @@
+package com.sellerscope.scheduler;
+
+import org.redisson.api.RMap;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Адаптивное расписание обновления артикулов в Redis.
+ * <p>
+ * Для каждого артикула хранятся:
+ * <ul>
+ *     <li>момент следующего обновления — score в {@link RScoredSortedSet} {@code refresh:due} (epoch millis);</li>
+ *     <li>текущий интервал обновления — в {@link RMap} {@code refresh:interval} (millis).</li>
+ * </ul>
+ * После обнаруженного изменения интервал сбрасывается до {@code refresh.min-interval},
+ * пока товар не меняется — удваивается, но не превышает {@code refresh.max-interval}.
+ * Так часто меняющиеся товары проверяются часто, а стабильные — всё реже.
+ * <p>
+ * Расписание — общая очередь работы для всех экземпляров приложения: узел забирает
+ * порцию наступивших артикулов атомарным Lua-скриптом ({@link #claimDue}), сдвигая их время
+ * на срок аренды {@code refresh.claim-lease}. Поэтому каждый артикул за цикл обновляет один узел,
+ * а артикулы упавшего узла снова становятся доступными по истечении аренды. Аренда — единственный
+ * механизм исключительности обновления, поэтому она должна быть больше времени обновления порции.
+ */
+@Component
+public class RefreshSchedule {
+
+    static final String DUE_SET = "refresh:due";
+    static final String INTERVAL_MAP = "refresh:interval";
+
+    // KEYS[1] — refresh:due; ARGV: текущее время, размер порции, время окончания аренды
+    static final String CLAIM_SCRIPT = """
+            local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+            for _, article in ipairs(due) do
+                redis.call('ZADD', KEYS[1], 'XX', ARGV[3], article)
+            end
+            return due
+            """;
+
+    private final RedissonClient redissonClient;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final long claimLeaseMillis;
+    private final Clock clock;
+
+    public RefreshSchedule(RedissonClient redissonClient,
+                           @Value("${refresh.min-interval:10m}") Duration minInterval,
+                           @Value("${refresh.max-interval:24h}") Duration maxInterval,
+                           @Value("${refresh.claim-lease:5m}") Duration claimLease) {
+        this(redissonClient, minInterval, maxInterval, claimLease, Clock.systemUTC());
+    }
+
+    RefreshSchedule(RedissonClient redissonClient, Duration minInterval, Duration maxInterval,
+                    Duration claimLease, Clock clock) {
+        if (minInterval.isNegative() || minInterval.isZero()) {
+            throw new IllegalArgumentException("refresh.min-interval must be positive: " + minInterval);
+        }
+        if (maxInterval.compareTo(minInterval) < 0) {
+            throw new IllegalArgumentException("refresh.max-interval must not be less than refresh.min-interval: " + maxInterval);
+        }
+        if (claimLease.isNegative() || claimLease.isZero()) {
+            throw new IllegalArgumentException("refresh.claim-lease must be positive: " + claimLease);
+        }
+        this.redissonClient = redissonClient;
+        this.minIntervalMillis = minInterval.toMillis();
+        this.maxIntervalMillis = maxInterval.toMillis();
+        this.claimLeaseMillis = claimLease.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Сверяет расписание со списком отслеживаемых артикулов: новые артикулы ставятся
+     * на немедленное обновление, артикулы, которые больше никто не отслеживает, удаляются.
+     *
+     * @return число добавленных артикулов
+     */
+    public int reconcile(Collection<String> trackedArticles) {
+        Set<String> tracked = new HashSet<>(trackedArticles);
+        Set<String> stale = new HashSet<>(dueSet().readAll());
+        stale.addAll(intervals().readAllKeySet());
+        stale.removeAll(tracked);
+        if (!stale.isEmpty()) {
+            dueSet().removeAll(stale);
+            intervals().fastRemove(stale.toArray(String[]::new));
+        }
+        if (tracked.isEmpty()) {
+            return 0;
+        }
+        double now = clock.millis();
+        Map<String, Double> scores = new HashMap<>();
+        tracked.forEach(article -> scores.put(article, now));
+        return dueSet().addAllIfAbsent(scores);
+    }
+
+    /**
+     * Забирает порцию артикулов, время обновления которых наступило, начиная с самых просроченных,
+     * и атомарно сдвигает их время на срок аренды, чтобы другие узлы их не взяли.
+     * Реальное следующее время назначает {@link #reschedule} после обновления.
+     *
+     * @param limit максимальное число артикулов
+     * @return забранные артикулы
+     */
+    public List<String> claimDue(int limit) {
+        long now = clock.millis();
+        List<Object> claimed = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE, CLAIM_SCRIPT, RScript.ReturnType.MULTI,
+                List.of(DUE_SET), Long.toString(now), Integer.toString(limit), Long.toString(now + claimLeaseMillis));
+        List<String> articles = new ArrayList<>(claimed.size());
+        claimed.forEach(article -> articles.add(article.toString()));
+        return articles;
+    }
+
+    /**
+     * Назначает следующее обновление по итогам обновления артикулов.
+     * Пропущенные артикулы не трогаются — они снова станут доступны по истечении аренды.
+     * Неудачные обновления повторяются через минимальный интервал без изменения текущего.
+     * Артикулы, удалённые из расписания во время обновления, обратно не добавляются
+     * (их интервалы удаляются при следующей сверке).
+     */
+    public void reschedule(Map<String, RefreshOutcome> outcomes) {
+        List<String> articles = outcomes.entrySet().stream()
+                .filter(entry -> entry.getValue() != RefreshOutcome.SKIPPED)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (articles.isEmpty()) {
+            return;
+        }
+        Map<String, String> current = intervals().getAll(new HashSet<>(articles));
+        long now = clock.millis();
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, String> updatedIntervals = new HashMap<>();
+        for (String article : articles) {
+            String stored = current.get(article);
+            long interval = stored == null ? minIntervalMillis : Long.parseLong(stored);
+            RefreshOutcome outcome = outcomes.get(article);
+            if (outcome == RefreshOutcome.FAILED) {
+                scores.put(article, (double) (now + minIntervalMillis));
+                continue;
+            }
+            long next = nextInterval(interval, outcome);
+            scores.put(article, (double) (now + next));
+            updatedIntervals.put(article, Long.toString(next));
+        }
+        dueSet().addAllIfExist(scores);
+        if (!updatedIntervals.isEmpty()) {
+            intervals().putAll(updatedIntervals);
+        }
+    }
+
+    /**
+     * @return интервал до следующего обновления после успешного обновления с исходом {@code outcome}
+     */
+    long nextInterval(long currentMillis, RefreshOutcome outcome) {
+        if (outcome == RefreshOutcome.UPDATED) {
+            return minIntervalMillis;
+        }
+        long doubled = currentMillis > maxIntervalMillis / 2 ? maxIntervalMillis : currentMillis * 2;
+        return Math.max(minIntervalMillis, Math.min(maxIntervalMillis, doubled));
+    }
+
+    private RScoredSortedSet<String> dueSet() {
+        return redissonClient.getScoredSortedSet(DUE_SET, StringCodec.INSTANCE);
+    }
+
+    private RMap<String, String> intervals() {
+        return redissonClient.getMap(INTERVAL_MAP, StringCodec.INSTANCE);
+    }
+}
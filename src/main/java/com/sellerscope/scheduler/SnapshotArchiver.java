@@ -0,0 +1,97 @@
+package com.sellerscope.scheduler;
+
+import com.sellerscope.service.SnapshotArchive;
+import com.sellerscope.service.SnapshotStorageService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.util.List;
+
+/**
+ * Перенос холодной истории снапшотов в архив ({@link SnapshotArchive}).
+ * <p>
+ * По {@code snapshot.archive.cron} снапшоты старше {@code snapshot.archive.after} переносятся
+ * по одному артикулу за транзакцию ({@link SnapshotStorageService#archiveBefore}). Ошибка по одному
+ * артикулу не останавливает остальные. Одновременно перенос выполняет один экземпляр приложения
+ * под локом Redisson. Включённый перенос требует явно заданного {@code snapshot.archive.dir},
+ * иначе приложение не стартует.
+ * <p>
+ * Срок переноса должен быть меньше {@code snapshot.partitioning.retention}, иначе секции
+ * снимутся с хранения раньше, чем их строки попадут в архив.
+ */
+@Slf4j
+@Component
+public class SnapshotArchiver {
+
+    static final String LOCK = "lock:snapshot-archive";
+
+    private final SnapshotStorageService storage;
+    private final RedissonClient redissonClient;
+    private final boolean enabled;
+    private final Period after;
+    private final Clock clock;
+
+    public SnapshotArchiver(SnapshotStorageService storage,
+                            SnapshotArchive archive,
+                            RedissonClient redissonClient,
+                            @Value("${snapshot.archive.enabled:false}") boolean enabled,
+                            @Value("${snapshot.archive.after:P6M}") Period after) {
+        this(storage, redissonClient, enabled, after, Clock.systemDefaultZone());
+        // Строки удаляются из БД после записи сегментов: без явно заданного общего каталога
+        // история осталась бы в рабочем каталоге одного экземпляра и пропала бы при передеплое
+        if (enabled && !archive.isConfigured()) {
+            throw new IllegalStateException("snapshot.archive.dir must be set when snapshot.archive.enabled is true");
+        }
+    }
+
+    SnapshotArchiver(SnapshotStorageService storage, RedissonClient redissonClient, boolean enabled,
+                     Period after, Clock clock) {
+        if (after.isNegative() || after.isZero()) {
+            throw new IllegalArgumentException("snapshot.archive.after must be positive: " + after);
+        }
+        this.storage = storage;
+        this.redissonClient = redissonClient;
+        this.enabled = enabled;
+        this.after = after;
+        this.clock = clock;
+    }
+
+    @Scheduled(cron = "${snapshot.archive.cron:0 45 3 * * *}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        RLock lock = redissonClient.getLock(LOCK);
+        if (!lock.tryLock()) {
+            log.debug("Архивацию истории выполняет другой экземпляр");
+            return;
+        }
+        try {
+            LocalDateTime cutoff = LocalDateTime.now(clock).minus(after);
+            List<String> articles = storage.findArticlesWithHistoryBefore(cutoff);
+            int archived = 0;
+            int failed = 0;
+            for (String article : articles) {
+                try {
+                    archived += storage.archiveBefore(article, cutoff);
+                } catch (Exception e) {
+                    failed++;
+                    log.warn("Не удалось перенести в архив историю артикула {}: {}", article, e.getMessage());
+                }
+            }
+            log.info("Перенесено в архив {} снапшотов старше {} по {} артикулам, ошибок: {}",
+                    archived, cutoff, articles.size(), failed);
+        } catch (Exception e) {
+            log.error("Ошибка архивации истории снапшотов: {}", e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.sellerscope.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Обслуживание секций таблицы {@code product_snapshot}, секционированной по {@code created_at}
+ * (миграция {@code V3__partition_product_snapshot}).
+ * <ul>
+ *     <li>Создаёт секции длиной {@code snapshot.partitioning.interval} так, чтобы наперёд было
+ *     {@code snapshot.partitioning.premake} секций. Строки, успевшие попасть в секцию по умолчанию,
+ *     переносятся в новую секцию.</li>
+ *     <li>Секции, закончившиеся раньше {@code snapshot.partitioning.retention} назад, удаляются
+ *     ({@code retention-action: drop}) или отсоединяются и остаются отдельными таблицами для архивации
+ *     ({@code detach}). Последний снапшот каждого артикула из такой секции остаётся в таблице
+ *     (в секции по умолчанию), поэтому текущее состояние давно не менявшегося товара не теряется.
+ *     В режиме хранения {@code delta} так же остаётся ключевой снапшот, от которого восстанавливаются
+ *     оставшиеся дельты, а дельты, потерявшие ключевой снапшот, удаляются. Остальные строки секции
+ *     пропадают из истории, поэтому удаление включают вместе с архивом ({@code snapshot.archive}),
+ *     переносящим историю раньше срока хранения. Нулевой срок хранения (по умолчанию) отключает удаление.</li>
+ * </ul>
+ * Запускается при старте и по {@code snapshot.partitioning.cron}. Все изменения выполняются в одной транзакции
+ * под advisory-локом Postgres, поэтому одновременно их выполняет один экземпляр приложения.
+ * На других СУБД и на несекционированной таблице ничего не делает.
+ */
+@Slf4j
+@Component
+public class SnapshotPartitionMaintenance {
+
+    static final String TABLE = "product_snapshot";
+    static final String DEFAULT_PARTITION = TABLE + "_default";
+    static final String DELTA_TABLE = "snapshot_deltas";
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('([^']+)'\\) TO \\('([^']+)'\\)");
+    private static final DateTimeFormatter BOUND_FORMAT = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd HH:mm:ss")
+            .optionalStart().appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true).optionalEnd()
+            .toFormatter();
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * Секция {@code [from, to)}.
+     */
+    record Partition(String name, LocalDateTime from, LocalDateTime to) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Period interval;
+    private final int premake;
+    private final Period retention;
+    private final boolean dropExpired;
+    private final Clock clock;
+    private volatile Boolean postgres;
+
+    public SnapshotPartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                        TransactionTemplate transactionTemplate,
+                                        @Value("${snapshot.partitioning.interval:P1M}") Period interval,
+                                        @Value("${snapshot.partitioning.premake:3}") int premake,
+                                        @Value("${snapshot.partitioning.retention:P0D}") Period retention,
+                                        @Value("${snapshot.partitioning.retention-action:detach}") String retentionAction) {
+        this(jdbcTemplate, transactionTemplate, interval, premake, retention, retentionAction, Clock.systemDefaultZone());
+    }
+
+    SnapshotPartitionMaintenance(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, Period interval,
+                                 int premake, Period retention, String retentionAction, Clock clock) {
+        if (interval.isNegative() || interval.isZero() || interval.getYears() != 0
+                || (interval.getMonths() != 0 && interval.getDays() != 0)) {
+            throw new IllegalArgumentException("snapshot.partitioning.interval must be a positive number of months or days: "
+                    + interval);
+        }
+        if (premake < 1) {
+            throw new IllegalArgumentException("snapshot.partitioning.premake must be positive: " + premake);
+        }
+        if (retention.isNegative()) {
+            throw new IllegalArgumentException("snapshot.partitioning.retention must not be negative: " + retention);
+        }
+        String action = retentionAction.toLowerCase(Locale.ROOT);
+        if (!"drop".equals(action) && !"detach".equals(action)) {
+            throw new IllegalArgumentException("snapshot.partitioning.retention-action must be 'drop' or 'detach': "
+                    + retentionAction);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.interval = interval;
+        this.premake = premake;
+        this.retention = retention;
+        this.dropExpired = "drop".equals(action);
+        this.clock = clock;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${snapshot.partitioning.cron:0 15 3 * * *}")
+    public void maintain() {
+        try {
+            if (!isPostgres()) {
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!isPartitioned()) {
+                    log.debug("Таблица {} не секционирована, обслуживание секций пропущено", TABLE);
+                    return;
+                }
+                if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT pg_try_advisory_xact_lock(hashtext(?))", Boolean.class, TABLE + ":partitions"))) {
+                    log.debug("Секции {} обслуживает другой экземпляр", TABLE);
+                    return;
+                }
+                LocalDateTime now = LocalDateTime.now(clock);
+                List<Partition> partitions = partitions();
+                for (Partition partition : toCreate(partitions, now, interval, premake)) {
+                    create(partition);
+                }
+                for (Partition partition : expired(partitions, now, retention)) {
+                    expire(partition);
+                }
+            });
+        } catch (Exception e) {
+            log.error("Ошибка обслуживания секций {}: {}", TABLE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Секции, которые нужно создать: следующие за последней существующей, пока не будет покрыт
+     * момент {@code now + premake * interval}. Если секций нет, первая начинается с начала текущего периода.
+     */
+    static List<Partition> toCreate(List<Partition> existing, LocalDateTime now, Period interval, int premake) {
+        LocalDateTime upper = existing.stream()
+                .map(Partition::to)
+                .max(Comparator.naturalOrder())
+                .orElseGet(() -> periodStart(now, interval));
+        LocalDateTime horizon = now.plus(interval.multipliedBy(premake));
+        List<Partition> created = new ArrayList<>();
+        while (!upper.isAfter(horizon)) {
+            LocalDateTime next = upper.plus(interval);
+            created.add(new Partition(partitionName(upper), upper, next));
+            upper = next;
+        }
+        return created;
+    }
+
+    /**
+     * @return секции, закончившиеся раньше {@code now - retention}; пустой список при нулевом сроке хранения
+     */
+    static List<Partition> expired(List<Partition> existing, LocalDateTime now, Period retention) {
+        if (retention.isZero()) {
+            return List.of();
+        }
+        LocalDateTime cutoff = now.minus(retention);
+        return existing.stream()
+                .filter(partition -> !partition.to().isAfter(cutoff))
+                .toList();
+    }
+
+    /**
+     * @param bound выражение вида {@code FOR VALUES FROM ('2025-01-01 00:00:00') TO ('2025-02-01 00:00:00')}
+     * @return секция или {@code null} для секции по умолчанию
+     */
+    static Partition parse(String name, String bound) {
+        Matcher matcher = RANGE_BOUND.matcher(bound);
+        if (!matcher.find()) {
+            return null;
+        }
+        return new Partition(name, LocalDateTime.parse(matcher.group(1), BOUND_FORMAT),
+                LocalDateTime.parse(matcher.group(2), BOUND_FORMAT));
+    }
+
+    static String partitionName(LocalDateTime from) {
+        return TABLE + "_p" + NAME_FORMAT.format(from);
+    }
+
+    private static LocalDateTime periodStart(LocalDateTime time, Period interval) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return interval.getMonths() != 0 ? day.withDayOfMonth(1) : day;
+    }
+
+    private List<Partition> partitions() {
+        List<Partition> partitions = new ArrayList<>();
+        jdbcTemplate.query("""
+                SELECT c.relname, pg_get_expr(c.relpartbound, c.oid)
+                FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = ?::regclass
+                """, rs -> {
+            Partition partition = parse(rs.getString(1), rs.getString(2));
+            if (partition != null) {
+                partitions.add(partition);
+            }
+        }, TABLE);
+        return partitions;
+    }
+
+    private void create(Partition partition) {
+        String from = partition.from().toString();
+        String to = partition.to().toString();
+        Boolean inDefault = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE created_at >= ?::timestamp AND created_at < ?::timestamp)",
+                Boolean.class, from, to);
+        if (Boolean.TRUE.equals(inDefault)) {
+            // Секцию нельзя создать, пока строки её диапазона лежат в секции по умолчанию
+            jdbcTemplate.execute("CREATE TABLE " + partition.name() + " (LIKE " + TABLE + " INCLUDING DEFAULTS)");
+            int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                    + " WHERE created_at >= ?::timestamp AND created_at < ?::timestamp RETURNING *) INSERT INTO "
+                    + partition.name() + " SELECT * FROM moved", from, to);
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + partition.name()
+                    + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+            log.info("Создана секция {} [{}, {}), перенесено из секции по умолчанию {} строк", partition.name(), from, to, moved);
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE " + partition.name() + " PARTITION OF " + TABLE
+                + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        log.info("Создана секция {} [{}, {})", partition.name(), from, to);
+    }
+
+    private void expire(Partition partition) {
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition.name());
+        // Снапшоты пишутся только при изменении, поэтому текущее состояние давно не менявшегося товара
+        // может лежать в старой секции. Последние снапшоты артикулов возвращаются в таблицу: диапазон
+        // секции больше не покрыт, и они попадают в секцию по умолчанию. В режиме delta туда же
+        // возвращается последний ключевой снапшот, на который опираются более поздние дельты
+        int kept = jdbcTemplate.update("WITH kept AS (DELETE FROM " + partition.name() + " p"
+                + " WHERE NOT EXISTS (SELECT 1 FROM " + partition.name() + " n"
+                + " WHERE n.product_id = p.product_id AND n.created_at > p.created_at)"
+                + " AND (NOT EXISTS (SELECT 1 FROM " + TABLE + " s"
+                + " WHERE s.product_id = p.product_id AND s.created_at > p.created_at)"
+                + " OR EXISTS (SELECT 1 FROM " + DELTA_TABLE + " d"
+                + " WHERE d.product_id = p.product_id AND d.created_at > p.created_at"
+                + " AND NOT EXISTS (SELECT 1 FROM " + TABLE + " s"
+                + " WHERE s.product_id = p.product_id AND s.created_at > p.created_at AND s.created_at <= d.created_at)))"
+                + " RETURNING *) INSERT INTO " + TABLE + " SELECT * FROM kept");
+        // Дельты секции, ключевой снапшот которых снят вместе с ней, восстановить уже не из чего
+        int orphaned = jdbcTemplate.update("DELETE FROM " + DELTA_TABLE + " d WHERE d.created_at < ?::timestamp"
+                + " AND NOT EXISTS (SELECT 1 FROM " + TABLE + " s"
+                + " WHERE s.product_id = d.product_id AND s.created_at <= d.created_at)", partition.to().toString());
+        if (orphaned > 0) {
+            log.info("Удалено дельт без ключевого снапшота из секции {}: {}", partition.name(), orphaned);
+        }
+        if (dropExpired) {
+            jdbcTemplate.execute("DROP TABLE " + partition.name());
+            log.info("Секция {} [{}, {}) удалена по сроку хранения, сохранено последних снапшотов: {}",
+                    partition.name(), partition.from(), partition.to(), kept);
+            return;
+        }
+        log.info("Секция {} [{}, {}) отсоединена по сроку хранения и оставлена для архивации, сохранено последних снапшотов: {}",
+                partition.name(), partition.from(), partition.to(), kept);
+    }
+
+    private boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?))", Boolean.class, TABLE));
+    }
+
+    private boolean isPostgres() {
+        Boolean cached = postgres;
+        if (cached == null) {
+            cached = "PostgreSQL".equals(jdbcTemplate.execute(
+                    (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+            postgres = cached;
+        }
+        return cached;
+    }
+}
@@ -29,6 +29,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     public static final String HEADER_NAME = "Authorization";
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -47,12 +48,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         try {
             var jwt = authHeader.substring(BEARER_PREFIX.length());
-            var userEmail = jwtService.extractEmail(jwt);
+            var token = jwtService.parse(jwt);
+            var userEmail = token.subject();
             logger.info("Extracted email: {}", userEmail);
 
             if (StringUtils.hasText(userEmail) && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(userEmail);
-                if (jwtService.isAccessTokenValid(jwt, userDetails)) {
+                UserDetails userDetails = principalCache.get(userEmail, userDetailsService::loadUserByUsername);
+                if (jwtService.isAccessTokenValid(token, userDetails)) {
                     SecurityContext context = SecurityContextHolder.createEmptyContext();
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
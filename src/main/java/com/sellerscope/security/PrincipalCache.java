@@ -0,0 +1,83 @@
+package com.sellerscope.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Локальный кэш аутентифицированных пользователей по email для {@link JwtAuthenticationFilter}.
+ * <p>
+ * Ограничен по размеру ({@code security.principal-cache.max-size}) и времени жизни записи
+ * ({@code security.principal-cache.ttl}). При выходе пользователя (и смене пароля) запись
+ * удаляется на всех экземплярах приложения через Redis-топик; если Redis недоступен,
+ * устаревшая запись живёт не дольше TTL.
+ * <p>
+ * Метрики публикуются как {@code cache.*} с тегом {@code cache=principals}.
+ */
+@Component
+public class PrincipalCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrincipalCache.class);
+    static final String INVALIDATION_TOPIC = "principal-cache:invalidate";
+
+    private final Cache<String, UserDetails> cache;
+    private final RedissonClient redissonClient;
+
+    public PrincipalCache(@Value("${security.principal-cache.ttl:5m}") Duration ttl,
+                          @Value("${security.principal-cache.max-size:10000}") long maxSize,
+                          RedissonClient redissonClient,
+                          MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        this.redissonClient = redissonClient;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "principals");
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        try {
+            topic().addListener(String.class, (channel, email) -> cache.invalidate(email));
+        } catch (RuntimeException e) {
+            logger.warn("Principal cache invalidation topic is unavailable, entries expire by TTL only: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return пользователь из кэша или загруженный {@code loader} и сохранённый в кэш
+     */
+    public UserDetails get(String email, Function<String, UserDetails> loader) {
+        return cache.get(email, loader);
+    }
+
+    /**
+     * Удаляет пользователя из кэша на этом и остальных экземплярах приложения.
+     */
+    public void invalidate(String email) {
+        cache.invalidate(email);
+        try {
+            topic().publish(email);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to publish principal cache invalidation for {}: {}", email, e.getMessage());
+        }
+    }
+
+    private RTopic topic() {
+        return redissonClient.getTopic(INVALIDATION_TOPIC, StringCodec.INSTANCE);
+    }
+}
@@ -9,6 +9,7 @@ import com.sellerscope.entity.Role;
 import com.sellerscope.entity.User;
 import com.sellerscope.repository.RefreshTokenRepository;
 import com.sellerscope.repository.UserRepository;
+import com.sellerscope.security.PrincipalCache;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -37,6 +38,7 @@ public class AuthenticationService {
     private final PasswordEncoder passwordEncoder;
     private final JwtService jwtService;
     private final AuthenticationManager authenticationManager;
+    private final PrincipalCache principalCache;
 
     public JwtAuthenticationResponse signUp(SignUpRequest request) {
         logger.info("Processing sign-up request for email: {}", request.getEmail());
@@ -131,5 +133,6 @@ public class AuthenticationService {
         User user = userRepository.findByEmail(userDetails.getUsername())
                 .orElseThrow(() -> new RuntimeException("User not found"));
         refreshTokenRepository.deleteByUser(user);
+        principalCache.invalidate(user.getEmail());
     }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Результат пакетного запроса карточек Wildberries.
+ *
+ * @param snapshots    снапшоты по артикулам, найденным в ответе
+ * @param missing      артикулы, отсутствующие в ответе {@code /data/products}
+ * @param failed       артикулы, которые не удалось получить или разобрать
+ * @param unchanged    артикулы, ответ по которым совпал с последним сохранённым снапшотом
+ *                     (по отпечатку или ответу 304); снапшоты для них не строятся
+ * @param fingerprints отпечатки ответа для {@code snapshots}; сохраняются в {@link LatestSnapshotCache}
+ *                     вместе со снапшотом после его записи в БД
+ */
+public record BatchFetchResult(
+        Map<String, ProductSnapshot> snapshots,
+        Set<String> missing,
+        Set<String> failed,
+        Set<String> unchanged,
+        Map<String, String> fingerprints
+) {
+
+    public BatchFetchResult(Map<String, ProductSnapshot> snapshots, Set<String> missing, Set<String> failed) {
+        this(snapshots, missing, failed, Set.of(), Map.of());
+    }
+}
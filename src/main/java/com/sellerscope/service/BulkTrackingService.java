@@ -0,0 +1,262 @@
+package com.sellerscope.service;
+
+import com.sellerscope.dto.BulkTrackResult;
+import com.sellerscope.dto.BulkTrackResult.Status;
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.TrackedProduct;
+import com.sellerscope.entity.User;
+import com.sellerscope.repository.TrackedProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+
+/**
+ * Пакетное добавление товаров в отслеживание и удаление из него.
+ * <p>
+ * Вместо запроса на каждый артикул, как в {@link TrackingService}:
+ * <ul>
+ *     <li>уже отслеживаемые пользователем артикулы выбираются одним запросом;</li>
+ *     <li>свежие снапшоты переиспользуются без обращения к Wildberries
+ *     ({@link SnapshotFetchCoalescer#findFresh(Collection)});</li>
+ *     <li>остальные запрашиваются чанками по {@code tracking.bulk.chunk-size} артикулов
+ *     ({@link WbProductParserService#fetchSnapshotsByArticles}), до {@code tracking.bulk.concurrency}
+ *     чанков одновременно в виртуальных потоках;</li>
+ *     <li>новые и изменившиеся снапшоты чанка и записи об отслеживании сохраняются пакетами.</li>
+ * </ul>
+ * Ошибка одного чанка не прерывает остальные: его артикулы получают статус {@link Status#FAILED}.
+ */
+@Service
+public class BulkTrackingService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkTrackingService.class);
+    private static final Pattern ARTICLE = Pattern.compile("\\d{1,20}");
+
+    private final WbProductParserService wbService;
+    private final SnapshotStorageService storage;
+    private final TrackedProductRepository trackedProductRepository;
+    private final LatestSnapshotCache latestSnapshotCache;
+    private final SnapshotFetchCoalescer fetchCoalescer;
+    private final SnapshotRollupService rollupService;
+    private final int maxArticles;
+    private final int chunkSize;
+    private final int concurrency;
+
+    public BulkTrackingService(WbProductParserService wbService,
+                               SnapshotStorageService storage,
+                               TrackedProductRepository trackedProductRepository,
+                               LatestSnapshotCache latestSnapshotCache,
+                               SnapshotFetchCoalescer fetchCoalescer,
+                               SnapshotRollupService rollupService,
+                               @Value("${tracking.bulk.max-articles:5000}") int maxArticles,
+                               @Value("${tracking.bulk.chunk-size:50}") int chunkSize,
+                               @Value("${tracking.bulk.concurrency:4}") int concurrency) {
+        if (maxArticles < 1) {
+            throw new IllegalArgumentException("tracking.bulk.max-articles must be positive: " + maxArticles);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("tracking.bulk.chunk-size must be positive: " + chunkSize);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("tracking.bulk.concurrency must be positive: " + concurrency);
+        }
+        this.wbService = wbService;
+        this.storage = storage;
+        this.trackedProductRepository = trackedProductRepository;
+        this.latestSnapshotCache = latestSnapshotCache;
+        this.fetchCoalescer = fetchCoalescer;
+        this.rollupService = rollupService;
+        this.maxArticles = maxArticles;
+        this.chunkSize = chunkSize;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Добавляет артикулы в отслеживание для пользователя.
+     *
+     * @param articles артикулы; пробелы по краям отбрасываются, повторы учитываются один раз
+     * @return статус по каждому артикулу в порядке первого появления в запросе
+     * @throws IllegalArgumentException если артикулов больше {@code tracking.bulk.max-articles}
+     */
+    public List<BulkTrackResult> trackProducts(User user, List<String> articles) {
+        Map<String, Status> statuses = new LinkedHashMap<>();
+        List<String> valid = normalize(articles, statuses);
+        if (valid.isEmpty()) {
+            return results(statuses);
+        }
+        Set<String> tracked = new HashSet<>(trackedProductRepository.findProductIdsByUserAndProductIdIn(user, valid));
+        List<String> candidates = new ArrayList<>();
+        for (String article : valid) {
+            if (tracked.contains(article)) {
+                statuses.put(article, Status.ALREADY_TRACKED);
+            } else {
+                candidates.add(article);
+            }
+        }
+
+        Map<String, Status> fetched = new ConcurrentHashMap<>();
+        if (!candidates.isEmpty()) {
+            Set<String> fresh = fetchCoalescer.findFresh(candidates).keySet();
+            fresh.forEach(article -> fetched.put(article, Status.TRACKED));
+            fetch(candidates.stream().filter(article -> !fresh.contains(article)).toList(), fetched);
+        }
+
+        List<String> ready = new ArrayList<>();
+        for (String article : candidates) {
+            Status status = fetched.getOrDefault(article, Status.FAILED);
+            statuses.put(article, status);
+            if (status == Status.TRACKED) {
+                ready.add(article);
+            }
+        }
+        startTracking(user, ready, statuses);
+        log.info("Bulk tracking for user {}: {} articles, {} tracked", user.getId(), statuses.size(), ready.size());
+        return results(statuses);
+    }
+
+    /**
+     * Удаляет артикулы из отслеживания пользователя: одна выборка и одно пакетное удаление.
+     *
+     * @return статус по каждому артикулу в порядке первого появления в запросе
+     * @throws IllegalArgumentException если артикулов больше {@code tracking.bulk.max-articles}
+     */
+    public List<BulkTrackResult> untrackProducts(User user, List<String> articles) {
+        Map<String, Status> statuses = new LinkedHashMap<>();
+        List<String> valid = normalize(articles, statuses);
+        if (valid.isEmpty()) {
+            return results(statuses);
+        }
+        valid.forEach(article -> statuses.put(article, Status.NOT_TRACKED));
+        List<TrackedProduct> tracked = trackedProductRepository.findByUserAndProductIdIn(user, valid);
+        trackedProductRepository.deleteAllInBatch(tracked);
+        tracked.forEach(product -> statuses.put(product.getProductId(), Status.UNTRACKED));
+        return results(statuses);
+    }
+
+    private List<String> normalize(List<String> articles, Map<String, Status> statuses) {
+        Set<String> distinct = new LinkedHashSet<>();
+        if (articles != null) {
+            for (String article : articles) {
+                if (article != null && !article.isBlank()) {
+                    distinct.add(article.strip());
+                }
+            }
+        }
+        if (distinct.size() > maxArticles) {
+            throw new IllegalArgumentException("Too many articles in bulk request: " + distinct.size()
+                    + ", at most " + maxArticles + " allowed");
+        }
+        List<String> valid = new ArrayList<>(distinct.size());
+        for (String article : distinct) {
+            if (ARTICLE.matcher(article).matches()) {
+                statuses.put(article, null);
+                valid.add(article);
+            } else {
+                statuses.put(article, Status.INVALID);
+            }
+        }
+        return valid;
+    }
+
+    private void fetch(List<String> articles, Map<String, Status> statuses) {
+        Semaphore permits = new Semaphore(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int from = 0; from < articles.size(); from += chunkSize) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Bulk tracking interrupted, {} of {} articles requested", from, articles.size());
+                    break;
+                }
+                List<String> chunk = articles.subList(from, Math.min(from + chunkSize, articles.size()));
+                executor.submit(() -> {
+                    try {
+                        fetchChunk(chunk, statuses);
+                    } catch (Exception e) {
+                        log.warn("Failed to fetch {} articles for bulk tracking: {}", chunk.size(), e.getMessage());
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Запрашивает чанк одним пакетным запросом. Новые и изменившиеся снапшоты сохраняются одним вызовом
+     * и только затем попадают в кэш последних снапшотов; неизменившиеся уже сохранены.
+     */
+    private void fetchChunk(List<String> chunk, Map<String, Status> statuses) {
+        BatchFetchResult result = wbService.fetchSnapshotsByArticles(chunk);
+        List<ProductSnapshot> changed = result.snapshots().values().stream()
+                .filter(ProductSnapshot::isChanged)
+                .toList();
+        if (!changed.isEmpty()) {
+            storage.saveAll(changed);
+            latestSnapshotCache.putAll(changed, result.fingerprints());
+            try {
+                rollupService.record(changed);
+            } catch (Exception e) {
+                log.warn("Failed to update history rollups for {} articles: {}", changed.size(), e.getMessage());
+            }
+        }
+        result.snapshots().keySet().forEach(article -> statuses.put(article, Status.TRACKED));
+        result.unchanged().forEach(article -> statuses.put(article, Status.TRACKED));
+        result.missing().forEach(article -> statuses.put(article, Status.NOT_FOUND));
+        result.failed().forEach(article -> statuses.put(article, Status.FAILED));
+    }
+
+    /**
+     * Сохраняет записи об отслеживании одним пакетом. Если другой запрос успел добавить
+     * какой-то из артикулов, пакет откатывается и записи сохраняются по одной.
+     */
+    private void startTracking(User user, List<String> articles, Map<String, Status> statuses) {
+        if (articles.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            trackedProductRepository.saveAll(articles.stream().map(article -> tracked(user, article, now)).toList());
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Bulk insert of tracked products conflicted, saving one by one: {}", e.getMessage());
+            for (String article : articles) {
+                try {
+                    trackedProductRepository.save(tracked(user, article, now));
+                } catch (DataIntegrityViolationException duplicate) {
+                    statuses.put(article, Status.ALREADY_TRACKED);
+                }
+            }
+        }
+    }
+
+    private static TrackedProduct tracked(User user, String article, LocalDateTime now) {
+        return TrackedProduct.builder()
+                .user(user)
+                .productId(article)
+                .trackedSince(now)
+                .build();
+    }
+
+    private static List<BulkTrackResult> results(Map<String, Status> statuses) {
+        List<BulkTrackResult> results = new ArrayList<>(statuses.size());
+        statuses.forEach((article, status) -> results.add(new BulkTrackResult(article, status)));
+        return results;
+    }
+}
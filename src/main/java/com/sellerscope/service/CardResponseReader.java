@@ -0,0 +1,199 @@
+package com.sellerscope.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Потоковый разбор ответа {@code cards/detail} без построения дерева {@code JsonNode}.
+ * <p>
+ * Из каждого элемента {@code /data/products} читаются только {@code id}, {@code name}, {@code feedbacks},
+ * {@code rating}, {@code priceU}, {@code photos} и {@code description}; остальные поля пропускаются.
+ * Для повторяющегося {@code id} используется первый товар.
+ * <p>
+ * Для каждого товара по мере чтения считается отпечаток — 64-битный FNV-1a по именам и значениям
+ * этих полей. По совпадению отпечатка с запомненным вызывающий код пропускает построение
+ * и сравнение снапшота, поэтому MD5 фото и описания считаются лениво, только по запросу.
+ */
+class CardResponseReader {
+
+    private static final byte[] PHOTO_SEPARATOR = {','};
+    private static final HexFormat HEX = HexFormat.of();
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final JsonFactory jsonFactory;
+
+    CardResponseReader(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Поля товара из ответа Wildberries. {@code name} и {@code priceU} — {@code null}, если их нет в ответе.
+     *
+     * @param fingerprint отпечаток полей товара в ответе (16 hex-символов)
+     */
+    record Card(String name, int feedbacks, double rating, String priceU, List<String> photos, String description,
+                String fingerprint) {
+
+        /**
+         * @return MD5 ссылок на фото, склеенных через запятую
+         */
+        String photoHash() {
+            MessageDigest digest = md5();
+            for (int i = 0; i < photos.size(); i++) {
+                if (i > 0) {
+                    digest.update(PHOTO_SEPARATOR);
+                }
+                digest.update(photos.get(i).getBytes(StandardCharsets.UTF_8));
+            }
+            return HEX.formatHex(digest.digest());
+        }
+
+        /**
+         * @return MD5 описания
+         */
+        String descriptionHash() {
+            return HEX.formatHex(md5().digest(description.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * @return товары ответа по артикулу
+     */
+    Map<String, Card> read(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return read(parser);
+        }
+    }
+
+    Map<String, Card> read(String json) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            return read(parser);
+        }
+    }
+
+    private Map<String, Card> read(JsonParser parser) throws IOException {
+        Map<String, Card> cards = new HashMap<>();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return cards;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                readData(parser, cards);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return cards;
+    }
+
+    private void readData(JsonParser parser, Map<String, Card> cards) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("products".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        readProduct(parser, cards);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readProduct(JsonParser parser, Map<String, Card> cards) throws IOException {
+        String id = null;
+        String name = null;
+        int feedbacks = 0;
+        double rating = 0;
+        String priceU = null;
+        List<String> photos = List.of();
+        String description = "";
+        long fingerprint = FNV_OFFSET;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = scalarText(parser, null);
+                case "name" -> fingerprint = mix(mix(fingerprint, field), name = scalarText(parser, ""));
+                case "feedbacks" -> {
+                    feedbacks = parser.getValueAsInt();
+                    fingerprint = mix(mix(fingerprint, field), Integer.toString(feedbacks));
+                }
+                case "rating" -> {
+                    rating = parser.getValueAsDouble();
+                    fingerprint = mix(mix(fingerprint, field), Double.toString(rating));
+                }
+                case "priceU" -> fingerprint = mix(mix(fingerprint, field), priceU = scalarText(parser, ""));
+                case "photos" -> {
+                    photos = readPhotos(parser, value);
+                    fingerprint = mix(fingerprint, field);
+                    for (String photo : photos) {
+                        fingerprint = mix(fingerprint, photo);
+                    }
+                }
+                case "description" -> fingerprint = mix(mix(fingerprint, field), description = scalarText(parser, ""));
+                default -> parser.skipChildren();
+            }
+        }
+        if (id != null && !cards.containsKey(id)) {
+            cards.put(id, new Card(name, feedbacks, rating, priceU, photos, description, HEX.toHexDigits(fingerprint)));
+        }
+    }
+
+    private List<String> readPhotos(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+        List<String> photos = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            photos.add(scalarText(parser, ""));
+        }
+        return photos;
+    }
+
+    // FNV-1a по символам значения; после значения добавляется разделитель, чтобы "ab"+"c" != "a"+"bc"
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return (hash ^ 0xffff) * FNV_PRIME;
+    }
+
+    // Текст скалярного значения; для объектов и массивов — fallback, как у JsonNode.asText()
+    private static String scalarText(JsonParser parser, String fallback) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return fallback;
+        }
+        return parser.getText();
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
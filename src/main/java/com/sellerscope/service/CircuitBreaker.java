@@ -0,0 +1,109 @@
+package com.sellerscope.service;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Простой автомат размыкания цепи для вызовов внешнего сервиса.
+ * <ul>
+ *     <li>{@code CLOSED} — вызовы разрешены; после {@code failureThreshold} ошибок подряд цепь размыкается.</li>
+ *     <li>{@code OPEN} — вызовы сразу отклоняются в течение {@code openDuration}.</li>
+ *     <li>{@code HALF_OPEN} — разрешён один пробный вызов: успех замыкает цепь, ошибка снова размыкает.</li>
+ * </ul>
+ * Состояние локально для экземпляра приложения.
+ */
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failure threshold must be positive: " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Пытается начать вызов. В состоянии {@code HALF_OPEN} занимает единственный пробный вызов.
+     *
+     * @return {@code true}, если вызов разрешён; тогда по его итогу нужно вызвать
+     * {@link #onSuccess}, {@link #onFailure} или {@link #release}
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.millis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true}, если вызов сейчас был бы разрешён; состояние не меняется
+     */
+    synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> clock.millis() - openedAt >= openMillis;
+            case HALF_OPEN -> !trialInFlight;
+        };
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    /**
+     * @return {@code true}, если цепь разомкнулась в результате этой ошибки
+     */
+    synchronized boolean onFailure() {
+        if (state == State.OPEN) {
+            return false;
+        }
+        if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.millis();
+            consecutiveFailures = 0;
+            trialInFlight = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Освобождает разрешение, если вызов так и не был выполнен.
+     */
+    synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    synchronized State state() {
+        if (state == State.OPEN && clock.millis() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+}
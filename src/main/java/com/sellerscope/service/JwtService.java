@@ -25,10 +25,26 @@ public class JwtService {
     private Long refreshTokenExpiration;
 
     private Key key;
+    // Парсер потокобезопасен, поэтому создаётся один раз, а не на каждый токен
+    private JwtParser parser;
 
     @PostConstruct
     public void init() {
         this.key = Keys.hmacShaKeyFor(secretKey.getBytes());
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
+    }
+
+    /**
+     * Проверяет подпись токена один раз и возвращает нужные для аутентификации поля.
+     *
+     * @throws JwtException если токен некорректен, подпись не совпадает или срок действия истёк
+     */
+    public ParsedToken parse(String token) {
+        Claims claims = extractAllClaims(token);
+        Date expiration = claims.getExpiration();
+        return new ParsedToken(claims.getSubject(), expiration == null ? null : expiration.toInstant());
     }
 
     public String extractEmail(String token) {
@@ -53,12 +69,11 @@ public class JwtService {
     }
 
     public boolean isAccessTokenValid(String token, UserDetails userDetails) {
-        final String email = extractEmail(token);
-        return email.equals(userDetails.getUsername()) && !isTokenExpired(token);
+        return isAccessTokenValid(parse(token), userDetails);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public boolean isAccessTokenValid(ParsedToken token, UserDetails userDetails) {
+        return token.subject() != null && token.subject().equals(userDetails.getUsername()) && !token.isExpired();
     }
 
     public Date extractExpiration(String token) {
@@ -70,10 +85,7 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
+        return parser.parseClaimsJws(token)
                 .getBody();
     }
 }
\ No newline at end of file
@@ -0,0 +1,275 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кэш последнего сохранённого снапшота по артикулу в Redis.
+ * <p>
+ * Хранится в одном {@link RMap} с {@link StringCodec}: значение — компактная строка
+ * из полей, нужных для сравнения снапшотов. Кэш заполняется при записи
+ * (write-through из планировщика и {@link TrackingService}) и при промахе чтения.
+ * <p>
+ * Записи артикулов, которые больше никто не отслеживает, удаляются при сверке расписания обновления
+ * ({@link #retainAll}), иначе кэш рос бы без ограничения.
+ * <p>
+ * Если Redis недоступен, ошибка не пробрасывается: вызывающий код получает промах
+ * и идёт в БД, а обращения к Redis приостанавливаются на несколько секунд.
+ * Артикулы, запись которых не удалась, удаляются из кэша при восстановлении,
+ * чтобы не сравнивать новые снапшоты с устаревшим состоянием.
+ * <p>
+ * Вместе со снапшотом может храниться отпечаток ответа Wildberries, из которого получено это состояние
+ * (см. {@link CardResponseReader}). Запись снапшота без отпечатка стирает прежний отпечаток,
+ * поэтому совпадение отпечатка всегда означает, что ответ совпадает с последним сохранённым снапшотом.
+ * <p>
+ * Метрика {@code snapshot.cache.requests} с тегом {@code result} = hit | miss | error.
+ */
+@Service
+public class LatestSnapshotCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LatestSnapshotCache.class);
+    static final String MAP_NAME = "snapshot:latest";
+    private static final String SEPARATOR = "|";
+    private static final String VERSION = "2";
+    private static final long BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final int SCAN_BATCH = 1000;
+
+    private final RedissonClient redissonClient;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter errors;
+    private final Set<String> pendingEvictions = ConcurrentHashMap.newKeySet();
+    private volatile long unavailableUntil;
+
+    public LatestSnapshotCache(RedissonClient redissonClient, MeterRegistry meterRegistry) {
+        this.redissonClient = redissonClient;
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+        this.errors = counter(meterRegistry, "error");
+    }
+
+    /**
+     * @return последний снапшот артикула или пустой результат при промахе и недоступности Redis
+     */
+    public Optional<ProductSnapshot> get(String article) {
+        return Optional.ofNullable(getAll(Set.of(article)).get(article));
+    }
+
+    /**
+     * @return найденные в кэше снапшоты; отсутствующие артикулы считаются промахами
+     */
+    public Map<String, ProductSnapshot> getAll(Collection<String> articles) {
+        if (articles.isEmpty() || !available()) {
+            misses.increment(articles.size());
+            return Map.of();
+        }
+        try {
+            Map<String, String> cached = map().getAll(new HashSet<>(articles));
+            Map<String, ProductSnapshot> result = new HashMap<>();
+            cached.forEach((article, value) -> {
+                ProductSnapshot snapshot = decode(article, value);
+                if (snapshot != null) {
+                    result.put(article, snapshot);
+                }
+            });
+            hits.increment(result.size());
+            misses.increment(articles.size() - result.size());
+            return result;
+        } catch (RuntimeException e) {
+            onFailure("read", e);
+            misses.increment(articles.size());
+            return Map.of();
+        }
+    }
+
+    /**
+     * @return отпечатки ответа, сохранённые вместе с последними снапшотами; артикулы без отпечатка отсутствуют
+     */
+    public Map<String, String> getFingerprints(Collection<String> articles) {
+        if (articles.isEmpty() || !available()) {
+            return Map.of();
+        }
+        try {
+            Map<String, String> fingerprints = new HashMap<>();
+            map().getAll(new HashSet<>(articles)).forEach((article, value) -> {
+                String fingerprint = fingerprint(value);
+                if (fingerprint != null) {
+                    fingerprints.put(article, fingerprint);
+                }
+            });
+            return fingerprints;
+        } catch (RuntimeException e) {
+            onFailure("read", e);
+            return Map.of();
+        }
+    }
+
+    public void put(ProductSnapshot snapshot) {
+        putAll(Set.of(snapshot));
+    }
+
+    /**
+     * Записывает снапшоты как последние для своих артикулов, без отпечатков ответа.
+     */
+    public void putAll(Collection<ProductSnapshot> snapshots) {
+        putAll(snapshots, Map.of());
+    }
+
+    /**
+     * Записывает снапшоты как последние для своих артикулов вместе с отпечатками ответа,
+     * из которого получено их состояние.
+     *
+     * @param fingerprints отпечатки по артикулу; для артикулов без отпечатка прежний стирается
+     */
+    public void putAll(Collection<ProductSnapshot> snapshots, Map<String, String> fingerprints) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        Map<String, String> values = new HashMap<>();
+        snapshots.forEach(snapshot -> values.put(snapshot.getProductId(),
+                encode(snapshot, fingerprints.get(snapshot.getProductId()))));
+        if (!available()) {
+            pendingEvictions.addAll(values.keySet());
+            return;
+        }
+        try {
+            map().putAll(values);
+        } catch (RuntimeException e) {
+            pendingEvictions.addAll(values.keySet());
+            onFailure("write", e);
+        }
+    }
+
+    /**
+     * Удаляет из кэша все артикулы, кроме переданных. Удаление записи безопасно: следующее чтение
+     * артикула, добавленного в отслеживание после выборки, просто пойдёт в БД.
+     *
+     * @param articles артикулы, записи которых нужно сохранить (отслеживаемые)
+     * @return число удалённых записей; 0, если Redis недоступен
+     */
+    public int retainAll(Collection<String> articles) {
+        if (!available()) {
+            return 0;
+        }
+        Set<String> retained = new HashSet<>(articles);
+        try {
+            RMap<String, String> map = map();
+            List<String> stale = new ArrayList<>();
+            for (String article : map.keySet(SCAN_BATCH)) {
+                if (!retained.contains(article)) {
+                    stale.add(article);
+                }
+            }
+            for (int from = 0; from < stale.size(); from += SCAN_BATCH) {
+                List<String> chunk = stale.subList(from, Math.min(from + SCAN_BATCH, stale.size()));
+                map.fastRemove(chunk.toArray(String[]::new));
+            }
+            return stale.size();
+        } catch (RuntimeException e) {
+            onFailure("evict", e);
+            return 0;
+        }
+    }
+
+    private boolean available() {
+        if (System.currentTimeMillis() < unavailableUntil) {
+            return false;
+        }
+        if (!pendingEvictions.isEmpty()) {
+            String[] keys = pendingEvictions.toArray(String[]::new);
+            try {
+                map().fastRemove(keys);
+                pendingEvictions.removeAll(Set.of(keys));
+            } catch (RuntimeException e) {
+                onFailure("evict", e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void onFailure(String operation, RuntimeException e) {
+        errors.increment();
+        unavailableUntil = System.currentTimeMillis() + BACKOFF_MILLIS;
+        log.warn("Latest snapshot cache {} failed, falling back to database: {}", operation, e.getMessage());
+    }
+
+    private RMap<String, String> map() {
+        return redissonClient.getMap(MAP_NAME, StringCodec.INSTANCE);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("snapshot.cache.requests")
+                .description("Обращения к кэшу последних снапшотов")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    static String encode(ProductSnapshot snapshot) {
+        return encode(snapshot, null);
+    }
+
+    /**
+     * Формат: {@code 2|id|createdAt|price|reviewCount|rating|photoHash|descriptionHash|fingerprint|name}.
+     * Название идёт последним, поэтому может содержать разделитель.
+     */
+    static String encode(ProductSnapshot snapshot, String fingerprint) {
+        return String.join(SEPARATOR,
+                VERSION,
+                snapshot.getId() == null ? "" : snapshot.getId().toString(),
+                String.valueOf(snapshot.getCreatedAt()),
+                snapshot.getPrice().toPlainString(),
+                Integer.toString(snapshot.getReviewCount()),
+                Double.toString(snapshot.getRating()),
+                String.valueOf(snapshot.getPhotoHash()),
+                String.valueOf(snapshot.getDescriptionHash()),
+                fingerprint == null ? "" : fingerprint,
+                snapshot.getName() == null ? "" : snapshot.getName());
+    }
+
+    static ProductSnapshot decode(String article, String value) {
+        String[] parts = value.split("\\" + SEPARATOR, 10);
+        if (parts.length != 10 || !VERSION.equals(parts[0])) {
+            return null;
+        }
+        return ProductSnapshot.builder()
+                .id(parts[1].isEmpty() ? null : Long.valueOf(parts[1]))
+                .productId(article)
+                .createdAt("null".equals(parts[2]) ? null : LocalDateTime.parse(parts[2]))
+                .price(new BigDecimal(parts[3]))
+                .reviewCount(Integer.parseInt(parts[4]))
+                .rating(Double.parseDouble(parts[5]))
+                .photoHash("null".equals(parts[6]) ? null : parts[6])
+                .descriptionHash("null".equals(parts[7]) ? null : parts[7])
+                .name(parts[9])
+                .build();
+    }
+
+    static String fingerprint(String value) {
+        String[] parts = value.split("\\" + SEPARATOR, 10);
+        if (parts.length != 10 || !VERSION.equals(parts[0]) || parts[8].isEmpty()) {
+            return null;
+        }
+        return parts[8];
+    }
+}
@@ -0,0 +1,19 @@
+package com.sellerscope.service;
+
+import java.time.Instant;
+
+/**
+ * Access-токен, подпись которого уже проверена {@link JwtService#parse}.
+ *
+ * @param subject    email пользователя
+ * @param expiration момент истечения; {@code null}, если в токене нет срока действия
+ */
+public record ParsedToken(String subject, Instant expiration) {
+
+    /**
+     * @return {@code true}, если срок действия истёк или не указан
+     */
+    public boolean isExpired() {
+        return expiration == null || !expiration.isAfter(Instant.now());
+    }
+}
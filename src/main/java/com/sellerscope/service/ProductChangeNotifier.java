@@ -0,0 +1,268 @@
+package com.sellerscope.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.TrackedProduct;
+import com.sellerscope.entity.User;
+import com.sellerscope.repository.TrackedProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Push-уведомления об изменениях отслеживаемых товаров (Server-Sent Events) вместо опроса
+ * {@code /track/changes/{article}}.
+ * <p>
+ * Планировщик обновления после сохранения изменённых снапшотов чанка публикует их одним сообщением
+ * в {@link RTopic} {@code track:changes}. Каждый экземпляр приложения подписан на топик и рассылает
+ * событие {@code change} со снапшотом своим подключённым пользователям, которые отслеживают артикул;
+ * кто что отслеживает, проверяется одним запросом на сообщение и только при наличии подписчиков.
+ * Рассылка выполняется в виртуальных потоках, поэтому медленный клиент не задерживает поток Redisson.
+ * <p>
+ * Раз в {@code tracking.stream.heartbeat} подписчикам отправляется комментарий: соединение
+ * не закрывается прокси по простою, а отключившиеся клиенты обнаруживаются и удаляются.
+ * Каждый ping отправляется отдельной задачей в тех же виртуальных потоках: общий поток планировщика
+ * не ждёт записи в сокет зависшего клиента, а следующий ping клиенту не ставится, пока не ушёл предыдущий.
+ * Доставка «не более одного раза»: после переподключения пропущенные изменения читаются
+ * из {@code /track/changes}.
+ */
+@Component
+public class ProductChangeNotifier {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductChangeNotifier.class);
+    static final String CHANGES_TOPIC = "track:changes";
+    static final String CHANGE_EVENT = "change";
+    private static final TypeReference<List<ProductSnapshot>> SNAPSHOTS = new TypeReference<>() {
+    };
+
+    /**
+     * Подключение пользователя.
+     *
+     * @param articles артикулы, изменения которых нужны клиенту; пустой набор — все отслеживаемые
+     */
+    record Subscription(SseEmitter emitter, Set<String> articles, AtomicBoolean pinging) {
+        Subscription(SseEmitter emitter, Set<String> articles) {
+            this(emitter, articles, new AtomicBoolean());
+        }
+
+        boolean accepts(String article) {
+            return articles.isEmpty() || articles.contains(article);
+        }
+    }
+
+    private final RedissonClient redissonClient;
+    private final TrackedProductRepository trackedProductRepository;
+    private final ObjectMapper objectMapper;
+    private final Duration timeout;
+    private final int maxPerUser;
+    private final Map<Long, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final ExecutorService deliveryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Integer listenerId;
+
+    public ProductChangeNotifier(RedissonClient redissonClient,
+                                 TrackedProductRepository trackedProductRepository,
+                                 ObjectMapper objectMapper,
+                                 @Value("${tracking.stream.timeout:30m}") Duration timeout,
+                                 @Value("${tracking.stream.max-per-user:5}") int maxPerUser) {
+        if (maxPerUser < 1) {
+            throw new IllegalArgumentException("tracking.stream.max-per-user must be positive: " + maxPerUser);
+        }
+        this.redissonClient = redissonClient;
+        this.trackedProductRepository = trackedProductRepository;
+        this.objectMapper = objectMapper;
+        this.timeout = timeout;
+        this.maxPerUser = maxPerUser;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        try {
+            listenerId = topic().addListener(String.class, (channel, message) -> onMessage(message));
+        } catch (RuntimeException e) {
+            log.warn("Failed to subscribe to {}, change events are not delivered: {}", CHANGES_TOPIC, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        Integer id = listenerId;
+        if (id != null) {
+            topic().removeListener(id);
+        }
+        deliveryExecutor.shutdownNow();
+        subscriptions.values().forEach(set -> set.forEach(subscription -> subscription.emitter().complete()));
+    }
+
+    /**
+     * Открывает поток событий для пользователя.
+     *
+     * @param articles артикулы, изменения которых нужны; пустой набор — все отслеживаемые пользователем
+     * @throws IllegalStateException если у пользователя уже {@code tracking.stream.max-per-user} подключений
+     */
+    public SseEmitter open(User user, Set<String> articles) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        register(user.getId(), emitter, articles);
+        try {
+            emitter.send(SseEmitter.event().comment("connected"));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    void register(Long userId, SseEmitter emitter, Set<String> articles) {
+        Subscription subscription = new Subscription(emitter, Set.copyOf(articles));
+        subscriptions.compute(userId, (id, current) -> {
+            Set<Subscription> set = current == null ? new CopyOnWriteArraySet<>() : current;
+            if (set.size() >= maxPerUser) {
+                throw new IllegalStateException("Too many change streams for user " + userId);
+            }
+            set.add(subscription);
+            return set;
+        });
+        Runnable remove = () -> remove(userId, subscription);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(error -> remove.run());
+    }
+
+    /**
+     * Публикует изменённые снапшоты для всех экземпляров приложения. Ошибка публикации
+     * не влияет на сохранение: клиенты увидят изменения в {@code /track/changes}.
+     */
+    public void publish(Collection<ProductSnapshot> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            topic().publish(objectMapper.writeValueAsString(changed));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Failed to publish {} change events: {}", changed.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tracking.stream.heartbeat:25s}")
+    public void heartbeat() {
+        subscriptions.forEach((userId, set) -> set.forEach(subscription -> {
+            if (!subscription.pinging().compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                deliveryExecutor.execute(() -> ping(userId, subscription));
+            } catch (RejectedExecutionException e) {
+                subscription.pinging().set(false);
+            }
+        }));
+    }
+
+    private void ping(Long userId, Subscription subscription) {
+        try {
+            subscription.emitter().send(SseEmitter.event().comment("ping"));
+        } catch (IOException | IllegalStateException e) {
+            drop(userId, subscription, e);
+        } finally {
+            subscription.pinging().set(false);
+        }
+    }
+
+    /**
+     * @return число открытых потоков на этом экземпляре
+     */
+    public int connections() {
+        return subscriptions.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private void onMessage(String message) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        try {
+            List<ProductSnapshot> snapshots = objectMapper.readValue(message, SNAPSHOTS);
+            deliveryExecutor.execute(() -> deliver(snapshots));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Failed to dispatch change events: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Рассылает снапшоты подключённым пользователям, которые отслеживают их артикулы.
+     */
+    void deliver(List<ProductSnapshot> snapshots) {
+        Set<Long> userIds = new HashSet<>(subscriptions.keySet());
+        if (userIds.isEmpty() || snapshots.isEmpty()) {
+            return;
+        }
+        Map<String, ProductSnapshot> byArticle = new HashMap<>();
+        snapshots.forEach(snapshot -> byArticle.put(snapshot.getProductId(), snapshot));
+        List<TrackedProduct> tracked;
+        try {
+            tracked = trackedProductRepository.findByUserIdInAndProductIdIn(userIds, byArticle.keySet());
+        } catch (RuntimeException e) {
+            log.warn("Failed to resolve subscribers for {} change events: {}", snapshots.size(), e.getMessage());
+            return;
+        }
+        for (TrackedProduct product : tracked) {
+            Long userId = product.getUser().getId();
+            ProductSnapshot snapshot = byArticle.get(product.getProductId());
+            for (Subscription subscription : subscriptions.getOrDefault(userId, Set.of())) {
+                if (subscription.accepts(product.getProductId())) {
+                    send(userId, subscription, snapshot);
+                }
+            }
+        }
+    }
+
+    private void send(Long userId, Subscription subscription, ProductSnapshot snapshot) {
+        try {
+            subscription.emitter().send(SseEmitter.event()
+                    .name(CHANGE_EVENT)
+                    .id(snapshot.getProductId() + ":" + snapshot.getCreatedAt())
+                    .data(snapshot, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            drop(userId, subscription, e);
+        }
+    }
+
+    private void drop(Long userId, Subscription subscription, Exception cause) {
+        log.debug("Change stream of user {} closed: {}", userId, cause.getMessage());
+        remove(userId, subscription);
+        subscription.emitter().completeWithError(cause);
+    }
+
+    private void remove(Long userId, Subscription subscription) {
+        subscriptions.computeIfPresent(userId, (id, set) -> {
+            set.remove(subscription);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private RTopic topic() {
+        return redissonClient.getTopic(CHANGES_TOPIC, StringCodec.INSTANCE);
+    }
+}
@@ -0,0 +1,156 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Архив холодной истории снапшотов на диске ({@code snapshot.archive.dir}).
+ * <p>
+ * История каждого артикула лежит в своём каталоге сегментами {@link SnapshotSegmentCodec}:
+ * один файл {@code <первый>-<последний>.seg} на каждый перенос; по времени первого снапшота в имени
+ * чтение пропускает сегменты, целиком лежащие позже курсора. Сегмент сначала пишется
+ * во временный файл и затем атомарно переименовывается, поэтому читатели не видят недописанных файлов.
+ * Сегменты, записанные повторно после неудачного удаления строк из БД, могут пересекаться —
+ * при чтении одинаковые снапшоты схлопываются.
+ */
+@Component
+public class SnapshotArchive {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Pattern SAFE_ARTICLE = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSSSSS");
+    private static final Comparator<ProductSnapshot> NEWEST_FIRST = Comparator
+            .comparing(ProductSnapshot::getCreatedAt)
+            .thenComparing(ProductSnapshot::getId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .reversed();
+
+    private final Path dir;
+
+    public SnapshotArchive(@Value("${snapshot.archive.dir:}") String dir) {
+        this(dir.isBlank() ? null : Path.of(dir));
+    }
+
+    /**
+     * @param dir каталог архива; {@code null} — архив не настроен: чтение ничего не находит, запись запрещена
+     */
+    SnapshotArchive(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return настроен ли каталог архива
+     */
+    public boolean isConfigured() {
+        return dir != null;
+    }
+
+    /**
+     * Записывает сегмент истории артикула.
+     *
+     * @param snapshots снапшоты по возрастанию {@code createdAt}
+     */
+    public void write(String article, List<ProductSnapshot> snapshots) {
+        if (!SAFE_ARTICLE.matcher(article).matches()) {
+            throw new IllegalArgumentException("Article can't be archived: " + article);
+        }
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        if (dir == null) {
+            throw new IllegalStateException("snapshot.archive.dir is not configured");
+        }
+        Path articleDir = dir.resolve(article);
+        String name = NAME_FORMAT.format(snapshots.get(0).getCreatedAt()) + "-"
+                + NAME_FORMAT.format(snapshots.get(snapshots.size() - 1).getCreatedAt()) + SEGMENT_SUFFIX;
+        try {
+            Files.createDirectories(articleDir);
+            Path temp = Files.createTempFile(articleDir, name, ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    SnapshotSegmentCodec.write(snapshots, out);
+                }
+                Files.move(temp, articleDir.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write archive segment for article " + article, e);
+        }
+    }
+
+    /**
+     * @param before вернуть снапшоты строго раньше этого момента; {@code null} — все
+     * @return архивные снапшоты артикула по убыванию {@code createdAt}
+     */
+    public List<ProductSnapshot> read(String article, LocalDateTime before) {
+        if (dir == null || !SAFE_ARTICLE.matcher(article).matches()) {
+            return List.of();
+        }
+        Path articleDir = dir.resolve(article);
+        if (!Files.isDirectory(articleDir)) {
+            return List.of();
+        }
+        List<ProductSnapshot> snapshots = new ArrayList<>();
+        try (Stream<Path> segments = Files.list(articleDir)) {
+            List<Path> selected = segments
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .filter(path -> before == null || startsBefore(path, before))
+                    .toList();
+            for (Path segment : selected) {
+                try (InputStream in = Files.newInputStream(segment)) {
+                    for (ProductSnapshot snapshot : SnapshotSegmentCodec.read(article, in)) {
+                        if (before == null || snapshot.getCreatedAt().isBefore(before)) {
+                            snapshots.add(snapshot);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archive of article " + article, e);
+        }
+        snapshots.sort(NEWEST_FIRST);
+        List<ProductSnapshot> distinct = new ArrayList<>(snapshots.size());
+        for (ProductSnapshot snapshot : snapshots) {
+            ProductSnapshot previous = distinct.isEmpty() ? null : distinct.get(distinct.size() - 1);
+            if (previous == null || !previous.getCreatedAt().equals(snapshot.getCreatedAt())
+                    || !Objects.equals(previous.getId(), snapshot.getId())) {
+                distinct.add(snapshot);
+            }
+        }
+        return distinct;
+    }
+
+    // Сегмент, начинающийся не раньше before, не содержит подходящих снапшотов и не распаковывается.
+    // Имя, из которого не удаётся прочитать начало, читается целиком
+    private static boolean startsBefore(Path segment, LocalDateTime before) {
+        String name = segment.getFileName().toString();
+        int separator = name.indexOf('-');
+        if (separator < 0) {
+            return true;
+        }
+        try {
+            return LocalDateTime.parse(name.substring(0, separator), NAME_FORMAT).isBefore(before);
+        } catch (DateTimeParseException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.RBucket;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных запросов снапшота одного артикула (single-flight).
+ * <p>
+ * Порядок для артикула:
+ * <ul>
+ *     <li>если последний сохранённый снапшот моложе {@code tracking.coalescing.reuse-age}, возвращается он
+ *     без обращения к Wildberries;</li>
+ *     <li>если на этом узле запрос артикула уже выполняется, вызывающий получает его результат;</li>
+ *     <li>иначе узел ставит в Redis маркер {@code track:inflight:{article}}. Узел, поставивший маркер,
+ *     запрашивает и сохраняет снапшот, после чего публикует артикул в {@link RTopic} {@code track:fetched};
+ *     остальные узлы ждут публикации и читают сохранённый снапшот.</li>
+ * </ul>
+ * Если публикация не пришла за {@code tracking.coalescing.wait-timeout} (маркер живёт столько же)
+ * или после неё свежего снапшота нет (запрос ведущего узла не удался), узел запрашивает снапшот сам.
+ * При недоступности Redis запросы объединяются только в пределах узла.
+ * <p>
+ * Метрика {@code tracking.snapshot.requests} с тегом {@code result} = reused | coalesced | fetched.
+ */
+@Component
+public class SnapshotFetchCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotFetchCoalescer.class);
+    static final String IN_FLIGHT_PREFIX = "track:inflight:";
+    static final String FETCHED_TOPIC = "track:fetched";
+
+    private final RedissonClient redissonClient;
+    private final SnapshotStorageService storage;
+    private final Duration reuseAge;
+    private final Duration waitTimeout;
+    private final Clock clock;
+    private final String nodeId = UUID.randomUUID().toString();
+    // Выполняющиеся на этом узле запросы по артикулу
+    private final Map<String, CompletableFuture<ProductSnapshot>> inFlight = new ConcurrentHashMap<>();
+    // Артикулы, запрос которых выполняет другой узел, и запасной запрос на случай его неудачи
+    private final Map<String, Supplier<CompletableFuture<ProductSnapshot>>> awaitingRemote = new ConcurrentHashMap<>();
+    private final Counter reused;
+    private final Counter coalesced;
+    private final Counter fetched;
+    // Ожидание другого узла разрешается чтением из Redis и БД и, возможно, запросом к Wildberries:
+    // блокирующая работа выполняется в виртуальных потоках, а не в общем ForkJoinPool
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Integer listenerId;
+
+    public SnapshotFetchCoalescer(RedissonClient redissonClient,
+                                  SnapshotStorageService storage,
+                                  @Value("${tracking.coalescing.reuse-age:5m}") Duration reuseAge,
+                                  @Value("${tracking.coalescing.wait-timeout:30s}") Duration waitTimeout,
+                                  MeterRegistry meterRegistry) {
+        this(redissonClient, storage, reuseAge, waitTimeout, meterRegistry, Clock.systemDefaultZone());
+    }
+
+    SnapshotFetchCoalescer(RedissonClient redissonClient, SnapshotStorageService storage, Duration reuseAge,
+                           Duration waitTimeout, MeterRegistry meterRegistry, Clock clock) {
+        if (waitTimeout.isNegative() || waitTimeout.isZero()) {
+            throw new IllegalArgumentException("tracking.coalescing.wait-timeout must be positive: " + waitTimeout);
+        }
+        this.redissonClient = redissonClient;
+        this.storage = storage;
+        this.reuseAge = reuseAge;
+        this.waitTimeout = waitTimeout;
+        this.clock = clock;
+        this.reused = counter(meterRegistry, "reused");
+        this.coalesced = counter(meterRegistry, "coalesced");
+        this.fetched = counter(meterRegistry, "fetched");
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        try {
+            listenerId = topic().addListener(String.class, (channel, article) -> onFetched(article));
+        } catch (RuntimeException e) {
+            log.warn("Failed to subscribe to {}, coalescing is limited to this node: {}", FETCHED_TOPIC, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        Integer id = listenerId;
+        if (id != null) {
+            topic().removeListener(id);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Возвращает актуальный снапшот артикула, объединяя одновременные запросы.
+     *
+     * @param loader запрашивает снапшот у Wildberries и сохраняет его; вызывается не более одного раза
+     *               на артикул среди одновременных вызовов этого узла
+     * @return свежий сохранённый снапшот или результат общего запроса
+     */
+    public CompletableFuture<ProductSnapshot> getLatest(String article, Supplier<CompletableFuture<ProductSnapshot>> loader) {
+        Optional<ProductSnapshot> fresh = findFresh(article);
+        if (fresh.isPresent()) {
+            reused.increment();
+            return CompletableFuture.completedFuture(fresh.get());
+        }
+        CompletableFuture<ProductSnapshot> created = new CompletableFuture<>();
+        CompletableFuture<ProductSnapshot> existing = inFlight.putIfAbsent(article, created);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.copy();
+        }
+        created.whenComplete((snapshot, e) -> inFlight.remove(article, created));
+
+        // Ожидание регистрируется до маркера, чтобы не пропустить публикацию ведущего узла
+        awaitingRemote.put(article, loader);
+        if (!acquireMarker(article)) {
+            coalesced.increment();
+            CompletableFuture.delayedExecutor(waitTimeout.toMillis(), TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> {
+                        // Таймер относится только к этому запросу: если он уже разрешён публикацией,
+                        // по артикулу может ждать следующий, и его таймаут ещё не истёк
+                        if (inFlight.get(article) == created) {
+                            resolveRemote(article);
+                        }
+                    });
+            return created.copy();
+        }
+        if (awaitingRemote.remove(article) != null) {
+            load(article, created, loader, true);
+        } else {
+            // Публикация предыдущего ведущего уже разрешила запрос
+            releaseMarker(article);
+        }
+        return created.copy();
+    }
+
+    private void onFetched(String article) {
+        if (awaitingRemote.containsKey(article)) {
+            CompletableFuture.runAsync(() -> resolveRemote(article), executor);
+        }
+    }
+
+    // Разрешает запрос, ожидавший другой узел: по публикации или по таймауту — что случится раньше
+    private void resolveRemote(String article) {
+        Supplier<CompletableFuture<ProductSnapshot>> loader = awaitingRemote.remove(article);
+        CompletableFuture<ProductSnapshot> pending = inFlight.get(article);
+        if (loader == null || pending == null) {
+            return;
+        }
+        Optional<ProductSnapshot> fresh;
+        try {
+            fresh = findFresh(article);
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            return;
+        }
+        if (fresh.isPresent()) {
+            pending.complete(fresh.get());
+            return;
+        }
+        log.warn("No fresh snapshot for article {} after waiting for another node, fetching locally", article);
+        load(article, pending, loader, false);
+    }
+
+    private void load(String article, CompletableFuture<ProductSnapshot> target,
+                      Supplier<CompletableFuture<ProductSnapshot>> loader, boolean leader) {
+        fetched.increment();
+        CompletableFuture<ProductSnapshot> loaded;
+        try {
+            loaded = loader.get();
+        } catch (RuntimeException e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((snapshot, e) -> {
+            if (leader) {
+                releaseMarker(article);
+                publish(article);
+            }
+            if (e != null) {
+                target.completeExceptionally(e);
+            } else {
+                target.complete(snapshot);
+            }
+        });
+    }
+
+    /**
+     * Свежие снапшоты для набора артикулов одним запросом к хранилищу, без объединения запросов:
+     * для пакетного добавления в отслеживание, где остальные артикулы запрашиваются пакетами.
+     *
+     * @return снапшоты моложе {@code tracking.coalescing.reuse-age} по артикулу
+     */
+    public Map<String, ProductSnapshot> findFresh(Collection<String> articles) {
+        LocalDateTime threshold = LocalDateTime.now(clock).minus(reuseAge);
+        Map<String, ProductSnapshot> fresh = new HashMap<>();
+        storage.findLatest(articles).forEach((article, snapshot) -> {
+            if (snapshot.getCreatedAt() != null && snapshot.getCreatedAt().isAfter(threshold)) {
+                fresh.put(article, snapshot);
+            }
+        });
+        reused.increment(fresh.size());
+        fetched.increment(articles.size() - fresh.size());
+        return fresh;
+    }
+
+    private Optional<ProductSnapshot> findFresh(String article) {
+        LocalDateTime threshold = LocalDateTime.now(clock).minus(reuseAge);
+        return storage.findLatest(article)
+                .filter(snapshot -> snapshot.getCreatedAt() != null && snapshot.getCreatedAt().isAfter(threshold));
+    }
+
+    private boolean acquireMarker(String article) {
+        try {
+            return marker(article).setIfAbsent(nodeId, waitTimeout);
+        } catch (RuntimeException e) {
+            log.warn("Failed to mark in-flight fetch for article {}, fetching locally: {}", article, e.getMessage());
+            return true;
+        }
+    }
+
+    // Маркер снимается, только если он ещё наш: после истечения wait-timeout его мог поставить другой узел
+    private void releaseMarker(String article) {
+        try {
+            marker(article).compareAndSet(nodeId, null);
+        } catch (RuntimeException e) {
+            log.warn("Failed to clear in-flight marker for article {}: {}", article, e.getMessage());
+        }
+    }
+
+    private void publish(String article) {
+        try {
+            topic().publish(article);
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish fetched article {}: {}", article, e.getMessage());
+        }
+    }
+
+    private RBucket<String> marker(String article) {
+        return redissonClient.getBucket(IN_FLIGHT_PREFIX + article, StringCodec.INSTANCE);
+    }
+
+    private RTopic topic() {
+        return redissonClient.getTopic(FETCHED_TOPIC, StringCodec.INSTANCE);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("tracking.snapshot.requests")
+                .description("Запросы снапшота при добавлении товара в отслеживание")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,204 @@
+package com.sellerscope.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.repository.ProductSnapshotRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Сервис чтения истории снапшотов товара.
+ * <p>
+ * Страницы выбираются keyset-пагинацией: курсор {@code (before, beforeId)} — {@code createdAt} и {@code id}
+ * последнего снапшота предыдущей страницы, поэтому стоимость запроса не зависит от глубины, а снапшоты
+ * одного пакета с общим {@code createdAt} не теряются на границе страниц. Без {@code beforeId}
+ * (и в режиме {@code delta}, где у восстановленных снапшотов нет {@code id}) курсор — только {@code createdAt}.
+ * Для выгрузки всей истории используется потоковое чтение без загрузки списка в память.
+ * <p>
+ * В режиме хранения {@code delta} чтение делегируется {@link SnapshotStorageService},
+ * который восстанавливает полные снапшоты из ключевых снапшотов и дельт.
+ * <p>
+ * Когда записи в БД заканчиваются, история продолжается снапшотами из архива ({@link SnapshotArchive}).
+ */
+@Service
+@RequiredArgsConstructor
+public class SnapshotHistoryService {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final SerializedString NEW_LINE = new SerializedString("\n");
+
+    private final ProductSnapshotRepository repository;
+    private final SnapshotStorageService storage;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param article артикул товара
+     * @param before   курсор: вернуть снапшоты раньше этого момента; {@code null} — с последнего
+     * @param beforeId вторая часть курсора: снапшоты с {@code createdAt == before} и меньшим {@code id};
+     *                 {@code null} — только строго раньше {@code before}
+     * @param limit    размер страницы; {@code null} — {@link #DEFAULT_PAGE_SIZE}, максимум {@link #MAX_PAGE_SIZE}
+     * @return страница истории в порядке убывания {@code (createdAt, id)}
+     */
+    public List<ProductSnapshot> getHistoryPage(String article, LocalDateTime before, Long beforeId, Integer limit) {
+        int size = pageSize(limit);
+        List<ProductSnapshot> page;
+        if (storage.isDeltaMode()) {
+            page = storage.findHistoryPage(article, before, size, false);
+        } else {
+            Limit pageLimit = Limit.of(size);
+            page = before == null
+                    ? repository.findByProductIdOrderByCreatedAtDescIdDesc(article, pageLimit)
+                    : repository.findPageBefore(article, before, cursorId(beforeId), pageLimit);
+        }
+        return withArchived(article, page, before, beforeId, size, false);
+    }
+
+    /**
+     * То же, что {@link #getHistoryPage}, но только снапшоты с изменениями.
+     */
+    public List<ProductSnapshot> getChangesPage(String article, LocalDateTime before, Long beforeId, Integer limit) {
+        int size = pageSize(limit);
+        List<ProductSnapshot> page;
+        if (storage.isDeltaMode()) {
+            page = storage.findHistoryPage(article, before, size, true);
+        } else {
+            Limit pageLimit = Limit.of(size);
+            page = before == null
+                    ? repository.findByProductIdAndChangedTrueOrderByCreatedAtDescIdDesc(article, pageLimit)
+                    : repository.findChangesPageBefore(article, before, cursorId(beforeId), pageLimit);
+        }
+        return withArchived(article, page, before, beforeId, size, true);
+    }
+
+    /**
+     * @return все снапшоты с изменениями в порядке убывания {@code createdAt}
+     */
+    public List<ProductSnapshot> getChanges(String article) {
+        if (storage.isDeltaMode()) {
+            return storage.findHistory(article).stream()
+                    .filter(ProductSnapshot::isChanged)
+                    .toList();
+        }
+        List<ProductSnapshot> changes = repository.findByProductIdAndChangedTrueOrderByCreatedAtDesc(article);
+        return withArchived(article, changes, null, null, Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Пишет всю историю артикула в формате NDJSON (один снапшот на строку).
+     * Снапшоты читаются из БД потоком и сразу отсоединяются от контекста персистентности.
+     * В режиме {@code delta} история читается восстановленными страницами по {@link #MAX_PAGE_SIZE}.
+     * После записей из БД выгружаются архивные снапшоты.
+     *
+     * @param article артикул товара
+     * @param out     поток ответа
+     */
+    @Transactional(readOnly = true)
+    public void exportHistory(String article, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(NEW_LINE);
+            ObjectWriter writer = objectMapper.writerFor(ProductSnapshot.class);
+            boolean written = storage.isDeltaMode()
+                    ? exportReconstructed(article, generator, writer)
+                    : exportStream(article, generator, writer);
+            if (written) {
+                generator.writeRaw(NEW_LINE.getValue());
+            }
+        }
+        out.flush();
+    }
+
+    private boolean exportStream(String article, JsonGenerator generator, ObjectWriter writer) throws IOException {
+        boolean written = false;
+        LocalDateTime oldest = null;
+        try (Stream<ProductSnapshot> history = repository.streamByProductId(article)) {
+            Iterator<ProductSnapshot> iterator = history.iterator();
+            while (iterator.hasNext()) {
+                ProductSnapshot snapshot = iterator.next();
+                writer.writeValue(generator, snapshot);
+                entityManager.detach(snapshot);
+                oldest = snapshot.getCreatedAt();
+                written = true;
+            }
+        }
+        return exportArchived(article, oldest, generator, writer) || written;
+    }
+
+    private boolean exportReconstructed(String article, JsonGenerator generator, ObjectWriter writer) throws IOException {
+        boolean written = false;
+        LocalDateTime before = null;
+        List<ProductSnapshot> page;
+        do {
+            page = storage.findHistoryPage(article, before, MAX_PAGE_SIZE, false);
+            for (ProductSnapshot snapshot : page) {
+                writer.writeValue(generator, snapshot);
+                written = true;
+            }
+            entityManager.clear();
+            if (!page.isEmpty()) {
+                before = page.get(page.size() - 1).getCreatedAt();
+            }
+        } while (page.size() == MAX_PAGE_SIZE);
+        return exportArchived(article, before, generator, writer) || written;
+    }
+
+    private boolean exportArchived(String article, LocalDateTime before, JsonGenerator generator,
+                                   ObjectWriter writer) throws IOException {
+        List<ProductSnapshot> archived = storage.findArchived(article, before, null, Integer.MAX_VALUE, false);
+        for (ProductSnapshot snapshot : archived) {
+            writer.writeValue(generator, snapshot);
+        }
+        return !archived.isEmpty();
+    }
+
+    // Страница, которую не заполнили записи из БД, дополняется снапшотами из архива
+    private List<ProductSnapshot> withArchived(String article, List<ProductSnapshot> page, LocalDateTime before,
+                                               Long beforeId, int limit, boolean changedOnly) {
+        if (page.size() >= limit) {
+            return page;
+        }
+        ProductSnapshot last = page.isEmpty() ? null : page.get(page.size() - 1);
+        List<ProductSnapshot> archived = storage.findArchived(article,
+                last == null ? before : last.getCreatedAt(),
+                last == null ? beforeId : last.getId(),
+                limit - page.size(), changedOnly);
+        if (archived.isEmpty()) {
+            return page;
+        }
+        List<ProductSnapshot> merged = new ArrayList<>(page.size() + archived.size());
+        merged.addAll(page);
+        merged.addAll(archived);
+        return merged;
+    }
+
+    // Без id курсора строки с тем же createdAt не подходят: условие id < MIN_VALUE всегда ложно
+    private static long cursorId(Long beforeId) {
+        return beforeId == null ? Long.MIN_VALUE : beforeId;
+    }
+
+    /**
+     * @return фактический размер страницы для запрошенного {@code limit}
+     */
+    public static int pageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+}
@@ -0,0 +1,155 @@
+package com.sellerscope.service;
+
+import com.sellerscope.dto.TrendPoint;
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.RollupGranularity;
+import com.sellerscope.entity.SnapshotRollup;
+import com.sellerscope.repository.SnapshotRollupRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Почасовые, дневные и недельные агрегаты истории цены и рейтинга товара.
+ * <p>
+ * Агрегаты обновляются инкрементально по мере сохранения снапшотов ({@link #record}):
+ * последние интервалы всех шагов загружаются одним запросом на набор артикулов, а снапшот
+ * либо дополняет последний интервал, либо открывает следующий. Снапшоты старше последнего
+ * интервала не учитываются. Тренд ({@link #getTrend}) читается из агрегатов за O(число интервалов),
+ * без чтения снапшотов.
+ * <p>
+ * Один интервал могут одновременно обновлять планировщик и добавление товара в отслеживание.
+ * Конфликт (версия агрегата или уникальный ключ интервала) откатывает транзакцию, и пакет
+ * пересчитывается заново от свежих агрегатов, до {@link #MAX_ATTEMPTS} попыток.
+ */
+@Service
+@RequiredArgsConstructor
+public class SnapshotRollupService {
+
+    public static final int DEFAULT_BUCKETS = 100;
+    public static final int MAX_BUCKETS = 1000;
+    private static final Logger log = LoggerFactory.getLogger(SnapshotRollupService.class);
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    static final int MAX_ATTEMPTS = 3;
+
+    private final SnapshotRollupRepository repository;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Учитывает сохранённые снапшоты в агрегатах всех шагов.
+     *
+     * @throws OptimisticLockingFailureException если интервалы так и не удалось обновить без конфликта
+     */
+    public void record(Collection<ProductSnapshot> snapshots) {
+        List<ProductSnapshot> ordered = snapshots.stream()
+                .filter(snapshot -> snapshot.getCreatedAt() != null && snapshot.getPrice() != null)
+                .sorted(Comparator.comparing(ProductSnapshot::getCreatedAt))
+                .toList();
+        if (ordered.isEmpty()) {
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> apply(ordered));
+                return;
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Concurrent rollup update for {} snapshots, retrying (attempt {}): {}",
+                        ordered.size(), attempt, e.getMessage());
+            }
+        }
+    }
+
+    private void apply(List<ProductSnapshot> ordered) {
+        Set<String> articles = new LinkedHashSet<>();
+        ordered.forEach(snapshot -> articles.add(snapshot.getProductId()));
+
+        Map<String, SnapshotRollup> latest = new HashMap<>();
+        for (SnapshotRollup rollup : repository.findLatestByProductIdIn(articles)) {
+            latest.put(key(rollup.getProductId(), rollup.getGranularity()), rollup);
+        }
+        // Агрегаты меняются после добавления, поэтому набор — по ссылкам, а не по equals
+        Set<SnapshotRollup> modified = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ProductSnapshot snapshot : ordered) {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                String key = key(snapshot.getProductId(), granularity);
+                SnapshotRollup current = latest.get(key);
+                LocalDateTime bucket = granularity.bucketStart(snapshot.getCreatedAt());
+                if (current == null || bucket.isAfter(current.getBucketStart())) {
+                    current = SnapshotRollup.open(granularity, snapshot, current);
+                    latest.put(key, current);
+                } else if (bucket.equals(current.getBucketStart())) {
+                    current.add(snapshot);
+                } else {
+                    log.debug("Skipping {} rollup for article {}: snapshot {} is older than bucket {}",
+                            granularity, snapshot.getProductId(), snapshot.getCreatedAt(), current.getBucketStart());
+                    continue;
+                }
+                modified.add(current);
+            }
+        }
+        repository.saveAllAndFlush(modified);
+    }
+
+    /**
+     * @param from    начало периода включительно; {@code null} — без ограничения
+     * @param to      конец периода включительно; {@code null} — без ограничения
+     * @param buckets число последних интервалов периода; {@code null} — {@link #DEFAULT_BUCKETS},
+     *                максимум {@link #MAX_BUCKETS}
+     * @return интервалы с данными в порядке возрастания времени
+     */
+    @Transactional(readOnly = true)
+    public List<TrendPoint> getTrend(String article, RollupGranularity granularity,
+                                     LocalDateTime from, LocalDateTime to, Integer buckets) {
+        int limit = buckets == null ? DEFAULT_BUCKETS : Math.max(1, Math.min(buckets, MAX_BUCKETS));
+        List<SnapshotRollup> rollups = repository.findByProductIdAndGranularityAndBucketStartBetweenOrderByBucketStartDesc(
+                article, granularity,
+                from == null ? MIN_TIME : granularity.bucketStart(from),
+                to == null ? MAX_TIME : to,
+                Limit.of(limit));
+        List<TrendPoint> trend = new ArrayList<>(rollups.size());
+        for (int i = rollups.size() - 1; i >= 0; i--) {
+            trend.add(toPoint(rollups.get(i)));
+        }
+        return trend;
+    }
+
+    private static TrendPoint toPoint(SnapshotRollup rollup) {
+        return TrendPoint.builder()
+                .bucketStart(rollup.getBucketStart())
+                .openPrice(rollup.getOpenPrice())
+                .closePrice(rollup.getClosePrice())
+                .minPrice(rollup.getMinPrice())
+                .maxPrice(rollup.getMaxPrice())
+                .averageRating(rollup.averageRating())
+                .reviewDelta(rollup.reviewDelta())
+                .samples(rollup.getSamples())
+                .build();
+    }
+
+    private static String key(String article, RollupGranularity granularity) {
+        return article + '|' + granularity;
+    }
+}
@@ -0,0 +1,276 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ChangedFieldsConverter;
+import com.sellerscope.entity.ProductSnapshot;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Формат архивного сегмента истории одного артикула: колонки снапшотов подряд, сжатые gzip.
+ * <p>
+ * Колонки:
+ * <ul>
+ *     <li>{@code createdAt} (микросекунды), {@code id}, цена (unscaled), {@code reviewCount} — разности
+ *     с предыдущей строкой в zigzag-varint, поэтому неизменные и монотонные значения занимают по байту;</li>
+ *     <li>{@code rating} — XOR битов с предыдущим значением (0 при совпадении);</li>
+ *     <li>название и хэши — словарь строк и номер в нём для каждой строки;</li>
+ *     <li>{@code changed} — битовая карта, {@code changedFields} — маска {@link ChangedFieldsConverter}.</li>
+ * </ul>
+ * Пустые {@code id} и цена отмечаются битовыми картами наличия. Артикул в сегменте не хранится.
+ */
+final class SnapshotSegmentCodec {
+
+    // "SSG" + версия формата
+    private static final int MAGIC = 0x53534701;
+    private static final ChangedFieldsConverter CHANGED_FIELDS = new ChangedFieldsConverter();
+
+    private SnapshotSegmentCodec() {
+    }
+
+    /**
+     * @param snapshots снапшоты одного артикула по возрастанию {@code createdAt}
+     */
+    static void write(List<ProductSnapshot> snapshots, OutputStream target) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(target);
+        DataOutputStream out = new DataOutputStream(gzip);
+        int n = snapshots.size();
+        out.writeInt(MAGIC);
+        writeVarLong(out, n);
+
+        long previous = 0;
+        for (ProductSnapshot snapshot : snapshots) {
+            long micros = toMicros(snapshot.getCreatedAt());
+            writeVarLong(out, zigzag(micros - previous));
+            previous = micros;
+        }
+
+        writeBitmap(out, snapshots, snapshot -> snapshot.getId() != null);
+        previous = 0;
+        for (ProductSnapshot snapshot : snapshots) {
+            if (snapshot.getId() != null) {
+                writeVarLong(out, zigzag(snapshot.getId() - previous));
+                previous = snapshot.getId();
+            }
+        }
+
+        writeBitmap(out, snapshots, snapshot -> snapshot.getPrice() != null);
+        previous = 0;
+        for (ProductSnapshot snapshot : snapshots) {
+            BigDecimal price = snapshot.getPrice();
+            if (price != null) {
+                long unscaled = price.unscaledValue().longValueExact();
+                writeVarLong(out, price.scale());
+                writeVarLong(out, zigzag(unscaled - previous));
+                previous = unscaled;
+            }
+        }
+
+        previous = 0;
+        for (ProductSnapshot snapshot : snapshots) {
+            writeVarLong(out, zigzag(snapshot.getReviewCount() - previous));
+            previous = snapshot.getReviewCount();
+        }
+
+        previous = 0;
+        for (ProductSnapshot snapshot : snapshots) {
+            long bits = Double.doubleToLongBits(snapshot.getRating());
+            writeVarLong(out, bits ^ previous);
+            previous = bits;
+        }
+
+        writeStrings(out, snapshots, ProductSnapshot::getName);
+        writeStrings(out, snapshots, ProductSnapshot::getPhotoHash);
+        writeStrings(out, snapshots, ProductSnapshot::getDescriptionHash);
+
+        writeBitmap(out, snapshots, ProductSnapshot::isChanged);
+        for (ProductSnapshot snapshot : snapshots) {
+            writeVarLong(out, CHANGED_FIELDS.convertToDatabaseColumn(snapshot.getChangedFields()));
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    /**
+     * @return снапшоты сегмента в порядке записи, с артикулом {@code article}
+     */
+    static List<ProductSnapshot> read(String article, InputStream source) throws IOException {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(source));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Unknown snapshot segment format");
+        }
+        int n = Math.toIntExact(readVarLong(in));
+        List<ProductSnapshot> snapshots = new ArrayList<>(n);
+        long previous = 0;
+        for (int i = 0; i < n; i++) {
+            previous += unzigzag(readVarLong(in));
+            snapshots.add(ProductSnapshot.builder()
+                    .productId(article)
+                    .createdAt(fromMicros(previous))
+                    .build());
+        }
+
+        boolean[] hasId = readBitmap(in, n);
+        previous = 0;
+        for (int i = 0; i < n; i++) {
+            if (hasId[i]) {
+                previous += unzigzag(readVarLong(in));
+                snapshots.get(i).setId(previous);
+            }
+        }
+
+        boolean[] hasPrice = readBitmap(in, n);
+        previous = 0;
+        for (int i = 0; i < n; i++) {
+            if (hasPrice[i]) {
+                int scale = Math.toIntExact(readVarLong(in));
+                previous += unzigzag(readVarLong(in));
+                snapshots.get(i).setPrice(new BigDecimal(BigInteger.valueOf(previous), scale));
+            }
+        }
+
+        previous = 0;
+        for (ProductSnapshot snapshot : snapshots) {
+            previous += unzigzag(readVarLong(in));
+            snapshot.setReviewCount(Math.toIntExact(previous));
+        }
+
+        previous = 0;
+        for (ProductSnapshot snapshot : snapshots) {
+            previous ^= readVarLong(in);
+            snapshot.setRating(Double.longBitsToDouble(previous));
+        }
+
+        String[] names = readStrings(in, n);
+        String[] photoHashes = readStrings(in, n);
+        String[] descriptionHashes = readStrings(in, n);
+        boolean[] changed = readBitmap(in, n);
+        for (int i = 0; i < n; i++) {
+            ProductSnapshot snapshot = snapshots.get(i);
+            snapshot.setName(names[i]);
+            snapshot.setPhotoHash(photoHashes[i]);
+            snapshot.setDescriptionHash(descriptionHashes[i]);
+            snapshot.setChanged(changed[i]);
+            snapshot.setChangedFields(CHANGED_FIELDS.convertToEntityAttribute((short) readVarLong(in)));
+        }
+        return snapshots;
+    }
+
+    // Словарь различных значений колонки, затем номер значения для каждой строки; 0 — null
+    private static void writeStrings(DataOutputStream out, List<ProductSnapshot> snapshots,
+                                     Function<ProductSnapshot, String> column) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        int[] indexes = new int[snapshots.size()];
+        for (int i = 0; i < snapshots.size(); i++) {
+            String value = column.apply(snapshots.get(i));
+            if (value != null) {
+                indexes[i] = dictionary.computeIfAbsent(value, v -> {
+                    values.add(v);
+                    return values.size();
+                });
+            }
+        }
+        writeVarLong(out, values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+        for (int index : indexes) {
+            writeVarLong(out, index);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in, int n) throws IOException {
+        String[] dictionary = new String[Math.toIntExact(readVarLong(in)) + 1];
+        for (int i = 1; i < dictionary.length; i++) {
+            byte[] bytes = new byte[Math.toIntExact(readVarLong(in))];
+            in.readFully(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = dictionary[Math.toIntExact(readVarLong(in))];
+        }
+        return values;
+    }
+
+    private static void writeBitmap(DataOutputStream out, List<ProductSnapshot> snapshots,
+                                    Function<ProductSnapshot, Boolean> bit) throws IOException {
+        byte[] bitmap = new byte[(snapshots.size() + 7) / 8];
+        for (int i = 0; i < snapshots.size(); i++) {
+            if (bit.apply(snapshots.get(i))) {
+                bitmap[i >>> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        out.write(bitmap);
+    }
+
+    private static boolean[] readBitmap(DataInputStream in, int n) throws IOException {
+        byte[] bitmap = new byte[(n + 7) / 8];
+        in.readFully(bitmap);
+        boolean[] bits = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            bits[i] = (bitmap[i >>> 3] & (1 << (i & 7))) != 0;
+        }
+        return bits;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated snapshot segment");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in snapshot segment");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Время записывается как локальное без зоны, в микросекундах — точность колонки timestamp(6)
+    private static long toMicros(LocalDateTime time) {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), time);
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC).plus(micros, ChronoUnit.MICROS);
+    }
+}
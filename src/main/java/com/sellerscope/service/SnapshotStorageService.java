@@ -0,0 +1,347 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.SnapshotDelta;
+import com.sellerscope.repository.ProductSnapshotRepository;
+import com.sellerscope.repository.SnapshotDeltaRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище снапшотов товаров.
+ * <p>
+ * Поддерживает два режима ({@code snapshot.storage.mode}):
+ * <ul>
+ *     <li>{@code full} — каждый сохранённый снапшот пишется целиком в {@code product_snapshot};</li>
+ *     <li>{@code delta} — целиком пишется только ключевой снапшот: для нового товара и каждое
+ *     {@code snapshot.storage.keyframe-interval}-е изменение. Между ними в {@code snapshot_deltas}
+ *     пишутся только изменившиеся поля.</li>
+ * </ul>
+ * При чтении в режиме {@code delta} полные снапшоты восстанавливаются применением дельт
+ * к ближайшему предшествующему ключевому снапшоту.
+ * <p>
+ * Холодная история переносится в {@link SnapshotArchive} ({@link #archiveBefore}); полная история
+ * и страницы дочитываются из архива после самой старой записи в БД.
+ */
+@Service
+public class SnapshotStorageService {
+
+    // Границы диапазона для выборок без явного ограничения по времени
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private final ProductSnapshotRepository snapshotRepository;
+    private final SnapshotDeltaRepository deltaRepository;
+    private final boolean deltaMode;
+    private final int keyframeInterval;
+    private final SnapshotArchive archive;
+
+    public SnapshotStorageService(ProductSnapshotRepository snapshotRepository,
+                                  SnapshotDeltaRepository deltaRepository,
+                                  SnapshotArchive archive,
+                                  @Value("${snapshot.storage.mode:full}") String mode,
+                                  @Value("${snapshot.storage.keyframe-interval:10}") int keyframeInterval) {
+        if (!"full".equalsIgnoreCase(mode) && !"delta".equalsIgnoreCase(mode)) {
+            throw new IllegalArgumentException("snapshot.storage.mode must be 'full' or 'delta': " + mode);
+        }
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("snapshot.storage.keyframe-interval must be positive: " + keyframeInterval);
+        }
+        this.snapshotRepository = snapshotRepository;
+        this.deltaRepository = deltaRepository;
+        this.deltaMode = "delta".equalsIgnoreCase(mode);
+        this.keyframeInterval = keyframeInterval;
+        this.archive = archive;
+    }
+
+    public boolean isDeltaMode() {
+        return deltaMode;
+    }
+
+    @Transactional
+    public void save(ProductSnapshot snapshot) {
+        saveAll(List.of(snapshot));
+    }
+
+    /**
+     * Сохраняет снапшоты. В режиме {@code delta} решает по каждому артикулу,
+     * писать ключевой снапшот или дельту; число дельт после последнего ключевого
+     * снапшота загружается одним запросом на весь набор.
+     */
+    @Transactional
+    public void saveAll(Collection<ProductSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        if (!deltaMode) {
+            snapshotRepository.saveAll(snapshots);
+            return;
+        }
+
+        List<String> articles = snapshots.stream().map(ProductSnapshot::getProductId).distinct().toList();
+        Map<String, Long> deltasSinceKeyframe = deltaRepository.findSinceLatestKeyframe(articles).stream()
+                .collect(Collectors.groupingBy(SnapshotDelta::getProductId, Collectors.counting()));
+
+        List<ProductSnapshot> keyframes = new ArrayList<>();
+        List<SnapshotDelta> deltas = new ArrayList<>();
+        for (ProductSnapshot snapshot : snapshots) {
+            long sinceKeyframe = deltasSinceKeyframe.getOrDefault(snapshot.getProductId(), 0L);
+            if (snapshot.getChangedFields().contains("new") || sinceKeyframe + 1 >= keyframeInterval) {
+                keyframes.add(snapshot);
+                deltasSinceKeyframe.put(snapshot.getProductId(), 0L);
+            } else {
+                deltas.add(SnapshotDelta.of(snapshot));
+                deltasSinceKeyframe.put(snapshot.getProductId(), sinceKeyframe + 1);
+            }
+        }
+        snapshotRepository.saveAll(keyframes);
+        deltaRepository.saveAll(deltas);
+    }
+
+    /**
+     * @return последний полный снапшот артикула
+     */
+    @Transactional(readOnly = true)
+    public Optional<ProductSnapshot> findLatest(String article) {
+        if (!deltaMode) {
+            return snapshotRepository.findFirstByProductIdOrderByCreatedAtDesc(article);
+        }
+        return Optional.ofNullable(findLatest(List.of(article)).get(article));
+    }
+
+    /**
+     * Последние полные снапшоты для набора артикулов: ключевые снапшоты одним запросом,
+     * в режиме {@code delta} — плюс дельты после них вторым запросом.
+     * При совпадении {@code createdAt} берётся ключевой снапшот с наибольшим id.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, ProductSnapshot> findLatest(Collection<String> articles) {
+        if (articles.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, ProductSnapshot> latest = new HashMap<>(snapshotRepository.findLatestByProductIdIn(articles).stream()
+                .collect(Collectors.toMap(ProductSnapshot::getProductId, Function.identity(),
+                        (a, b) -> a.getId() >= b.getId() ? a : b)));
+        if (deltaMode && !latest.isEmpty()) {
+            for (SnapshotDelta delta : deltaRepository.findSinceLatestKeyframe(latest.keySet())) {
+                latest.computeIfPresent(delta.getProductId(), (article, state) -> delta.applyTo(state));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Полная история артикула по убыванию {@code createdAt}, включая перенесённую в архив.
+     */
+    @Transactional(readOnly = true)
+    public List<ProductSnapshot> findHistory(String article) {
+        List<ProductSnapshot> live = deltaMode
+                ? replay(article, null, MAX_TIME).reversed()
+                : snapshotRepository.findByProductIdOrderByCreatedAtDesc(article);
+        List<ProductSnapshot> archived = archive.read(article,
+                live.isEmpty() ? null : live.get(live.size() - 1).getCreatedAt());
+        if (archived.isEmpty()) {
+            return live;
+        }
+        List<ProductSnapshot> history = new ArrayList<>(live.size() + archived.size());
+        history.addAll(live);
+        history.addAll(archived);
+        return history;
+    }
+
+    /**
+     * Продолжение истории из архива для страницы, на которой закончились записи в БД.
+     * Берутся только снапшоты раньше самой старой записи в БД, поэтому строки, уже перенесённые
+     * в архив, но ещё не удалённые из БД, не повторяются.
+     *
+     * @param before      курсор: снапшоты строго раньше этого момента; {@code null} — без ограничения
+     * @param beforeId    вторая часть курсора: снапшоты с тем же {@code createdAt} и меньшим {@code id};
+     *                    {@code null} — только строго раньше {@code before}
+     * @param limit       сколько снапшотов вернуть
+     * @param changedOnly только снапшоты с изменениями
+     * @return архивные снапшоты по убыванию {@code (createdAt, id)}; пустой список без запросов к БД,
+     *         если архив не настроен
+     */
+    @Transactional(readOnly = true)
+    public List<ProductSnapshot> findArchived(String article, LocalDateTime before, Long beforeId, int limit,
+                                              boolean changedOnly) {
+        if (!archive.isConfigured()) {
+            return List.of();
+        }
+        Optional<LocalDateTime> oldest = snapshotRepository.findFirstByProductIdOrderByCreatedAtAsc(article)
+                .map(ProductSnapshot::getCreatedAt);
+        if (oldest.isPresent() && (before == null || !oldest.get().isAfter(before))) {
+            // Курсор дальше самой старой записи в БД: архив берётся строго раньше неё
+            before = oldest.get();
+            beforeId = null;
+        }
+        List<ProductSnapshot> archived = archive.read(article, beforeId == null ? before : before.plusNanos(1));
+        LocalDateTime cursor = before;
+        Long cursorId = beforeId;
+        return archived.stream()
+                .filter(snapshot -> cursorId == null || precedes(snapshot, cursor, cursorId))
+                .filter(snapshot -> !changedOnly || snapshot.isChanged())
+                .limit(limit)
+                .toList();
+    }
+
+    private static boolean precedes(ProductSnapshot snapshot, LocalDateTime before, long beforeId) {
+        return snapshot.getCreatedAt().isBefore(before)
+                || (snapshot.getId() != null && snapshot.getId() < beforeId);
+    }
+
+    /**
+     * Артикулы, которым {@link #archiveBefore} с тем же {@code cutoff} есть что перенести: с записями
+     * раньше {@code cutoff} и раньше последнего снапшота (в режиме {@code delta} — раньше последнего
+     * ключевого снапшота не позже {@code cutoff}). Стабильные товары, у которых в БД остался только
+     * последний снапшот, не выбираются.
+     */
+    @Transactional(readOnly = true)
+    public List<String> findArticlesWithHistoryBefore(LocalDateTime cutoff) {
+        if (!deltaMode) {
+            return snapshotRepository.findProductIdsWithSnapshotsBeforeLatest(cutoff);
+        }
+        Set<String> all = new LinkedHashSet<>(snapshotRepository.findProductIdsWithSnapshotsBeforeKeyframe(cutoff));
+        all.addAll(deltaRepository.findProductIdsWithDeltasBeforeKeyframe(cutoff));
+        return List.copyOf(all);
+    }
+
+    /**
+     * Переносит историю артикула раньше {@code cutoff} в архив и удаляет её из БД.
+     * <ul>
+     *     <li>Последний снапшот артикула не переносится никогда: на нём держатся сравнение
+     *     при обновлении и {@link #findLatest}.</li>
+     *     <li>В режиме {@code delta} граница сдвигается назад к ключевому снапшоту, чтобы оставшиеся
+     *     в БД дельты было от чего восстанавливать; в архив пишутся уже восстановленные снапшоты.</li>
+     * </ul>
+     * Сегмент пишется до удаления строк: если удаление не удалось, строки остаются в БД,
+     * а при чтении архив учитывается только раньше самой старой из них.
+     *
+     * @return число перенесённых снапшотов
+     */
+    @Transactional
+    public int archiveBefore(String article, LocalDateTime cutoff) {
+        Optional<ProductSnapshot> latest = deltaMode
+                ? snapshotRepository.findFirstByProductIdAndCreatedAtLessThanEqualOrderByCreatedAtDesc(article, cutoff)
+                : snapshotRepository.findFirstByProductIdOrderByCreatedAtDesc(article);
+        if (latest.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime boundary = latest.get().getCreatedAt().isBefore(cutoff) ? latest.get().getCreatedAt() : cutoff;
+
+        List<ProductSnapshot> moved = (deltaMode
+                ? replay(article, null, boundary)
+                : snapshotRepository.findByProductIdAndCreatedAtBetweenOrderByCreatedAtAsc(article, MIN_TIME, boundary))
+                .stream()
+                .filter(snapshot -> snapshot.getCreatedAt().isBefore(boundary))
+                .toList();
+        archive.write(article, moved);
+
+        snapshotRepository.deleteByProductIdAndCreatedAtBefore(article, boundary);
+        if (deltaMode) {
+            deltaRepository.deleteByProductIdAndCreatedAtBefore(article, boundary);
+        }
+        return moved.size();
+    }
+
+    /**
+     * Страница истории по убыванию {@code createdAt} в режиме {@code delta}.
+     * Сначала выбираются {@code limit} последних записей среди ключевых снапшотов и дельт,
+     * затем для них восстанавливается состояние от ближайшего предшествующего ключевого снапшота.
+     *
+     * @param article     артикул товара
+     * @param before      курсор: записи строго раньше этого момента; {@code null} — с последней
+     * @param limit       размер страницы
+     * @param changedOnly только снапшоты с изменениями
+     */
+    @Transactional(readOnly = true)
+    public List<ProductSnapshot> findHistoryPage(String article, LocalDateTime before, int limit, boolean changedOnly) {
+        Limit pageLimit = Limit.of(limit);
+        List<LocalDateTime> candidates = new ArrayList<>();
+        if (changedOnly) {
+            (before == null
+                    ? snapshotRepository.findByProductIdAndChangedTrueOrderByCreatedAtDesc(article, pageLimit)
+                    : snapshotRepository.findByProductIdAndChangedTrueAndCreatedAtBeforeOrderByCreatedAtDesc(article, before, pageLimit))
+                    .forEach(snapshot -> candidates.add(snapshot.getCreatedAt()));
+            (before == null
+                    ? deltaRepository.findByProductIdAndChangedTrueOrderByCreatedAtDesc(article, pageLimit)
+                    : deltaRepository.findByProductIdAndChangedTrueAndCreatedAtBeforeOrderByCreatedAtDesc(article, before, pageLimit))
+                    .forEach(delta -> candidates.add(delta.getCreatedAt()));
+        } else {
+            (before == null
+                    ? snapshotRepository.findByProductIdOrderByCreatedAtDesc(article, pageLimit)
+                    : snapshotRepository.findByProductIdAndCreatedAtBeforeOrderByCreatedAtDesc(article, before, pageLimit))
+                    .forEach(snapshot -> candidates.add(snapshot.getCreatedAt()));
+            (before == null
+                    ? deltaRepository.findByProductIdOrderByCreatedAtDesc(article, pageLimit)
+                    : deltaRepository.findByProductIdAndCreatedAtBeforeOrderByCreatedAtDesc(article, before, pageLimit))
+                    .forEach(delta -> candidates.add(delta.getCreatedAt()));
+        }
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        candidates.sort(Comparator.reverseOrder());
+        List<LocalDateTime> page = candidates.subList(0, Math.min(limit, candidates.size()));
+        LocalDateTime newest = page.get(0);
+        LocalDateTime oldest = page.get(page.size() - 1);
+
+        return replay(article, oldest, newest).reversed().stream()
+                .filter(snapshot -> !snapshot.getCreatedAt().isBefore(oldest))
+                .filter(snapshot -> !changedOnly || snapshot.isChanged())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Восстанавливает полные снапшоты в диапазоне по возрастанию {@code createdAt}.
+     * Начинает с ближайшего ключевого снапшота не позже {@code from}
+     * (или с самого первого, если {@code from == null}).
+     */
+    private List<ProductSnapshot> replay(String article, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from == null
+                ? MIN_TIME
+                : snapshotRepository.findFirstByProductIdAndCreatedAtLessThanEqualOrderByCreatedAtDesc(article, from)
+                        .map(ProductSnapshot::getCreatedAt)
+                        .orElse(MIN_TIME);
+
+        List<ProductSnapshot> keyframes = snapshotRepository.findByProductIdAndCreatedAtBetweenOrderByCreatedAtAsc(article, start, to);
+        List<SnapshotDelta> deltas = deltaRepository.findByProductIdAndCreatedAtBetweenOrderByCreatedAtAsc(article, start, to);
+
+        List<ProductSnapshot> result = new ArrayList<>(keyframes.size() + deltas.size());
+        ProductSnapshot state = null;
+        int k = 0;
+        int d = 0;
+        while (k < keyframes.size() || d < deltas.size()) {
+            boolean takeKeyframe = d >= deltas.size()
+                    || (k < keyframes.size() && !keyframes.get(k).getCreatedAt().isAfter(deltas.get(d).getCreatedAt()));
+            if (takeKeyframe) {
+                state = keyframes.get(k++);
+                result.add(state);
+            } else {
+                SnapshotDelta delta = deltas.get(d++);
+                // Дельта без предшествующего ключевого снапшота не может быть восстановлена
+                if (state != null) {
+                    state = delta.applyTo(state);
+                    result.add(state);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -3,12 +3,16 @@ package com.sellerscope.service;
 import com.sellerscope.entity.ProductSnapshot;
 import com.sellerscope.entity.TrackedProduct;
 import com.sellerscope.entity.User;
-import com.sellerscope.repository.ProductSnapshotRepository;
 import com.sellerscope.repository.TrackedProductRepository;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Сервис для управления отслеживанием товаров пользователями.
@@ -18,31 +22,76 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 public class TrackingService {
 
+    private static final Logger log = LoggerFactory.getLogger(TrackingService.class);
+
     private final WbProductParserService wbService;
-    private final ProductSnapshotRepository repository;
+    private final SnapshotStorageService storage;
     private final TrackedProductRepository trackedProductRepository;
+    private final LatestSnapshotCache latestSnapshotCache;
+    private final SnapshotFetchCoalescer fetchCoalescer;
+    private final SnapshotRollupService rollupService;
 
     /**
      * Добавляет товар в отслеживание для пользователя.
      * Если пользователь уже отслеживает товар, выбрасывает исключение.
+     * Свежий снапшот переиспользуется, а одновременные запросы одного артикула
+     * объединяются в один запрос к Wildberries (см. {@link SnapshotFetchCoalescer}).
      *
      * @param user    пользователь, который хочет отслеживать товар
      * @param article идентификатор товара (артикул)
-     * @return созданный и сохранённый снапшот товара
+     * @return актуальный сохранённый снапшот товара
      * @throws IllegalStateException если пользователь уже отслеживает этот товар
      */
     public ProductSnapshot trackProduct(User user, String article) {
+        requireNotTracked(user, article);
+
+        // Получаем актуальный снапшот товара через парсер
+        CompletableFuture<ProductSnapshot> latest = fetchCoalescer.getLatest(article,
+                () -> CompletableFuture.completedFuture(saveSnapshot(wbService.fetchSnapshotByArticle(article))));
+        try {
+            return startTracking(user, article, latest.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Асинхронный вариант {@link #trackProduct}: проверка выполняется сразу, а запрос карточки
+     * и сохранение — в потоке запроса {@link WbProductParserService#fetchSnapshotAsync}.
+     *
+     * @return снапшот товара после сохранения
+     * @throws IllegalStateException если пользователь уже отслеживает этот товар
+     */
+    public CompletableFuture<ProductSnapshot> trackProductAsync(User user, String article) {
+        requireNotTracked(user, article);
+        return fetchCoalescer.getLatest(article, () -> wbService.fetchSnapshotAsync(article).thenApply(this::saveSnapshot))
+                .thenApply(snapshot -> startTracking(user, article, snapshot));
+    }
+
+    private void requireNotTracked(User user, String article) {
         // Проверка: если пользователь уже отслеживает этот товар — выбрасываем исключение
         if (trackedProductRepository.existsByUserAndProductId(user, article)) {
             throw new IllegalStateException("User already tracking product: " + article);
         }
+    }
 
-        // Получаем актуальный снапшот товара через парсер
-        ProductSnapshot snapshot = wbService.fetchSnapshotByArticle(article);
-
-        // Сохраняем снапшот в базу данных
-        repository.save(snapshot);
+    private ProductSnapshot saveSnapshot(ProductSnapshot snapshot) {
+        // Сохраняем снапшот в базу данных и обновляем кэш последнего снапшота и агрегаты истории
+        storage.save(snapshot);
+        latestSnapshotCache.put(snapshot);
+        // Агрегаты вторичны: их ошибка не должна мешать добавить товар в отслеживание
+        try {
+            rollupService.record(List.of(snapshot));
+        } catch (Exception e) {
+            log.warn("Failed to update history rollups for article {}: {}", snapshot.getProductId(), e.getMessage());
+        }
+        return snapshot;
+    }
 
+    private ProductSnapshot startTracking(User user, String article, ProductSnapshot snapshot) {
         // Сохраняем информацию о том, что пользователь начал отслеживать этот товар
         trackedProductRepository.save(
                 TrackedProduct.builder()
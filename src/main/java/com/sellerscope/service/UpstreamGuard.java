@@ -0,0 +1,284 @@
+package com.sellerscope.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBucket;
+import org.redisson.api.RRateLimiter;
+import org.redisson.api.RateIntervalUnit;
+import org.redisson.api.RateType;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Защита вызовов Wildberries: размыкатель цепи и адаптивный (AIMD) ограничитель частоты.
+ * <p>
+ * Частота ограничивается для всех экземпляров приложения одним {@link RRateLimiter}
+ * {@code wb:upstream:rate-limiter}. Допустимая частота хранится в Redis и меняется по AIMD:
+ * после успешного ответа растёт на {@code wb.upstream.rate-increase} запросов в секунду
+ * (до {@code wb.upstream.max-rate}), после 429, 5xx или сетевой ошибки умножается на
+ * {@code wb.upstream.rate-decrease-factor} (до {@code wb.upstream.min-rate}). Каждое направление
+ * меняется не чаще раза в {@code wb.upstream.rate-adjust-interval} на весь кластер, а рост
+ * не начинается раньше, чем через этот интервал после снижения.
+ * <p>
+ * Те же ошибки считает {@link CircuitBreaker}: после {@code wb.upstream.circuit.failure-threshold}
+ * ошибок подряд вызовы отклоняются без обращения к Wildberries и Redis в течение
+ * {@code wb.upstream.circuit.open-duration}.
+ * <p>
+ * Метрики:
+ * <ul>
+ *     <li>{@code wb.upstream.rate.permitted} — последняя известная допустимая частота, запросов в секунду;</li>
+ *     <li>{@code wb.upstream.circuit.state} — 1 для текущего состояния цепи ({@code state} = closed | open | half_open);</li>
+ *     <li>{@code wb.upstream.calls} — вызовы по исходу ({@code outcome} = success | throttled | rejected).</li>
+ * </ul>
+ */
+@Component
+public class UpstreamGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamGuard.class);
+    static final String RATE_LIMITER = "wb:upstream:rate-limiter";
+    static final String RATE = "wb:upstream:rate";
+    static final String INCREASED_MARKER = "wb:upstream:rate-increased";
+    static final String DECREASED_MARKER = "wb:upstream:rate-decreased";
+
+    private final RedissonClient redissonClient;
+    private final CircuitBreaker breaker;
+    private final long minRate;
+    private final long maxRate;
+    private final long rateIncrease;
+    private final double decreaseFactor;
+    private final Duration adjustInterval;
+    private final long acquireTimeoutMillis;
+    private final Clock clock;
+    private final Counter successes;
+    private final Counter throttled;
+    private final Counter rejected;
+
+    private volatile long permittedRate;
+    private volatile long nextLocalIncrease;
+    private volatile long nextLocalDecrease;
+
+    public UpstreamGuard(RedissonClient redissonClient,
+                         @Value("${wb.upstream.min-rate:1}") long minRate,
+                         @Value("${wb.upstream.max-rate:20}") long maxRate,
+                         @Value("${wb.upstream.rate-increase:1}") long rateIncrease,
+                         @Value("${wb.upstream.rate-decrease-factor:0.5}") double decreaseFactor,
+                         @Value("${wb.upstream.rate-adjust-interval:1s}") Duration adjustInterval,
+                         @Value("${wb.upstream.acquire-timeout:10s}") Duration acquireTimeout,
+                         @Value("${wb.upstream.circuit.failure-threshold:5}") int failureThreshold,
+                         @Value("${wb.upstream.circuit.open-duration:30s}") Duration openDuration,
+                         MeterRegistry meterRegistry) {
+        this(redissonClient, minRate, maxRate, rateIncrease, decreaseFactor, adjustInterval, acquireTimeout,
+                failureThreshold, openDuration, meterRegistry, Clock.systemUTC());
+    }
+
+    UpstreamGuard(RedissonClient redissonClient, long minRate, long maxRate, long rateIncrease, double decreaseFactor,
+                  Duration adjustInterval, Duration acquireTimeout, int failureThreshold, Duration openDuration,
+                  MeterRegistry meterRegistry, Clock clock) {
+        if (minRate < 1 || maxRate < minRate) {
+            throw new IllegalArgumentException("wb.upstream rates must satisfy 1 <= min-rate <= max-rate: "
+                    + minRate + ", " + maxRate);
+        }
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("wb.upstream.rate-decrease-factor must be in (0, 1): " + decreaseFactor);
+        }
+        this.redissonClient = redissonClient;
+        this.breaker = new CircuitBreaker(failureThreshold, openDuration, clock);
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.rateIncrease = Math.max(rateIncrease, 1);
+        this.decreaseFactor = decreaseFactor;
+        this.adjustInterval = adjustInterval;
+        this.acquireTimeoutMillis = acquireTimeout.toMillis();
+        this.clock = clock;
+        this.permittedRate = maxRate;
+        this.successes = counter(meterRegistry, "success");
+        this.throttled = counter(meterRegistry, "throttled");
+        this.rejected = counter(meterRegistry, "rejected");
+        Gauge.builder("wb.upstream.rate.permitted", () -> permittedRate)
+                .description("Допустимая частота запросов к Wildberries для всех экземпляров, запросов в секунду")
+                .register(meterRegistry);
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("wb.upstream.circuit.state", () -> breaker.state() == state ? 1 : 0)
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Задаёт частоту общего ограничителя, если её ещё не задал другой экземпляр.
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            RAtomicLong rate = rate();
+            rate.compareAndSet(0, maxRate);
+            long current = Math.max(minRate, Math.min(maxRate, rate.get()));
+            limiter().trySetRate(RateType.OVERALL, current, 1, RateIntervalUnit.SECONDS);
+            permittedRate = current;
+        } catch (RuntimeException e) {
+            log.warn("Failed to initialize Wildberries rate limiter: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Выполняет вызов Wildberries, дождавшись разрешения ограничителя частоты.
+     *
+     * @throws UpstreamUnavailableException если цепь разомкнута или разрешение не получено
+     *                                      за {@code wb.upstream.acquire-timeout}
+     */
+    public <T> T call(Supplier<T> upstreamCall) {
+        if (!breaker.tryAcquire()) {
+            rejected.increment();
+            throw new UpstreamUnavailableException("Wildberries circuit is open");
+        }
+        boolean permitted;
+        try {
+            permitted = limiter().tryAcquire(1, acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            breaker.release();
+            throw e;
+        }
+        if (!permitted) {
+            breaker.release();
+            rejected.increment();
+            throw new UpstreamUnavailableException("Wildberries rate limit wait exceeded");
+        }
+
+        try {
+            T result = upstreamCall.get();
+            onSuccess();
+            return result;
+        } catch (HttpStatusCodeException e) {
+            HttpStatusCode status = e.getStatusCode();
+            if (isThrottling(status)) {
+                onThrottled(status.toString());
+            } else if (status.value() == HttpStatus.NOT_FOUND.value()) {
+                // Карточки нет — Wildberries ответил штатно, частоту можно наращивать
+                onSuccess();
+            } else {
+                // Прочие 4xx о нагрузке не говорят: цепь не размыкаем, частоту не меняем
+                breaker.onSuccess();
+            }
+            throw e;
+        } catch (ResourceAccessException e) {
+            // Ошибка разбора тела тоже приходит как ResourceAccessException, но о перегрузке не говорит
+            if (e.getCause() instanceof JsonProcessingException) {
+                breaker.onSuccess();
+            } else {
+                onThrottled(e.getMessage());
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.onSuccess();
+            throw e;
+        }
+    }
+
+    /**
+     * @return {@code true}, если цепь разомкнута и вызовы сейчас отклоняются
+     */
+    public boolean isCircuitOpen() {
+        return !breaker.isCallPermitted();
+    }
+
+    private static boolean isThrottling(HttpStatusCode status) {
+        return status.value() == HttpStatus.TOO_MANY_REQUESTS.value() || status.is5xxServerError();
+    }
+
+    private void onSuccess() {
+        breaker.onSuccess();
+        successes.increment();
+        long now = clock.millis();
+        if (now < nextLocalIncrease) {
+            return;
+        }
+        nextLocalIncrease = now + adjustInterval.toMillis();
+        try {
+            // Решение о росте принимается по общей частоте: её мог снизить другой экземпляр
+            long current = currentRate();
+            permittedRate = current;
+            if (current >= maxRate || marker(DECREASED_MARKER).isExists()
+                    || !marker(INCREASED_MARKER).setIfAbsent("1", adjustInterval)) {
+                return;
+            }
+            setRate(Math.min(maxRate, current + rateIncrease));
+        } catch (RuntimeException e) {
+            log.warn("Failed to increase Wildberries rate limit: {}", e.getMessage());
+        }
+    }
+
+    private void onThrottled(String reason) {
+        throttled.increment();
+        if (breaker.onFailure()) {
+            log.warn("Wildberries circuit opened after repeated failures, last: {}", reason);
+        }
+        long now = clock.millis();
+        if (now < nextLocalDecrease) {
+            return;
+        }
+        nextLocalDecrease = now + adjustInterval.toMillis();
+        try {
+            if (!marker(DECREASED_MARKER).setIfAbsent("1", adjustInterval)) {
+                return;
+            }
+            long current = currentRate();
+            long next = Math.max(minRate, (long) Math.floor(current * decreaseFactor));
+            setRate(next);
+            if (next < current) {
+                log.warn("Wildberries is throttling ({}), rate limit lowered from {} to {} rps", reason, current, next);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to decrease Wildberries rate limit: {}", e.getMessage());
+        }
+    }
+
+    private long currentRate() {
+        long stored = rate().get();
+        return stored <= 0 ? maxRate : stored;
+    }
+
+    private void setRate(long next) {
+        if (next != currentRate()) {
+            rate().set(next);
+            limiter().setRate(RateType.OVERALL, next, 1, RateIntervalUnit.SECONDS);
+        }
+        permittedRate = next;
+    }
+
+    private RRateLimiter limiter() {
+        return redissonClient.getRateLimiter(RATE_LIMITER);
+    }
+
+    private RAtomicLong rate() {
+        return redissonClient.getAtomicLong(RATE);
+    }
+
+    private RBucket<String> marker(String name) {
+        return redissonClient.getBucket(name, StringCodec.INSTANCE);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("wb.upstream.calls")
+                .description("Вызовы Wildberries по исходу")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
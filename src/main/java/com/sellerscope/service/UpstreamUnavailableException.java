@@ -0,0 +1,11 @@
+package com.sellerscope.service;
+
+/**
+ * Вызов Wildberries не выполнялся: цепь разомкнута или не дождались разрешения ограничителя частоты.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    public UpstreamUnavailableException(String message) {
+        super(message);
+    }
+}
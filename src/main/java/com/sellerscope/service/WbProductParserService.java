@@ -1,171 +1,490 @@
 package com.sellerscope.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.sellerscope.entity.ProductSnapshot;
-import com.sellerscope.repository.ProductSnapshotRepository;
-import org.redisson.api.RLock;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.RMapCache;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.util.DigestUtils;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Service
 public class WbProductParserService {
 
     private static final Logger log = LoggerFactory.getLogger(WbProductParserService.class);
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final ObjectMapper mapper = new ObjectMapper();
-    private final ProductSnapshotRepository repository;
+    private static final String CARD_DETAIL_PATH = "/cards/detail?appType=1&curr=rub&dest=-1257786&spp=0&nm=";
+    // Сколько готовых пакетов асинхронный запрос может держать, пока подписчик их не запросил
+    private static final int PIPELINE_BUFFER = 2;
+    // ETag/Last-Modified ответов, в которых все товары совпали с сохранёнными, по списку артикулов запроса
+    static final String VALIDATOR_MAP = "wb:validators";
+    private static final long VALIDATOR_TTL_HOURS = 24;
+    private final RestTemplate restTemplate;
+    private final CardResponseReader cardReader = new CardResponseReader(new JsonFactory());
+    private final ExecutorService fetchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SnapshotStorageService storage;
     private final RedissonClient redissonClient;
+    private final LatestSnapshotCache latestSnapshotCache;
+    private final UpstreamGuard upstreamGuard;
 
-    public WbProductParserService(ProductSnapshotRepository repository,
-                                  RedissonClient redissonClient) {
-        this.repository = repository;
+    @Value("${wb.api.batch-size:50}")
+    private int batchSize = 50;
+
+    @Value("${wb.api.base-url:https://card.wb.ru}")
+    private String baseUrl = "https://card.wb.ru";
+
+    public WbProductParserService(SnapshotStorageService storage,
+                                  RedissonClient redissonClient,
+                                  LatestSnapshotCache latestSnapshotCache,
+                                  @Qualifier("wbRestTemplate") RestTemplate restTemplate,
+                                  UpstreamGuard upstreamGuard) {
+        this.storage = storage;
+        this.restTemplate = restTemplate;
         this.redissonClient = redissonClient;
+        this.latestSnapshotCache = latestSnapshotCache;
+        this.upstreamGuard = upstreamGuard;
     }
 
+    /**
+     * Получает снапшот одного товара и сравнивает его с последним сохранённым.
+     * Лок на артикул не берётся: метод ничего не сохраняет, а исключительность периодического
+     * обновления обеспечивает аренда порции в расписании обновлений.
+     */
     public ProductSnapshot fetchSnapshotByArticle(String article) {
         log.info("Fetching snapshot for article: {}", article);
-        String url = "https://card.wb.ru/cards/detail?appType=1&curr=rub&dest=-1257786&spp=0&nm=" + article;
-        RLock lock = redissonClient.getLock("lock:product:" + article);
         try {
-            log.debug("Attempting to acquire lock for article: {}", article);
-            if (lock.tryLock(5, 30, TimeUnit.SECONDS)) {
+            CardResponseReader.Card product = requestCards(List.of(article), null).cards().get(article);
+            if (product == null) {
+                log.error("Product not found for article: {}", article);
+                throw new RuntimeException("Product not found for article: " + article);
+            }
+
+            ProductSnapshot snapshot = toSnapshot(article, product);
+            boolean changed = compareWithLastSnapshot(snapshot);
+            snapshot.setChanged(changed);
+            log.info("Snapshot created for article {}: {}", article, snapshot);
+
+            return snapshot;
+
+        } catch (HttpClientErrorException e) {
+            log.error("Wildberries API error for article {}: {} - {}", article, e.getStatusCode(), e.getResponseBodyAsString());
+            throw new RuntimeException("Wildberries API error for article: " + article, e);
+        } catch (Exception e) {
+            log.error("Error processing article {}: {}", article, e.getMessage(), e);
+            throw new RuntimeException("Error processing article: " + article, e);
+        }
+    }
+
+    /**
+     * Асинхронный вариант {@link #fetchSnapshotByArticle}: запрос, разбор и сравнение
+     * выполняются в отдельном виртуальном потоке, вызывающий поток сразу освобождается.
+     * Медленный ответ Wildberries задерживает только свой артикул.
+     *
+     * @return снапшот товара; завершается исключением, если товар не найден или запрос не удался
+     */
+    public CompletableFuture<ProductSnapshot> fetchSnapshotAsync(String article) {
+        return CompletableFuture.supplyAsync(() -> fetchSnapshotByArticle(article), fetchExecutor);
+    }
+
+    /**
+     * Получает снапшоты сразу для нескольких артикулов.
+     * <p>
+     * Артикулы группируются по {@code wb.api.batch-size} в один запрос {@code cards/detail?nm=a;b;c}.
+     * Ответ разбивается по {@code /data/products} обратно на снапшоты, которые сравниваются
+     * с последними сохранёнными (загружаются одним запросом на пакет). Лок на артикулы не берётся — за исключительность
+     * обновления отвечает вызывающий код.
+     * <p>
+     * Товары, отпечаток которых совпал с отпечатком последнего снапшота в {@link LatestSnapshotCache},
+     * не разбираются до снапшота и не сравниваются — они попадают в {@code unchanged}. Если все товары
+     * пакета не изменились и Wildberries вернул ETag или Last-Modified, следующий такой же запрос
+     * отправляется условным, и ответ 304 тоже даёт {@code unchanged} для всего пакета.
+     * Отпечатки новых и изменившихся товаров возвращаются в {@code fingerprints}: вызывающий код
+     * сохраняет их вместе со снапшотами через {@link LatestSnapshotCache#putAll(Collection, Map)}.
+     * Ошибка одного запроса не прерывает остальные: его артикулы попадают в {@code failed}.
+     *
+     * @param articles артикулы товаров
+     * @return снапшоты найденных товаров, а также отсутствующие и ошибочные артикулы
+     */
+    public BatchFetchResult fetchSnapshotsByArticles(List<String> articles) {
+        Map<String, ProductSnapshot> snapshots = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        Set<String> failed = new LinkedHashSet<>();
+        Set<String> unchanged = new LinkedHashSet<>();
+        Map<String, String> fingerprints = new HashMap<>();
+
+        for (List<String> batch : partition(articles)) {
+            BatchFetchResult result = fetchBatch(batch);
+            snapshots.putAll(result.snapshots());
+            missing.addAll(result.missing());
+            failed.addAll(result.failed());
+            unchanged.addAll(result.unchanged());
+            fingerprints.putAll(result.fingerprints());
+        }
+
+        log.info("Batch fetched {} articles: {} found, {} not modified, {} missing, {} failed",
+                snapshots.size() + unchanged.size() + missing.size() + failed.size(),
+                snapshots.size(), unchanged.size(), missing.size(), failed.size());
+        return new BatchFetchResult(snapshots, missing, failed, unchanged, fingerprints);
+    }
+
+    /**
+     * Асинхронный вариант {@link #fetchSnapshotsByArticles}: издатель выдаёт {@link BatchFetchResult}
+     * на каждый пакет {@code wb.api.batch-size} артикулов, как только пакет получен, разобран
+     * и сравнён с последними снапшотами, поэтому подписчик обрабатывает (например, сохраняет) пакет,
+     * пока запрашивается следующий.
+     * <p>
+     * Пакеты запрашиваются по очереди в виртуальном потоке с учётом спроса подписчика: запрос
+     * опережает обработку не больше чем на {@value #PIPELINE_BUFFER} пакета, после отмены подписки
+     * новые запросы не отправляются. Ошибки отдельных пакетов попадают в {@code failed}, как и в
+     * синхронном варианте. Каждая подписка выполняет запросы заново.
+     *
+     * @param articles артикулы товаров
+     * @return издатель результатов по пакетам
+     */
+    public Flow.Publisher<BatchFetchResult> fetchSnapshotsAsync(List<String> articles) {
+        List<List<String>> batches = partition(articles);
+        return subscriber -> {
+            SubmissionPublisher<BatchFetchResult> publisher = new SubmissionPublisher<>(fetchExecutor, PIPELINE_BUFFER);
+            publisher.subscribe(subscriber);
+            fetchExecutor.execute(() -> {
                 try {
-                    log.debug("Sending request to Wildberries API: {}", url);
-                    String json = restTemplate.getForObject(url, String.class);
-                    if (json == null) {
-                        log.error("Wildberries API returned null response for article: {}", article);
-                        throw new RuntimeException("Null response from Wildberries API");
+                    for (List<String> batch : batches) {
+                        if (!publisher.hasSubscribers()) {
+                            log.debug("Batch subscription cancelled, {} batches not requested", batches.size());
+                            return;
+                        }
+                        BatchFetchResult result = fetchBatch(batch);
+                        // Блокирует поток, пока буфер подписчика заполнен
+                        publisher.submit(result);
                     }
-                    log.debug("Received JSON response: {}", json);
+                    publisher.close();
+                } catch (RuntimeException e) {
+                    log.error("Error publishing batches: {}", e.getMessage(), e);
+                    publisher.closeExceptionally(e);
+                }
+            });
+        };
+    }
 
-                    JsonNode root = mapper.readTree(json);
-                    JsonNode product = root.at("/data/products/0");
-                    if (product.isMissingNode()) {
-                        log.error("Product not found for article: {}", article);
-                        throw new RuntimeException("Product not found for article: " + article);
-                    }
+    /**
+     * @return {@code true}, если цепь вызовов Wildberries разомкнута и запросы сейчас отклоняются
+     */
+    public boolean isUpstreamCircuitOpen() {
+        return upstreamGuard.isCircuitOpen();
+    }
 
-                    String name = product.get("name").asText();
-                    int reviewCount = product.get("feedbacks").asInt();
-                    double rating = product.get("rating").asDouble();
+    @PreDestroy
+    void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
 
-                    JsonNode photosNode = product.get("photos");
-                    String photosCombined = "";
-                    if (photosNode != null && photosNode.isArray()) {
-                        photosCombined = StreamSupport.stream(photosNode.spliterator(), false)
-                                .map(JsonNode::asText)
-                                .collect(Collectors.joining(","));
-                    }
+    private List<List<String>> partition(List<String> articles) {
+        List<String> distinct = articles.stream().distinct().toList();
+        int size = Math.max(batchSize, 1);
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += size) {
+            batches.add(distinct.subList(from, Math.min(from + size, distinct.size())));
+        }
+        return batches;
+    }
 
-                    String photoHash = DigestUtils.md5DigestAsHex(photosCombined.getBytes(StandardCharsets.UTF_8));
-                    String description = product.has("description") ? product.get("description").asText() : "";
-                    String descriptionHash = DigestUtils.md5DigestAsHex(description.getBytes(StandardCharsets.UTF_8));
+    /**
+     * Запрашивает и обрабатывает один пакет. Ошибка запроса или разбора ответа не выбрасывается:
+     * все артикулы пакета попадают в {@code failed}.
+     */
+    private BatchFetchResult fetchBatch(List<String> batch) {
+        Map<String, String> known = latestSnapshotCache.getFingerprints(batch);
+        String requestKey = String.join(";", batch);
+        // Условный запрос имеет смысл, только если для всех артикулов известно сохранённое состояние
+        String validator = known.keySet().containsAll(batch) ? findValidator(requestKey) : null;
 
-                    BigDecimal price;
-                    try {
-                        price = new BigDecimal(product.get("priceU").asText()).divide(BigDecimal.valueOf(100));
-                    } catch (Exception e) {
-                        log.error("Error parsing price for article {}: {}", article, e.getMessage());
-                        throw new RuntimeException("Invalid price format for article: " + article, e);
-                    }
+        CardResponse response;
+        try {
+            response = requestCards(batch, validator);
+        } catch (HttpClientErrorException e) {
+            log.error("Wildberries API error for batch of {} articles: {} - {}", batch.size(), e.getStatusCode(), e.getResponseBodyAsString());
+            return failedBatch(batch);
+        } catch (UpstreamUnavailableException e) {
+            log.warn("Skipped batch of {} articles: {}", batch.size(), e.getMessage());
+            return failedBatch(batch);
+        } catch (Exception e) {
+            log.error("Error processing batch of {} articles: {}", batch.size(), e.getMessage(), e);
+            return failedBatch(batch);
+        }
+        if (response.notModified()) {
+            log.debug("Batch of {} articles not modified", batch.size());
+            return new BatchFetchResult(new HashMap<>(), new LinkedHashSet<>(), new LinkedHashSet<>(),
+                    new LinkedHashSet<>(batch), new HashMap<>());
+        }
 
-                    log.debug("Building ProductSnapshot for article: {}", article);
-                    ProductSnapshot snapshot = ProductSnapshot.builder()
-                            .productId(article)
-                            .name(name)
-                            .price(price)
-                            .reviewCount(reviewCount)
-                            .rating(rating)
-                            .photoHash(photoHash)
-                            .descriptionHash(descriptionHash)
-                            .createdAt(LocalDateTime.now())
-                            .changedFields(new HashSet<>())
-                            .build();
-
-                    boolean changed = compareWithLastSnapshot(snapshot);
-                    snapshot.setChanged(changed);
-                    log.info("Snapshot created for article {}: {}", article, snapshot);
-
-                    return snapshot;
-
-                } catch (HttpClientErrorException e) {
-                    log.error("Wildberries API error for article {}: {} - {}", article, e.getStatusCode(), e.getResponseBodyAsString());
-                    throw new RuntimeException("Wildberries API error for article: " + article, e);
-                } catch (Exception e) {
-                    log.error("Error processing article {}: {}", article, e.getMessage(), e);
-                    throw new RuntimeException("Error processing article: " + article, e);
-                }
-            } else {
-                log.warn("Failed to acquire lock for article: {}", article);
-                throw new RuntimeException("Skipped update: product is being updated by another thread");
+        BatchFetchResult result = toBatchResult(response.cards(), batch, known);
+        Map<String, ProductSnapshot> latest = markChanges(result.snapshots());
+        List<ProductSnapshot> confirmed = new ArrayList<>();
+        for (ProductSnapshot snapshot : result.snapshots().values()) {
+            ProductSnapshot last = latest.get(snapshot.getProductId());
+            if (!snapshot.isChanged() && last != null) {
+                confirmed.add(last);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Interrupted while locking for article: {}", article, e);
-            throw new RuntimeException("Interrupted while locking product", e);
-        } finally {
-            if (lock.isHeldByCurrentThread()) {
-                log.debug("Releasing lock for article: {}", article);
-                lock.unlock();
+        }
+        // Отпечаток неизменившегося товара описывает уже сохранённое состояние — его можно запомнить сразу
+        latestSnapshotCache.putAll(confirmed, result.fingerprints());
+        if (response.validator() != null && result.unchanged().size() + confirmed.size() == batch.size()) {
+            storeValidator(requestKey, response.validator());
+        }
+        return result;
+    }
+
+    private static BatchFetchResult failedBatch(List<String> batch) {
+        return new BatchFetchResult(new HashMap<>(), new LinkedHashSet<>(), new LinkedHashSet<>(batch));
+    }
+
+    /**
+     * Сравнивает снапшоты с последними сохранёнными (одним запросом на весь набор) и заполняет {@code changed}.
+     *
+     * @return последние сохранённые снапшоты по артикулу
+     */
+    private Map<String, ProductSnapshot> markChanges(Map<String, ProductSnapshot> snapshots) {
+        Map<String, ProductSnapshot> latest = findLatestSnapshots(snapshots.keySet());
+        snapshots.values().forEach(snapshot ->
+                snapshot.setChanged(compareWithSnapshot(snapshot, latest.get(snapshot.getProductId()))));
+        return latest;
+    }
+
+    private String findValidator(String requestKey) {
+        try {
+            return validators().get(requestKey);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read response validator: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void storeValidator(String requestKey, String validator) {
+        try {
+            validators().fastPut(requestKey, validator, VALIDATOR_TTL_HOURS, TimeUnit.HOURS);
+        } catch (RuntimeException e) {
+            log.warn("Failed to store response validator: {}", e.getMessage());
+        }
+    }
+
+    private RMapCache<String, String> validators() {
+        return redissonClient.getMapCache(VALIDATOR_MAP, StringCodec.INSTANCE);
+    }
+
+    /**
+     * Разбирает ответ {@code cards/detail} на снапшоты по запрошенным артикулам.
+     * Сравнение с последним снапшотом не выполняется.
+     */
+    BatchFetchResult parseProducts(String json, List<String> articles) throws IOException {
+        return toBatchResult(cardReader.read(json), articles, Map.of());
+    }
+
+    /**
+     * @param known отпечатки последних сохранённых снапшотов; совпавшие товары попадают в {@code unchanged}
+     */
+    private BatchFetchResult toBatchResult(Map<String, CardResponseReader.Card> products, List<String> articles,
+                                           Map<String, String> known) {
+        Map<String, ProductSnapshot> snapshots = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        Set<String> failed = new LinkedHashSet<>();
+        Set<String> unchanged = new LinkedHashSet<>();
+        Map<String, String> fingerprints = new HashMap<>();
+
+        for (String article : articles) {
+            CardResponseReader.Card product = products.get(article);
+            if (product == null) {
+                log.warn("Product not found in batch response for article: {}", article);
+                missing.add(article);
+                continue;
+            }
+            if (product.fingerprint().equals(known.get(article))) {
+                unchanged.add(article);
+                continue;
+            }
+            try {
+                snapshots.put(article, toSnapshot(article, product));
+                fingerprints.put(article, product.fingerprint());
+            } catch (Exception e) {
+                log.error("Error processing article {}: {}", article, e.getMessage());
+                failed.add(article);
             }
         }
+        return new BatchFetchResult(snapshots, missing, failed, unchanged, fingerprints);
     }
 
-    public boolean compareWithLastSnapshot(ProductSnapshot currentSnapshot) {
-        return repository.findByProductIdOrderByCreatedAtDesc(currentSnapshot.getProductId())
-                .stream()
-                .findFirst()
-                .map(last -> {
-                    boolean changed = false;
-
-                    if (last.getPrice().compareTo(currentSnapshot.getPrice()) != 0) {
-                        currentSnapshot.getChangedFields().add("price");
-                        changed = true;
-                    }
-                    if (last.getReviewCount() != currentSnapshot.getReviewCount()) {
-                        currentSnapshot.getChangedFields().add("reviewCount");
-                        changed = true;
-                    }
-                    if (Double.compare(last.getRating(), currentSnapshot.getRating()) != 0) {
-                        currentSnapshot.getChangedFields().add("rating");
-                        changed = true;
-                    }
-                    if (!Objects.equals(last.getPhotoHash(), currentSnapshot.getPhotoHash())) {
-                        currentSnapshot.getChangedFields().add("photos");
-                        changed = true;
-                    }
-                    if (!Objects.equals(last.getDescriptionHash(), currentSnapshot.getDescriptionHash())) {
-                        currentSnapshot.getChangedFields().add("description");
-                        changed = true;
-                    }
+    /**
+     * Ответ {@code cards/detail}.
+     *
+     * @param validator   ETag ({@code E}-префикс) или Last-Modified ({@code M}-префикс) ответа, если есть
+     * @param notModified Wildberries ответил 304 на условный запрос
+     */
+    private record CardResponse(Map<String, CardResponseReader.Card> cards, String validator, boolean notModified) {
+    }
+
+    /**
+     * Запрашивает карточки через {@link UpstreamGuard} и разбирает ответ потоком прямо
+     * из тела HTTP-ответа, не собирая его в строку.
+     *
+     * @param validator ETag или Last-Modified прошлого ответа для условного запроса; {@code null} — безусловный
+     */
+    private CardResponse requestCards(List<String> articles, String validator) {
+        String url = baseUrl + CARD_DETAIL_PATH + String.join(";", articles);
+        log.debug("Sending request to Wildberries API: {}", url);
+        RequestCallback conditional = request -> {
+            if (validator != null && validator.startsWith("E")) {
+                request.getHeaders().setIfNoneMatch(validator.substring(1));
+            } else if (validator != null && validator.startsWith("M")) {
+                request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, validator.substring(1));
+            }
+        };
+        CardResponse cards = upstreamGuard.call(() -> restTemplate.execute(url, HttpMethod.GET, conditional, response -> {
+            if (response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+                return new CardResponse(Map.of(), validator, true);
+            }
+            HttpHeaders headers = response.getHeaders();
+            String received = headers.getETag() != null ? "E" + headers.getETag()
+                    : headers.getFirst(HttpHeaders.LAST_MODIFIED) != null ? "M" + headers.getFirst(HttpHeaders.LAST_MODIFIED)
+                    : null;
+            return new CardResponse(cardReader.read(response.getBody()), received, false);
+        }));
+        if (cards == null) {
+            log.error("Wildberries API returned null response for articles: {}", articles);
+            throw new RuntimeException("Null response from Wildberries API");
+        }
+        log.debug("Received {} products for {} requested articles", cards.cards().size(), articles.size());
+        return cards;
+    }
+
+    private ProductSnapshot toSnapshot(String article, CardResponseReader.Card product) {
+        if (product.name() == null) {
+            throw new IllegalArgumentException("Missing name for article: " + article);
+        }
 
-                    currentSnapshot.setChanged(changed);
-                    return changed;
+        BigDecimal price;
+        try {
+            price = new BigDecimal(product.priceU()).divide(BigDecimal.valueOf(100));
+        } catch (Exception e) {
+            log.error("Error parsing price for article {}: {}", article, e.getMessage());
+            throw new RuntimeException("Invalid price format for article: " + article, e);
+        }
+
+        log.debug("Building ProductSnapshot for article: {}", article);
+        return ProductSnapshot.builder()
+                .productId(article)
+                .name(product.name())
+                .price(price)
+                .reviewCount(product.feedbacks())
+                .rating(product.rating())
+                .photoHash(product.photoHash())
+                .descriptionHash(product.descriptionHash())
+                .createdAt(LocalDateTime.now())
+                .changedFields(new HashSet<>())
+                .build();
+    }
+
+    public boolean compareWithLastSnapshot(ProductSnapshot currentSnapshot) {
+        String article = currentSnapshot.getProductId();
+        ProductSnapshot last = latestSnapshotCache.get(article)
+                .or(() -> {
+                    Optional<ProductSnapshot> fromDb = storage.findLatest(article);
+                    fromDb.ifPresent(latestSnapshotCache::put);
+                    return fromDb;
                 })
-                .orElseGet(() -> {
-                    currentSnapshot.getChangedFields().add("new");
-                    currentSnapshot.setChanged(true);
-                    return true;
-                });
+                .orElse(null);
+        return compareWithSnapshot(currentSnapshot, last);
+    }
+
+    /**
+     * Сравнивает снапшот с предыдущим и заполняет {@code changedFields}.
+     *
+     * @param currentSnapshot новый снапшот
+     * @param last            последний сохранённый снапшот или {@code null}, если товар новый
+     * @return {@code true}, если есть изменения
+     */
+    public boolean compareWithSnapshot(ProductSnapshot currentSnapshot, ProductSnapshot last) {
+        if (last == null) {
+            currentSnapshot.getChangedFields().add("new");
+            currentSnapshot.setChanged(true);
+            return true;
+        }
+
+        boolean changed = false;
+
+        if (last.getPrice().compareTo(currentSnapshot.getPrice()) != 0) {
+            currentSnapshot.getChangedFields().add("price");
+            changed = true;
+        }
+        if (last.getReviewCount() != currentSnapshot.getReviewCount()) {
+            currentSnapshot.getChangedFields().add("reviewCount");
+            changed = true;
+        }
+        if (Double.compare(last.getRating(), currentSnapshot.getRating()) != 0) {
+            currentSnapshot.getChangedFields().add("rating");
+            changed = true;
+        }
+        if (!Objects.equals(last.getPhotoHash(), currentSnapshot.getPhotoHash())) {
+            currentSnapshot.getChangedFields().add("photos");
+            changed = true;
+        }
+        if (!Objects.equals(last.getDescriptionHash(), currentSnapshot.getDescriptionHash())) {
+            currentSnapshot.getChangedFields().add("description");
+            changed = true;
+        }
+
+        currentSnapshot.setChanged(changed);
+        return changed;
+    }
+
+    /**
+     * Загружает последние снапшоты для набора артикулов: сначала из {@link LatestSnapshotCache},
+     * промахи — из {@link SnapshotStorageService} одним запросом с заполнением кэша.
+     */
+    public Map<String, ProductSnapshot> findLatestSnapshots(Collection<String> articles) {
+        if (articles.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, ProductSnapshot> latest = new HashMap<>(latestSnapshotCache.getAll(articles));
+        List<String> misses = articles.stream()
+                .filter(article -> !latest.containsKey(article))
+                .toList();
+        if (!misses.isEmpty()) {
+            Map<String, ProductSnapshot> fromDb = storage.findLatest(misses);
+            latestSnapshotCache.putAll(fromDb.values());
+            latest.putAll(fromDb);
+        }
+        return latest;
     }
 
     public List<ProductSnapshot> getSnapshotHistory(String article) {
-        return repository.findByProductIdOrderByCreatedAtDesc(article);
+        return storage.findHistory(article);
     }
-}
\ No newline at end of file
+}
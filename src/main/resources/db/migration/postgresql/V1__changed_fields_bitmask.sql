@@ -0,0 +1,32 @@
+-- Перенос changedFields из таблицы snapshot_changes в битовую маску product_snapshot.changed_mask.
+-- Биты: price=1, reviewCount=2, rating=4, photos=8, description=16, new=32 (см. ChangedFieldsConverter).
+-- На пустой базе таблиц ещё нет — их создаст Hibernate, миграция ничего не делает.
+DO $$
+BEGIN
+    IF to_regclass('product_snapshot') IS NOT NULL THEN
+        ALTER TABLE product_snapshot ADD COLUMN IF NOT EXISTS changed_mask smallint NOT NULL DEFAULT 0;
+
+        IF to_regclass('snapshot_changes') IS NOT NULL THEN
+            UPDATE product_snapshot s
+            SET changed_mask = c.mask
+            FROM (
+                SELECT snapshot_id,
+                       SUM(CASE field
+                               WHEN 'price' THEN 1
+                               WHEN 'reviewCount' THEN 2
+                               WHEN 'rating' THEN 4
+                               WHEN 'photos' THEN 8
+                               WHEN 'description' THEN 16
+                               WHEN 'new' THEN 32
+                               ELSE 0
+                           END)::smallint AS mask
+                FROM (SELECT DISTINCT snapshot_id, field FROM snapshot_changes) f
+                GROUP BY snapshot_id
+            ) c
+            WHERE s.id = c.snapshot_id;
+
+            DROP TABLE snapshot_changes;
+        END IF;
+    END IF;
+END
+$$;
@@ -0,0 +1,17 @@
+-- Переход идентификаторов снапшотов и дельт с IDENTITY на последовательности с шагом 50
+-- (pooled-оптимизатор Hibernate, allocationSize = 50), чтобы работала пакетная вставка.
+-- Последовательность начинается после текущего максимального id.
+-- На пустой базе последовательности создаст Hibernate.
+DO $$
+BEGIN
+    IF to_regclass('product_snapshot') IS NOT NULL THEN
+        CREATE SEQUENCE IF NOT EXISTS product_snapshot_seq INCREMENT BY 50;
+        PERFORM setval('product_snapshot_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM product_snapshot), false);
+    END IF;
+
+    IF to_regclass('snapshot_deltas') IS NOT NULL THEN
+        CREATE SEQUENCE IF NOT EXISTS snapshot_delta_seq INCREMENT BY 50;
+        PERFORM setval('snapshot_delta_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM snapshot_deltas), false);
+    END IF;
+END
+$$;
@@ -0,0 +1,70 @@
+-- Секционирование product_snapshot по created_at (RANGE, помесячно).
+-- Секции называются product_snapshot_pYYYYMMDD по началу диапазона; строки вне всех секций
+-- попадают в product_snapshot_default. Будущие секции и удаление старых выполняет
+-- SnapshotPartitionMaintenance (snapshot.partitioning.*).
+-- Первичный ключ секционированной таблицы обязан включать ключ секционирования: (id, created_at).
+-- На пустой базе таблица создаётся здесь, а не Hibernate, иначе она была бы обычной.
+DO $$
+DECLARE
+    first_month timestamp;
+    month_start timestamp;
+BEGIN
+    IF to_regclass('product_snapshot') IS NOT NULL
+            AND EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'product_snapshot'::regclass) THEN
+        RETURN;
+    END IF;
+
+    IF to_regclass('product_snapshot') IS NOT NULL THEN
+        ALTER TABLE product_snapshot RENAME TO product_snapshot_legacy;
+        IF EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'product_snapshot_pkey') THEN
+            ALTER TABLE product_snapshot_legacy RENAME CONSTRAINT product_snapshot_pkey TO product_snapshot_legacy_pkey;
+        END IF;
+        ALTER INDEX IF EXISTS idx_product_snapshot_product_created RENAME TO idx_product_snapshot_legacy_product_created;
+    END IF;
+
+    CREATE SEQUENCE IF NOT EXISTS product_snapshot_seq INCREMENT BY 50;
+
+    CREATE TABLE product_snapshot (
+        id               bigint       NOT NULL,
+        product_id       varchar(255),
+        name             varchar(255),
+        price            numeric(38, 2),
+        review_count     integer      NOT NULL,
+        rating           float(53)    NOT NULL,
+        photo_hash       varchar(255),
+        description_hash varchar(255),
+        created_at       timestamp(6) NOT NULL,
+        changed          boolean      NOT NULL,
+        changed_mask     smallint     NOT NULL DEFAULT 0,
+        PRIMARY KEY (id, created_at)
+    ) PARTITION BY RANGE (created_at);
+
+    CREATE INDEX idx_product_snapshot_product_created ON product_snapshot (product_id, created_at DESC);
+    CREATE TABLE product_snapshot_default PARTITION OF product_snapshot DEFAULT;
+
+    first_month := date_trunc('month', now());
+    IF to_regclass('product_snapshot_legacy') IS NOT NULL THEN
+        first_month := LEAST(first_month,
+                COALESCE((SELECT date_trunc('month', MIN(created_at)) FROM product_snapshot_legacy), first_month));
+    END IF;
+
+    -- Секции с первого месяца данных до трёх месяцев вперёд
+    month_start := first_month;
+    WHILE month_start < date_trunc('month', now()) + interval '4 months' LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF product_snapshot FOR VALUES FROM (%L) TO (%L)',
+                'product_snapshot_p' || to_char(month_start, 'YYYYMMDD'),
+                month_start, month_start + interval '1 month');
+        month_start := month_start + interval '1 month';
+    END LOOP;
+
+    IF to_regclass('product_snapshot_legacy') IS NOT NULL THEN
+        INSERT INTO product_snapshot (id, product_id, name, price, review_count, rating, photo_hash,
+                                      description_hash, created_at, changed, changed_mask)
+        SELECT id, product_id, name, price, review_count, rating, photo_hash,
+               description_hash, COALESCE(created_at, TIMESTAMP '1970-01-01'), changed, changed_mask
+        FROM product_snapshot_legacy;
+
+        DROP TABLE product_snapshot_legacy;
+    END IF;
+END
+$$;
@@ -0,0 +1,12 @@
+-- Переход идентификаторов tracked_products с IDENTITY на последовательность с шагом 50,
+-- чтобы пакетное добавление товаров в отслеживание (POST /track/bulk) вставлялось пакетами JDBC.
+-- Последовательность начинается после текущего максимального id.
+-- На пустой базе последовательность создаст Hibernate.
+DO $$
+BEGIN
+    IF to_regclass('tracked_products') IS NOT NULL THEN
+        CREATE SEQUENCE IF NOT EXISTS tracked_products_seq INCREMENT BY 50;
+        PERFORM setval('tracked_products_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM tracked_products), false);
+    END IF;
+END
+$$;
@@ -0,0 +1,10 @@
+-- Версия строки агрегата для оптимистичной блокировки: планировщик и добавление товара
+-- в отслеживание обновляют один и тот же интервал, и без версии одно из обновлений терялось.
+-- На пустой базе столбец создаст Hibernate.
+DO $$
+BEGIN
+    IF to_regclass('snapshot_rollups') IS NOT NULL THEN
+        ALTER TABLE snapshot_rollups ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+    END IF;
+END
+$$;
@@ -0,0 +1,147 @@
+package com.sellerscope.config;
+
+import com.sellerscope.service.BatchFetchResult;
+import com.sellerscope.service.LatestSnapshotCache;
+import com.sellerscope.service.SnapshotStorageService;
+import com.sellerscope.service.UpstreamGuard;
+import com.sellerscope.service.WbProductParserService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WbHttpClientConfigTest {
+
+    private static final String RESPONSE = """
+            {"data": {"products": [
+              {"id": 1, "name": "First", "priceU": 10000, "feedbacks": 3, "rating": 4.5, "photos": ["a.jpg"]},
+              {"id": 2, "name": "Second", "priceU": 25000, "feedbacks": 0, "rating": 0}
+            ]}}
+            """;
+
+    private HttpServer server;
+    private final List<String> requestUris = new CopyOnWriteArrayList<>();
+    private final List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private volatile long responseDelayMillis;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CloseableHttpClient httpClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/cards/detail", this::handle);
+        server.start();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    void shouldFetchGzipResponsesOverPooledKeepAliveConnection() {
+        WbProductParserService service = service(Duration.ofSeconds(5));
+
+        for (int i = 0; i < 3; i++) {
+            BatchFetchResult result = service.fetchSnapshotsByArticles(List.of("1", "2"));
+            assertThat(result.snapshots()).containsOnlyKeys("1", "2");
+            assertThat(result.snapshots().get("2").getPrice()).isEqualByComparingTo("250");
+        }
+
+        assertThat(requestUris).hasSize(3)
+                .allSatisfy(uri -> assertThat(uri).startsWith("/cards/detail?").endsWith("nm=1;2"));
+        assertThat(acceptEncodings).allSatisfy(encoding -> assertThat(encoding).contains("gzip"));
+        // Все запросы прошли по одному соединению из пула
+        assertThat(clientPorts).hasSize(1);
+    }
+
+    @Test
+    void shouldFailBatchWhenResponseExceedsReadTimeout() {
+        responseDelayMillis = 1_000;
+        WbProductParserService service = service(Duration.ofMillis(200));
+
+        BatchFetchResult result = service.fetchSnapshotsByArticles(List.of("1", "2"));
+
+        assertThat(result.snapshots()).isEmpty();
+        assertThat(result.failed()).containsExactly("1", "2");
+    }
+
+    @Test
+    void shouldPublishPoolMetrics() {
+        service(Duration.ofSeconds(5)).fetchSnapshotsByArticles(List.of("1"));
+
+        assertThat(meterRegistry.get("httpcomponents.httpclient.pool.total.max").tag("httpclient", "wb").gauge().value())
+                .isEqualTo(8);
+        assertThat(meterRegistry.get("httpcomponents.httpclient.pool.total.connections")
+                .tag("httpclient", "wb").tag("state", "available").gauge().value())
+                .isEqualTo(1);
+    }
+
+    private WbProductParserService service(Duration readTimeout) {
+        WbHttpClientConfig config = new WbHttpClientConfig();
+        httpClient = config.wbHttpClient(Duration.ofSeconds(1), readTimeout, Duration.ofSeconds(1), 8,
+                Duration.ofSeconds(30), Duration.ofMinutes(5), meterRegistry);
+        WbProductParserService service = new WbProductParserService(mock(SnapshotStorageService.class), null,
+                mock(LatestSnapshotCache.class), config.wbRestTemplate(httpClient), passThroughGuard());
+        ReflectionTestUtils.setField(service, "baseUrl", "http://localhost:" + server.getAddress().getPort());
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static UpstreamGuard passThroughGuard() {
+        UpstreamGuard guard = mock(UpstreamGuard.class);
+        when(guard.call(any())).thenAnswer(invocation -> ((Supplier<Object>) invocation.getArgument(0)).get());
+        return guard;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestUris.add(exchange.getRequestURI().toString());
+        acceptEncodings.add(String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        if (responseDelayMillis > 0) {
+            try {
+                Thread.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(RESPONSE.getBytes(StandardCharsets.UTF_8));
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(200, compressed.size());
+        try (OutputStream body = exchange.getResponseBody()) {
+            compressed.writeTo(body);
+        }
+    }
+}
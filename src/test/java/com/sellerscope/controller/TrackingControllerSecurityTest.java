@@ -0,0 +1,135 @@
+package com.sellerscope.controller;
+
+import com.sellerscope.config.SecurityConfig;
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.Role;
+import com.sellerscope.entity.User;
+import com.sellerscope.security.PrincipalCache;
+import com.sellerscope.service.BulkTrackingService;
+import com.sellerscope.service.JwtService;
+import com.sellerscope.service.ParsedToken;
+import com.sellerscope.service.ProductChangeNotifier;
+import com.sellerscope.service.SnapshotHistoryService;
+import com.sellerscope.service.SnapshotRollupService;
+import com.sellerscope.service.TrackingService;
+import com.sellerscope.service.WbProductParserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Эндпоинты отслеживания с настоящей цепочкой фильтров безопасности и JWT-фильтром:
+ * асинхронные ответы должны дописываться без повторной аутентификации.
+ */
+@WebMvcTest(controllers = TrackingController.class)
+@Import(SecurityConfig.class)
+class TrackingControllerSecurityTest {
+
+    private static final String TOKEN = "Bearer token";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private JwtService jwtService;
+
+    @MockitoBean
+    private PrincipalCache principalCache;
+
+    @MockitoBean
+    private UserDetailsService userDetailsService;
+
+    @MockitoBean
+    private WbProductParserService wbService;
+
+    @MockitoBean
+    private SnapshotHistoryService historyService;
+
+    @MockitoBean
+    private TrackingService trackingService;
+
+    @MockitoBean
+    private SnapshotRollupService rollupService;
+
+    @MockitoBean
+    private BulkTrackingService bulkTrackingService;
+
+    @MockitoBean
+    private ProductChangeNotifier changeNotifier;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = User.builder()
+                .id(1L)
+                .email("test@example.com")
+                .password("password")
+                .role(Role.USER)
+                .build();
+        ParsedToken token = new ParsedToken(user.getEmail(), Instant.now().plusSeconds(60));
+        when(jwtService.parse("token")).thenReturn(token);
+        when(principalCache.get(eq(user.getEmail()), any())).thenReturn(user);
+        when(jwtService.isAccessTokenValid(token, user)).thenReturn(true);
+    }
+
+    @Test
+    void trackProduct_WithToken_CompletesAsyncDispatch() throws Exception {
+        ProductSnapshot snapshot = ProductSnapshot.builder()
+                .productId("12345")
+                .createdAt(LocalDateTime.now())
+                .build();
+        when(trackingService.trackProductAsync(any(User.class), eq("12345")))
+                .thenReturn(CompletableFuture.completedFuture(snapshot));
+
+        MvcResult result = mockMvc.perform(post("/track/12345").header("Authorization", TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.productId").value("12345"));
+    }
+
+    @Test
+    void streamChanges_WithToken_CompletesAsyncDispatch() throws Exception {
+        SseEmitter emitter = new SseEmitter();
+        when(changeNotifier.open(any(User.class), eq(Set.of()))).thenReturn(emitter);
+
+        MvcResult result = mockMvc.perform(get("/track/stream").header("Authorization", TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        emitter.complete();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void trackProduct_WithoutToken_ReturnsUnauthorized() throws Exception {
+        mockMvc.perform(post("/track/12345"))
+                .andExpect(status().isUnauthorized());
+    }
+}
@@ -1,9 +1,15 @@
 package com.sellerscope.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sellerscope.dto.BulkTrackResult;
+import com.sellerscope.dto.TrendPoint;
 import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.RollupGranularity;
 import com.sellerscope.entity.User;
-import com.sellerscope.repository.ProductSnapshotRepository;
+import com.sellerscope.service.BulkTrackingService;
+import com.sellerscope.service.ProductChangeNotifier;
+import com.sellerscope.service.SnapshotHistoryService;
+import com.sellerscope.service.SnapshotRollupService;
 import com.sellerscope.service.TrackingService;
 import com.sellerscope.service.WbProductParserService;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,23 +25,34 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @AutoConfigureMockMvc(addFilters = false)
@@ -53,10 +70,19 @@ class TrackingControllerTest {
     private WbProductParserService wbService;
 
     @Autowired
-    private ProductSnapshotRepository repository;
+    private TrackingService trackingService;
 
     @Autowired
-    private TrackingService trackingService;
+    private SnapshotHistoryService historyService;
+
+    @Autowired
+    private SnapshotRollupService rollupService;
+
+    @Autowired
+    private BulkTrackingService bulkTrackingService;
+
+    @Autowired
+    private ProductChangeNotifier changeNotifier;
 
     @Autowired
     private ObjectMapper objectMapper;
@@ -98,10 +124,15 @@ class TrackingControllerTest {
 
     @Test
     void trackProduct_Success_ReturnsOkWithSnapshot() throws Exception {
-        when(trackingService.trackProduct(any(User.class), eq("12345"))).thenReturn(snapshot);
+        when(trackingService.trackProductAsync(any(User.class), eq("12345")))
+                .thenReturn(CompletableFuture.completedFuture(snapshot));
 
-        mockMvc.perform(post("/track/12345")
+        MvcResult result = mockMvc.perform(post("/track/12345")
                         .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(1L))
                 .andExpect(jsonPath("$.productId").value("12345"))
@@ -110,23 +141,48 @@ class TrackingControllerTest {
                 .andExpect(jsonPath("$.changedFields", containsInAnyOrder("price", "rating")));
     }
 
+    @Test
+    void trackProduct_ReleasesRequestThreadUntilSnapshotIsFetched() throws Exception {
+        CompletableFuture<ProductSnapshot> pending = new CompletableFuture<>();
+        when(trackingService.trackProductAsync(any(User.class), eq("12345"))).thenReturn(pending);
+
+        MvcResult result = mockMvc.perform(post("/track/12345"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString()).isEmpty();
+
+        pending.complete(snapshot);
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.productId").value("12345"));
+    }
+
     @Test
     void trackProduct_IllegalStateException_ReturnsConflict() throws Exception {
-        when(trackingService.trackProduct(any(User.class), eq("12345")))
+        when(trackingService.trackProductAsync(any(User.class), eq("12345")))
                 .thenThrow(new IllegalStateException("Already tracked"));
 
-        mockMvc.perform(post("/track/12345")
+        MvcResult result = mockMvc.perform(post("/track/12345")
                         .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isConflict());
     }
 
     @Test
     void trackProduct_RuntimeException_ReturnsInternalServerError() throws Exception {
-        when(trackingService.trackProduct(any(User.class), eq("12345")))
-                .thenThrow(new RuntimeException("Unexpected error"));
+        when(trackingService.trackProductAsync(any(User.class), eq("12345")))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Unexpected error")));
 
-        mockMvc.perform(post("/track/12345")
+        MvcResult result = mockMvc.perform(post("/track/12345")
                         .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isInternalServerError());
     }
 
@@ -147,23 +203,8 @@ class TrackingControllerTest {
     }
 
     @Test
-    void getChanges_Success_ReturnsFilteredSnapshotList() throws Exception {
-        ProductSnapshot unchangedSnapshot = ProductSnapshot.builder()
-                .id(2L)
-                .productId("12345")
-                .name("Test Product")
-                .price(new BigDecimal("99.99"))
-                .reviewCount(100)
-                .rating(4.5)
-                .photoHash("photoHash123")
-                .descriptionHash("descHash123")
-                .createdAt(LocalDateTime.now())
-                .changed(false)
-                .changedFields(Set.of())
-                .build();
-
-        List<ProductSnapshot> snapshots = List.of(snapshot, unchangedSnapshot);
-        when(repository.findByProductIdOrderByCreatedAtDesc("12345")).thenReturn(snapshots);
+    void getChanges_Success_ReturnsChangedSnapshotList() throws Exception {
+        when(historyService.getChanges("12345")).thenReturn(List.of(snapshot));
 
         mockMvc.perform(get("/track/changes/12345")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -175,10 +216,54 @@ class TrackingControllerTest {
                 .andExpect(jsonPath("$.length()").value(1));
     }
 
+    @Test
+    void getChanges_WithCursor_ReturnsPageAndNextCursor() throws Exception {
+        LocalDateTime before = LocalDateTime.of(2024, 5, 1, 12, 0);
+        when(historyService.getChangesPage("12345", before, 7L, 1)).thenReturn(List.of(snapshot));
+
+        mockMvc.perform(get("/track/changes/12345")
+                        .param("before", "2024-05-01T12:00:00")
+                        .param("beforeId", "7")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(TrackingController.NEXT_CURSOR_HEADER, snapshot.getCreatedAt().toString()))
+                .andExpect(header().string(TrackingController.NEXT_CURSOR_ID_HEADER, "1"))
+                .andExpect(jsonPath("$[0].id").value(1L))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    void getHistory_LastPage_ReturnsNoNextCursor() throws Exception {
+        when(historyService.getHistoryPage("12345", null, null, 10)).thenReturn(List.of(snapshot));
+
+        mockMvc.perform(get("/track/history/12345").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(TrackingController.NEXT_CURSOR_HEADER))
+                .andExpect(header().doesNotExist(TrackingController.NEXT_CURSOR_ID_HEADER))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    void exportHistory_StreamsNdjson() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write("{\"id\":1}\n{\"id\":2}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(historyService).exportHistory(eq("12345"), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(get("/track/history/12345/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(TrackingController.NDJSON))
+                .andExpect(content().string("{\"id\":1}\n{\"id\":2}\n"));
+    }
+
     @Test
     void getChangedFields_Success_ReturnsChangedFieldsList() throws Exception {
-        List<ProductSnapshot> snapshots = List.of(snapshot);
-        when(repository.findByProductIdOrderByCreatedAtDesc("12345")).thenReturn(snapshots);
+        when(historyService.getChanges("12345")).thenReturn(List.of(snapshot));
 
         mockMvc.perform(get("/track/changed-fields/12345")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -187,6 +272,91 @@ class TrackingControllerTest {
                 .andExpect(jsonPath("$.length()").value(1));
     }
 
+    @Test
+    void getTrend_ReturnsRollupsForGranularity() throws Exception {
+        TrendPoint point = TrendPoint.builder()
+                .bucketStart(LocalDateTime.of(2025, 1, 6, 0, 0))
+                .openPrice(new BigDecimal("100"))
+                .closePrice(new BigDecimal("90"))
+                .minPrice(new BigDecimal("85"))
+                .maxPrice(new BigDecimal("100"))
+                .averageRating(4.5)
+                .reviewDelta(3)
+                .samples(2)
+                .build();
+        when(rollupService.getTrend("12345", RollupGranularity.WEEK, null, null, 10)).thenReturn(List.of(point));
+
+        mockMvc.perform(get("/track/trend/12345").param("granularity", "week").param("buckets", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].closePrice").value(90))
+                .andExpect(jsonPath("$[0].reviewDelta").value(3));
+    }
+
+    @Test
+    void getTrend_UnknownGranularity_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(get("/track/trend/12345").param("granularity", "minute"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void trackProducts_ReturnsStatusPerArticle() throws Exception {
+        when(bulkTrackingService.trackProducts(any(User.class), eq(List.of("12345", "67890"))))
+                .thenReturn(List.of(
+                        new BulkTrackResult("12345", BulkTrackResult.Status.TRACKED),
+                        new BulkTrackResult("67890", BulkTrackResult.Status.ALREADY_TRACKED)));
+
+        mockMvc.perform(post("/track/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"articles\":[\"12345\",\"67890\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].article").value("12345"))
+                .andExpect(jsonPath("$[0].status").value("TRACKED"))
+                .andExpect(jsonPath("$[1].status").value("ALREADY_TRACKED"));
+    }
+
+    @Test
+    void trackProducts_TooManyArticles_ReturnsBadRequest() throws Exception {
+        when(bulkTrackingService.trackProducts(any(User.class), any()))
+                .thenThrow(new IllegalArgumentException("Too many articles"));
+
+        mockMvc.perform(post("/track/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"articles\":[\"1\",\"2\"]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void untrackProducts_ReturnsStatusPerArticle() throws Exception {
+        when(bulkTrackingService.untrackProducts(any(User.class), eq(List.of("12345"))))
+                .thenReturn(List.of(new BulkTrackResult("12345", BulkTrackResult.Status.UNTRACKED)));
+
+        mockMvc.perform(post("/track/bulk/untrack")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"articles\":[\"12345\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("UNTRACKED"));
+    }
+
+    @Test
+    void streamChanges_OpensEventStreamForUser() throws Exception {
+        SseEmitter emitter = new SseEmitter();
+        when(changeNotifier.open(any(User.class), eq(Set.of("12345")))).thenReturn(emitter);
+
+        mockMvc.perform(get("/track/stream").param("articles", "12345"))
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk());
+        emitter.complete();
+    }
+
+    @Test
+    void streamChanges_TooManyStreams_ReturnsTooManyRequests() throws Exception {
+        when(changeNotifier.open(any(User.class), eq(Set.of()))).thenThrow(new IllegalStateException("limit"));
+
+        mockMvc.perform(get("/track/stream"))
+                .andExpect(status().isTooManyRequests());
+    }
+
     @TestConfiguration
     static class MockConfig {
         @Bean
@@ -195,13 +365,28 @@ class TrackingControllerTest {
         }
 
         @Bean
-        public ProductSnapshotRepository productSnapshotRepository() {
-            return mock(ProductSnapshotRepository.class);
+        public TrackingService trackingService() {
+            return mock(TrackingService.class);
         }
 
         @Bean
-        public TrackingService trackingService() {
-            return mock(TrackingService.class);
+        public SnapshotHistoryService snapshotHistoryService() {
+            return mock(SnapshotHistoryService.class);
+        }
+
+        @Bean
+        public SnapshotRollupService snapshotRollupService() {
+            return mock(SnapshotRollupService.class);
+        }
+
+        @Bean
+        public BulkTrackingService bulkTrackingService() {
+            return mock(BulkTrackingService.class);
+        }
+
+        @Bean
+        public ProductChangeNotifier productChangeNotifier() {
+            return mock(ProductChangeNotifier.class);
         }
     }
 }
\ No newline at end of file
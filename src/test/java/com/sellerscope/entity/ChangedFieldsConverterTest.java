@@ -0,0 +1,41 @@
+package com.sellerscope.entity;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChangedFieldsConverterTest {
+
+    private final ChangedFieldsConverter converter = new ChangedFieldsConverter();
+
+    @Test
+    @DisplayName("Набор полей сохраняется битовой маской и восстанавливается без потерь")
+    void shouldRoundTripFields() {
+        Set<String> fields = Set.of("price", "photos", "new");
+
+        Short mask = converter.convertToDatabaseColumn(fields);
+
+        assertThat(mask).isEqualTo((short) (1 | 8 | 32));
+        assertThat(converter.convertToEntityAttribute(mask)).containsExactlyInAnyOrderElementsOf(fields);
+    }
+
+    @Test
+    @DisplayName("Пустой набор и null хранятся как 0")
+    void shouldStoreEmptySetAsZero() {
+        assertThat(converter.convertToDatabaseColumn(Set.of())).isEqualTo((short) 0);
+        assertThat(converter.convertToDatabaseColumn(null)).isEqualTo((short) 0);
+        assertThat(converter.convertToEntityAttribute((short) 0)).isEmpty();
+        assertThat(converter.convertToEntityAttribute(null)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Неизвестное поле не может быть сохранено")
+    void shouldRejectUnknownField() {
+        assertThatThrownBy(() -> converter.convertToDatabaseColumn(Set.of("stock")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -5,10 +5,14 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -18,6 +22,9 @@ class ProductSnapshotRepositoryTest {
     @Autowired
     private ProductSnapshotRepository repository;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
     @Test
     @DisplayName("Должен находить снапшоты по productId в порядке убывания даты")
     void shouldFindSnapshotsByProductIdInDescendingOrder() {
@@ -56,4 +63,87 @@ class ProductSnapshotRepositoryTest {
         assertThat(result.get(0).getName()).isEqualTo("New");
         assertThat(result.get(1).getName()).isEqualTo("Old");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Должен находить последний снапшот по каждому productId одним запросом")
+    void shouldFindLatestSnapshotsForSeveralProducts() {
+        LocalDateTime now = LocalDateTime.now();
+        repository.save(snapshot("a", "A-old", now.minusHours(2)));
+        repository.save(snapshot("a", "A-new", now.minusHours(1)));
+        repository.save(snapshot("b", "B-only", now.minusDays(3)));
+        repository.save(snapshot("c", "C-ignored", now));
+
+        List<ProductSnapshot> latest = repository.findLatestByProductIdIn(List.of("a", "b", "missing"));
+
+        assertThat(latest).extracting(ProductSnapshot::getName).containsExactlyInAnyOrder("A-new", "B-only");
+        assertThat(repository.findFirstByProductIdOrderByCreatedAtDesc("a"))
+                .get()
+                .extracting(ProductSnapshot::getName)
+                .isEqualTo("A-new");
+    }
+
+    @Test
+    @DisplayName("Должен отдавать изменения страницами по курсору createdAt")
+    void shouldPageChangesByCreatedAtCursor() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        for (int i = 0; i < 5; i++) {
+            ProductSnapshot snapshot = snapshot("p", "v" + i, now.minusMinutes(i));
+            snapshot.setChanged(i != 2);
+            repository.save(snapshot);
+        }
+
+        List<ProductSnapshot> firstPage = repository.findByProductIdAndChangedTrueOrderByCreatedAtDesc("p", Limit.of(2));
+        List<ProductSnapshot> secondPage = repository.findByProductIdAndChangedTrueAndCreatedAtBeforeOrderByCreatedAtDesc(
+                "p", firstPage.get(1).getCreatedAt(), Limit.of(2));
+
+        assertThat(firstPage).extracting(ProductSnapshot::getName).containsExactly("v0", "v1");
+        assertThat(secondPage).extracting(ProductSnapshot::getName).containsExactly("v3", "v4");
+    }
+
+    @Test
+    @DisplayName("Граница страницы внутри группы с одинаковым createdAt не пропускает остаток группы")
+    void shouldPageByCompositeCursorWithinSameTimestamp() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        for (int i = 0; i < 3; i++) {
+            repository.save(snapshot("t", "same" + i, now));
+        }
+        repository.save(snapshot("t", "older", now.minusMinutes(1)));
+
+        List<ProductSnapshot> firstPage = repository.findByProductIdOrderByCreatedAtDescIdDesc("t", Limit.of(2));
+        ProductSnapshot last = firstPage.get(1);
+        List<ProductSnapshot> secondPage = repository.findPageBefore("t", last.getCreatedAt(), last.getId(), Limit.of(2));
+
+        assertThat(firstPage).extracting(ProductSnapshot::getName).containsExactly("same2", "same1");
+        assertThat(secondPage).extracting(ProductSnapshot::getName).containsExactly("same0", "older");
+        assertThat(repository.findChangesPageBefore("t", last.getCreatedAt(), Long.MIN_VALUE, Limit.of(2)))
+                .extracting(ProductSnapshot::getName).containsExactly("older");
+    }
+
+    @Test
+    @DisplayName("Должен сохранять изменённые поля в колонке снапшота и читать их обратно")
+    void shouldPersistChangedFieldsInline() {
+        ProductSnapshot snapshot = snapshot("f", "Fields", LocalDateTime.now());
+        snapshot.getChangedFields().addAll(Set.of("price", "rating", "description"));
+        Long id = repository.save(snapshot).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        ProductSnapshot loaded = repository.findById(id).orElseThrow();
+
+        assertThat(loaded.getChangedFields()).containsExactlyInAnyOrder("price", "rating", "description");
+    }
+
+    private static ProductSnapshot snapshot(String productId, String name, LocalDateTime createdAt) {
+        return ProductSnapshot.builder()
+                .productId(productId)
+                .name(name)
+                .price(BigDecimal.TEN)
+                .reviewCount(1)
+                .rating(5.0)
+                .photoHash("p")
+                .descriptionHash("d")
+                .createdAt(createdAt)
+                .changed(true)
+                .build();
+    }
+}
@@ -0,0 +1,73 @@
+package com.sellerscope.scheduler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProductRefreshEngineTest {
+
+    @Test
+    void run_shouldCountOutcomesAndTreatChunkExceptionsAsFailures() {
+        ProductRefreshEngine engine = new ProductRefreshEngine(4, 2, new SimpleMeterRegistry());
+
+        RefreshCycleReport report = engine.run(List.of("1", "2", "3", "4", "5"), chunk -> {
+            if (chunk.contains("5")) {
+                throw new IllegalStateException("boom");
+            }
+            return chunk.contains("1")
+                    ? Map.of("1", RefreshOutcome.UPDATED, "2", RefreshOutcome.UNCHANGED)
+                    : Map.of("3", RefreshOutcome.SKIPPED);
+        });
+
+        assertThat(report.total()).isEqualTo(5);
+        assertThat(report.updated()).isEqualTo(1);
+        assertThat(report.unchanged()).isEqualTo(1);
+        assertThat(report.skipped()).isEqualTo(1);
+        assertThat(report.failed()).isEqualTo(2);
+        assertThat(report.succeeded()).isEqualTo(2);
+        assertThat(report.p99()).isGreaterThanOrEqualTo(report.p50());
+    }
+
+    @Test
+    void run_shouldReportShortCircuitRate() {
+        ProductRefreshEngine engine = new ProductRefreshEngine(2, 4, new SimpleMeterRegistry());
+
+        RefreshCycleReport report = engine.run(List.of("1", "2", "3", "4"), chunk -> Map.of(
+                "1", RefreshOutcome.NOT_MODIFIED,
+                "2", RefreshOutcome.NOT_MODIFIED,
+                "3", RefreshOutcome.NOT_MODIFIED,
+                "4", RefreshOutcome.UPDATED));
+
+        assertThat(report.notModified()).isEqualTo(3);
+        assertThat(report.succeeded()).isEqualTo(4);
+        assertThat(report.shortCircuitRate()).isEqualTo(0.75);
+    }
+
+    @Test
+    void run_shouldNotExceedConcurrencyLimit() {
+        ProductRefreshEngine engine = new ProductRefreshEngine(3, 1, new SimpleMeterRegistry());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<String> articles = IntStream.range(0, 30).mapToObj(String::valueOf).toList();
+
+        RefreshCycleReport report = engine.run(articles, chunk -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return Map.of(chunk.get(0), RefreshOutcome.UNCHANGED);
+        });
+
+        assertThat(report.unchanged()).isEqualTo(30);
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(3);
+    }
+}
@@ -1,32 +1,44 @@
 package com.sellerscope.scheduler;
 
 import com.sellerscope.entity.ProductSnapshot;
-import com.sellerscope.repository.ProductSnapshotRepository;
 import com.sellerscope.repository.TrackedProductRepository;
+import com.sellerscope.service.BatchFetchResult;
+import com.sellerscope.service.LatestSnapshotCache;
+import com.sellerscope.service.ProductChangeNotifier;
+import com.sellerscope.service.SnapshotRollupService;
+import com.sellerscope.service.SnapshotStorageService;
 import com.sellerscope.service.WbProductParserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 class ProductUpdateSchedulerTest {
 
     @Mock
-    private ProductSnapshotRepository productSnapshotRepository;
+    private SnapshotStorageService snapshotStorageService;
     @Mock
     private TrackedProductRepository trackedProductRepository;
     @Mock
     private WbProductParserService wbProductParserService;
     @Mock
-    private RedissonClient redissonClient;
+    private LatestSnapshotCache latestSnapshotCache;
     @Mock
-    private RLock rLock;
+    private RefreshSchedule refreshSchedule;
+    @Mock
+    private SnapshotRollupService snapshotRollupService;
+    @Mock
+    private ProductChangeNotifier productChangeNotifier;
 
     @InjectMocks
     private ProductUpdateScheduler scheduler;
@@ -35,15 +47,19 @@ class ProductUpdateSchedulerTest {
     void setUp() {
         MockitoAnnotations.openMocks(this);
         scheduler = new ProductUpdateScheduler(
-                productSnapshotRepository,
+                snapshotStorageService,
                 trackedProductRepository,
                 wbProductParserService,
-                redissonClient
+                new ProductRefreshEngine(4, 50, new SimpleMeterRegistry()),
+                latestSnapshotCache,
+                refreshSchedule,
+                snapshotRollupService,
+                productChangeNotifier
         );
     }
 
     @Test
-    void updateTrackedProducts_shouldSaveChangedSnapshots() {
+    void refreshDueProducts_shouldSaveChangedSnapshots() {
         String article = "123";
         ProductSnapshot changedSnapshot = ProductSnapshot.builder()
                 .productId(article)
@@ -51,33 +67,239 @@ class ProductUpdateSchedulerTest {
                 .changedFields(Set.of("price"))
                 .build();
 
-        when(trackedProductRepository.findAllDistinctProductIds()).thenReturn(List.of(article));
-        when(redissonClient.getLock(anyString())).thenReturn(rLock);
-        when(rLock.tryLock()).thenReturn(true);
-        when(wbProductParserService.fetchSnapshotByArticle(article)).thenReturn(changedSnapshot);
+        when(refreshSchedule.claimDue(anyInt())).thenReturn(List.of(article), List.of());
+        when(wbProductParserService.fetchSnapshotsAsync(List.of(article)))
+                .thenReturn(batches(new BatchFetchResult(Map.of(article, changedSnapshot), Set.of(), Set.of())));
 
-        scheduler.updateTrackedProducts();
+        scheduler.refreshDueProducts();
 
-        verify(productSnapshotRepository, times(1)).save(changedSnapshot);
-        verify(rLock, times(1)).unlock();
+        verify(snapshotStorageService, times(1)).saveAll(List.of(changedSnapshot));
+        verify(latestSnapshotCache, times(1)).putAll(List.of(changedSnapshot), Map.of());
+        verify(snapshotRollupService, times(1)).record(List.of(changedSnapshot));
+        verify(productChangeNotifier, times(1)).publish(List.of(changedSnapshot));
     }
 
     @Test
-    void updateTrackedProducts_shouldNotSaveUnchangedSnapshots() {
+    void refreshDueProducts_shouldNotSaveUnchangedSnapshots() {
         String article = "456";
         ProductSnapshot unchangedSnapshot = ProductSnapshot.builder()
                 .productId(article)
                 .changed(false)
                 .build();
 
-        when(trackedProductRepository.findAllDistinctProductIds()).thenReturn(List.of(article));
-        when(redissonClient.getLock(anyString())).thenReturn(rLock);
-        when(rLock.tryLock()).thenReturn(true);
-        when(wbProductParserService.fetchSnapshotByArticle(article)).thenReturn(unchangedSnapshot);
+        when(refreshSchedule.claimDue(anyInt())).thenReturn(List.of(article), List.of());
+        when(wbProductParserService.fetchSnapshotsAsync(List.of(article)))
+                .thenReturn(batches(new BatchFetchResult(Map.of(article, unchangedSnapshot), Set.of(), Set.of())));
+
+        scheduler.refreshDueProducts();
+
+        verify(snapshotStorageService, never()).saveAll(any());
+    }
+
+    @Test
+    void refreshDueProducts_shouldFetchWholeChunkInOneBatch() {
+        ProductSnapshot changedSnapshot = ProductSnapshot.builder()
+                .productId("1")
+                .changed(true)
+                .changedFields(Set.of("price"))
+                .build();
+
+        when(refreshSchedule.claimDue(anyInt())).thenReturn(List.of("1", "2", "3"), List.of());
+        when(wbProductParserService.fetchSnapshotsAsync(List.of("1", "2", "3")))
+                .thenReturn(batches(new BatchFetchResult(Map.of("1", changedSnapshot), Set.of("2"), Set.of("3"))));
+
+        scheduler.refreshDueProducts();
+
+        verify(wbProductParserService, times(1)).fetchSnapshotsAsync(anyList());
+        verify(snapshotStorageService, times(1)).saveAll(List.of(changedSnapshot));
+    }
+
+    @Test
+    void refreshDueProducts_shouldMarkChunkFailedWhenBatchSaveFails() {
+        ProductSnapshot first = ProductSnapshot.builder().productId("1").changed(true).changedFields(Set.of("price")).build();
+        ProductSnapshot second = ProductSnapshot.builder().productId("2").changed(true).changedFields(Set.of("rating")).build();
+
+        when(wbProductParserService.fetchSnapshotsAsync(List.of("1", "2")))
+                .thenReturn(batches(new BatchFetchResult(Map.of("1", first, "2", second), Set.of(), Set.of())));
+        doThrow(new IllegalStateException("db down")).when(snapshotStorageService).saveAll(anyCollection());
+
+        Map<String, RefreshOutcome> outcomes = scheduler.refreshChunk(List.of("1", "2"));
+
+        verify(snapshotStorageService, times(1)).saveAll(anyCollection());
+        verifyNoInteractions(latestSnapshotCache);
+        verifyNoInteractions(productChangeNotifier);
+        assertThat(outcomes)
+                .containsEntry("1", RefreshOutcome.FAILED)
+                .containsEntry("2", RefreshOutcome.FAILED);
+    }
+
+    @Test
+    void refreshDueProducts_shouldRescheduleByOutcome() {
+        ProductSnapshot changedSnapshot = ProductSnapshot.builder()
+                .productId("1")
+                .changed(true)
+                .changedFields(Set.of("price"))
+                .build();
+        ProductSnapshot unchangedSnapshot = ProductSnapshot.builder()
+                .productId("2")
+                .changed(false)
+                .build();
+
+        when(refreshSchedule.claimDue(anyInt())).thenReturn(List.of("1", "2", "3"), List.of());
+        when(wbProductParserService.fetchSnapshotsAsync(List.of("1", "2", "3")))
+                .thenReturn(batches(new BatchFetchResult(Map.of("1", changedSnapshot, "2", unchangedSnapshot), Set.of("3"), Set.of())));
+
+        scheduler.refreshDueProducts();
+
+        verify(refreshSchedule).reschedule(Map.of(
+                "1", RefreshOutcome.UPDATED,
+                "2", RefreshOutcome.UNCHANGED,
+                "3", RefreshOutcome.FAILED));
+    }
+
+    @Test
+    void refreshChunk_shouldSaveEachBatchAsItArrives() {
+        ProductSnapshot first = ProductSnapshot.builder().productId("1").changed(true).changedFields(Set.of("price")).build();
+        ProductSnapshot second = ProductSnapshot.builder().productId("2").changed(true).changedFields(Set.of("rating")).build();
+
+        when(wbProductParserService.fetchSnapshotsAsync(List.of("1", "2")))
+                .thenReturn(batches(
+                        new BatchFetchResult(Map.of("1", first), Set.of(), Set.of()),
+                        new BatchFetchResult(Map.of("2", second), Set.of(), Set.of())));
+
+        Map<String, RefreshOutcome> outcomes = scheduler.refreshChunk(List.of("1", "2"));
+
+        InOrder inOrder = inOrder(snapshotStorageService);
+        inOrder.verify(snapshotStorageService).saveAll(List.of(first));
+        inOrder.verify(snapshotStorageService).saveAll(List.of(second));
+        assertThat(outcomes)
+                .containsEntry("1", RefreshOutcome.UPDATED)
+                .containsEntry("2", RefreshOutcome.UPDATED);
+    }
+
+    @Test
+    void refreshChunk_shouldFailArticlesWithoutOutcomeWhenStreamBreaks() {
+        ProductSnapshot first = ProductSnapshot.builder().productId("1").changed(false).build();
 
-        scheduler.updateTrackedProducts();
+        when(wbProductParserService.fetchSnapshotsAsync(List.of("1", "2"))).thenReturn(subscriber ->
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    private boolean sent;
+
+                    @Override
+                    public void request(long n) {
+                        if (!sent) {
+                            sent = true;
+                            subscriber.onNext(new BatchFetchResult(Map.of("1", first), Set.of(), Set.of()));
+                            subscriber.onError(new IllegalStateException("executor stopped"));
+                        }
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                }));
+
+        Map<String, RefreshOutcome> outcomes = scheduler.refreshChunk(List.of("1", "2"));
+
+        assertThat(outcomes)
+                .containsEntry("1", RefreshOutcome.UNCHANGED)
+                .containsEntry("2", RefreshOutcome.FAILED);
+    }
+
+    @Test
+    void refreshDueProducts_shouldNotClaimWhileUpstreamCircuitIsOpen() {
+        when(wbProductParserService.isUpstreamCircuitOpen()).thenReturn(true);
+
+        scheduler.refreshDueProducts();
+
+        verify(refreshSchedule, never()).claimDue(anyInt());
+    }
+
+    @Test
+    void refreshChunk_shouldSkipChunkWhileUpstreamCircuitIsOpen() {
+        when(wbProductParserService.isUpstreamCircuitOpen()).thenReturn(true);
+
+        Map<String, RefreshOutcome> outcomes = scheduler.refreshChunk(List.of("1", "2"));
+
+        assertThat(outcomes)
+                .containsEntry("1", RefreshOutcome.SKIPPED)
+                .containsEntry("2", RefreshOutcome.SKIPPED);
+        verify(wbProductParserService, never()).fetchSnapshotsAsync(anyList());
+    }
+
+    @Test
+    void refreshChunk_shouldCacheFingerprintsOfSavedSnapshotsAndReportNotModified() {
+        ProductSnapshot changed = ProductSnapshot.builder().productId("1").changed(true).changedFields(Set.of("price")).build();
+
+        when(wbProductParserService.fetchSnapshotsAsync(List.of("1", "2")))
+                .thenReturn(batches(new BatchFetchResult(Map.of("1", changed), Set.of(), Set.of(),
+                        Set.of("2"), Map.of("1", "fingerprint"))));
+
+        Map<String, RefreshOutcome> outcomes = scheduler.refreshChunk(List.of("1", "2"));
+
+        verify(latestSnapshotCache).putAll(List.of(changed), Map.of("1", "fingerprint"));
+        assertThat(outcomes)
+                .containsEntry("1", RefreshOutcome.UPDATED)
+                .containsEntry("2", RefreshOutcome.NOT_MODIFIED);
+    }
+
+    @Test
+    void refreshDueProducts_shouldDoNothingWhenNothingIsDue() {
+        when(refreshSchedule.claimDue(anyInt())).thenReturn(List.of());
+
+        scheduler.refreshDueProducts();
+
+        verify(wbProductParserService, never()).fetchSnapshotsAsync(anyList());
+        verify(refreshSchedule, never()).reschedule(any());
+    }
+
+    @Test
+    void reconcileSchedule_shouldPassTrackedArticles() {
+        when(trackedProductRepository.findAllDistinctProductIds()).thenReturn(List.of("1", "2"));
+
+        scheduler.reconcileSchedule();
+
+        verify(refreshSchedule).reconcile(List.of("1", "2"));
+        verify(latestSnapshotCache).retainAll(List.of("1", "2"));
+    }
+
+    @Test
+    void refreshDueProducts_shouldPullClaimsUntilQueueIsEmpty() {
+        when(refreshSchedule.claimDue(anyInt())).thenReturn(List.of("1"), List.of("2"), List.of());
+        when(wbProductParserService.fetchSnapshotsAsync(anyList()))
+                .thenReturn(batches(new BatchFetchResult(Map.of(), Set.of(), Set.of())));
+
+        scheduler.refreshDueProducts();
+
+        verify(refreshSchedule, times(3)).claimDue(anyInt());
+        verify(wbProductParserService).fetchSnapshotsAsync(List.of("1"));
+        verify(wbProductParserService).fetchSnapshotsAsync(List.of("2"));
+    }
+
+    @Test
+    void refreshDueProducts_shouldStopAtMaxPerTick() {
+        ReflectionTestUtils.setField(scheduler, "maxPerTick", 3);
+        ReflectionTestUtils.setField(scheduler, "claimSize", 2);
+        when(refreshSchedule.claimDue(2)).thenReturn(List.of("1", "2"));
+        when(refreshSchedule.claimDue(1)).thenReturn(List.of("3"));
+        when(wbProductParserService.fetchSnapshotsAsync(anyList()))
+                .thenReturn(batches(new BatchFetchResult(Map.of(), Set.of(), Set.of())));
+
+        scheduler.refreshDueProducts();
+
+        verify(refreshSchedule).claimDue(2);
+        verify(refreshSchedule).claimDue(1);
+        verify(refreshSchedule, times(2)).claimDue(anyInt());
+    }
 
-        verify(productSnapshotRepository, never()).save(any());
-        verify(rLock, times(1)).unlock();
+    private static Flow.Publisher<BatchFetchResult> batches(BatchFetchResult... results) {
+        return subscriber -> {
+            SubmissionPublisher<BatchFetchResult> publisher = new SubmissionPublisher<>();
+            publisher.subscribe(subscriber);
+            for (BatchFetchResult result : results) {
+                publisher.submit(result);
+            }
+            publisher.close();
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,116 @@
+package com.sellerscope.scheduler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RMap;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.*;
+
+class RefreshScheduleTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long MIN = Duration.ofMinutes(10).toMillis();
+    private static final long MAX = Duration.ofHours(24).toMillis();
+    private static final long LEASE = Duration.ofMinutes(5).toMillis();
+
+    private RScoredSortedSet<String> dueSet;
+    private RMap<String, String> intervals;
+    private RScript script;
+    private RefreshSchedule schedule;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        dueSet = mock(RScoredSortedSet.class);
+        intervals = mock(RMap.class);
+        when(redissonClient.<String>getScoredSortedSet(RefreshSchedule.DUE_SET, StringCodec.INSTANCE)).thenReturn(dueSet);
+        when(redissonClient.<String, String>getMap(RefreshSchedule.INTERVAL_MAP, StringCodec.INSTANCE)).thenReturn(intervals);
+        script = mock(RScript.class);
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(script);
+        schedule = new RefreshSchedule(redissonClient, Duration.ofMillis(MIN), Duration.ofMillis(MAX), Duration.ofMillis(LEASE),
+                Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC));
+    }
+
+    @Test
+    void claimDue_shouldLeaseDueArticlesAtomically() {
+        when(script.eval(eq(RScript.Mode.READ_WRITE), eq(RefreshSchedule.CLAIM_SCRIPT), eq(RScript.ReturnType.MULTI),
+                eq(List.of(RefreshSchedule.DUE_SET)), any(Object[].class)))
+                .thenReturn(List.of("1", "2"));
+
+        List<String> claimed = schedule.claimDue(100);
+
+        assertThat(claimed).containsExactly("1", "2");
+        verify(script).eval(RScript.Mode.READ_WRITE, RefreshSchedule.CLAIM_SCRIPT, RScript.ReturnType.MULTI,
+                List.of(RefreshSchedule.DUE_SET), Long.toString(NOW), "100", Long.toString(NOW + LEASE));
+    }
+
+    @Test
+    void nextInterval_shouldResetAfterChangeAndBackOffWhileStable() {
+        assertThat(schedule.nextInterval(4 * MIN, RefreshOutcome.UPDATED)).isEqualTo(MIN);
+        assertThat(schedule.nextInterval(MIN, RefreshOutcome.UNCHANGED)).isEqualTo(2 * MIN);
+        assertThat(schedule.nextInterval(2 * MIN, RefreshOutcome.UNCHANGED)).isEqualTo(4 * MIN);
+        assertThat(schedule.nextInterval(MAX - 1, RefreshOutcome.UNCHANGED)).isEqualTo(MAX);
+        assertThat(schedule.nextInterval(MAX, RefreshOutcome.UNCHANGED)).isEqualTo(MAX);
+    }
+
+    @Test
+    void reschedule_shouldApplyIntervalPerOutcome() {
+        when(intervals.getAll(anySet())).thenReturn(Map.of("changed", Long.toString(8 * MIN), "stable", Long.toString(3 * MIN)));
+
+        schedule.reschedule(Map.of(
+                "changed", RefreshOutcome.UPDATED,
+                "stable", RefreshOutcome.UNCHANGED,
+                "failed", RefreshOutcome.FAILED,
+                "busy", RefreshOutcome.SKIPPED));
+
+        verify(dueSet).addAllIfExist(Map.of(
+                "changed", (double) (NOW + MIN),
+                "stable", (double) (NOW + 6 * MIN),
+                "failed", (double) (NOW + MIN)));
+        verify(intervals).putAll(Map.of(
+                "changed", Long.toString(MIN),
+                "stable", Long.toString(6 * MIN)));
+    }
+
+    @Test
+    void reschedule_shouldIgnoreSkippedArticles() {
+        schedule.reschedule(Map.of("busy", RefreshOutcome.SKIPPED));
+
+        verifyNoInteractions(dueSet, intervals);
+    }
+
+    @Test
+    void reconcile_shouldAddNewArticlesAndRemoveUntracked() {
+        when(dueSet.readAll()).thenReturn(List.of("kept", "gone"));
+        when(intervals.readAllKeySet()).thenReturn(Set.of("kept", "gone", "orphan"));
+        when(dueSet.addAllIfAbsent(anyMap())).thenReturn(1);
+
+        int added = schedule.reconcile(List.of("kept", "new"));
+
+        assertThat(added).isEqualTo(1);
+        verify(dueSet).removeAll(Set.of("gone", "orphan"));
+        ArgumentCaptor<String[]> removedIntervals = ArgumentCaptor.forClass(String[].class);
+        verify(intervals).fastRemove(removedIntervals.capture());
+        assertThat(removedIntervals.getValue()).containsExactlyInAnyOrder("gone", "orphan");
+        verify(dueSet).addAllIfAbsent(Map.of("kept", (double) NOW, "new", (double) NOW));
+    }
+}
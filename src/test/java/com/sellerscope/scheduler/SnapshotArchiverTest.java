@@ -0,0 +1,32 @@
+package com.sellerscope.scheduler;
+
+import com.sellerscope.service.SnapshotArchive;
+import com.sellerscope.service.SnapshotStorageService;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+
+import java.time.Period;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class SnapshotArchiverTest {
+
+    private final SnapshotStorageService storage = mock(SnapshotStorageService.class);
+    private final RedissonClient redissonClient = mock(RedissonClient.class);
+
+    @Test
+    void shouldRefuseToStartWhenEnabledWithoutArchiveDir() {
+        assertThatThrownBy(() -> new SnapshotArchiver(storage, new SnapshotArchive(""), redissonClient,
+                true, Period.ofMonths(6)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldStartWithoutArchiveDirWhenDisabled() {
+        assertThatCode(() -> new SnapshotArchiver(storage, new SnapshotArchive(""), redissonClient,
+                false, Period.ofMonths(6)))
+                .doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,76 @@
+package com.sellerscope.scheduler;
+
+import com.sellerscope.scheduler.SnapshotPartitionMaintenance.Partition;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotPartitionMaintenanceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 15, 12, 0);
+
+    @Test
+    void toCreate_shouldKeepPremadePartitionsAfterLatest() {
+        List<Partition> existing = List.of(
+                month(2025, 2),
+                month(2025, 3),
+                month(2025, 4));
+
+        List<Partition> created = SnapshotPartitionMaintenance.toCreate(existing, NOW, Period.ofMonths(1), 3);
+
+        assertThat(created).containsExactly(month(2025, 5), month(2025, 6));
+    }
+
+    @Test
+    void toCreate_shouldCreateNothingWhenHorizonIsCovered() {
+        List<Partition> existing = List.of(month(2025, 3), month(2025, 4), month(2025, 5), month(2025, 6));
+
+        assertThat(SnapshotPartitionMaintenance.toCreate(existing, NOW, Period.ofMonths(1), 3)).isEmpty();
+    }
+
+    @Test
+    void toCreate_shouldStartFromCurrentPeriodWithoutPartitions() {
+        List<Partition> created = SnapshotPartitionMaintenance.toCreate(List.of(), NOW, Period.ofDays(7), 1);
+
+        assertThat(created).extracting(Partition::from)
+                .containsExactly(LocalDateTime.of(2025, 3, 15, 0, 0), LocalDateTime.of(2025, 3, 22, 0, 0));
+        assertThat(created.get(0).name()).isEqualTo("product_snapshot_p20250315");
+    }
+
+    @Test
+    void expired_shouldSelectPartitionsEndedBeforeRetention() {
+        List<Partition> existing = List.of(month(2023, 1), month(2023, 2), month(2023, 3), month(2025, 3));
+
+        assertThat(SnapshotPartitionMaintenance.expired(existing, NOW, Period.ofMonths(24)))
+                .containsExactly(month(2023, 1), month(2023, 2));
+        assertThat(SnapshotPartitionMaintenance.expired(existing, NOW, Period.ZERO)).isEmpty();
+    }
+
+    @Test
+    void parse_shouldReadRangeBoundsAndSkipDefaultPartition() {
+        Partition partition = SnapshotPartitionMaintenance.parse("product_snapshot_p20250101",
+                "FOR VALUES FROM ('2025-01-01 00:00:00') TO ('2025-02-01 00:00:00.5')");
+
+        assertThat(partition.from()).isEqualTo(LocalDateTime.of(2025, 1, 1, 0, 0));
+        assertThat(partition.to()).isEqualTo(LocalDateTime.of(2025, 2, 1, 0, 0, 0, 500_000_000));
+        assertThat(SnapshotPartitionMaintenance.parse("product_snapshot_default", "DEFAULT")).isNull();
+    }
+
+    @Test
+    void constructor_shouldRejectMixedIntervalAndUnknownAction() {
+        assertThatThrownBy(() -> new SnapshotPartitionMaintenance(null, null, Period.of(0, 1, 1), 3, Period.ZERO, "drop"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnapshotPartitionMaintenance(null, null, Period.ofMonths(1), 3, Period.ZERO, "archive"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Partition month(int year, int month) {
+        LocalDateTime from = LocalDateTime.of(year, month, 1, 0, 0);
+        return new Partition(SnapshotPartitionMaintenance.partitionName(from), from, from.plusMonths(1));
+    }
+}
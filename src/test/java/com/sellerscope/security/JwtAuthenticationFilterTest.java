@@ -0,0 +1,68 @@
+package com.sellerscope.security;
+
+import com.sellerscope.entity.User;
+import com.sellerscope.service.JwtService;
+import com.sellerscope.service.ParsedToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class JwtAuthenticationFilterTest {
+
+    private JwtService jwtService;
+    private UserDetailsService userDetailsService;
+    private JwtAuthenticationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = mock(JwtService.class);
+        userDetailsService = mock(UserDetailsService.class);
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getTopic(anyString(), any())).thenReturn(mock(RTopic.class));
+        PrincipalCache principalCache = new PrincipalCache(Duration.ofMinutes(5), 100, redissonClient, new SimpleMeterRegistry());
+        filter = new JwtAuthenticationFilter(jwtService, userDetailsService, principalCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void shouldLoadUserFromDatabaseOnlyOnceForRepeatedRequests() throws Exception {
+        User user = User.builder().id(1L).email("a@b.c").password("hash").build();
+        ParsedToken token = new ParsedToken("a@b.c", Instant.now().plusSeconds(60));
+        when(jwtService.parse("token")).thenReturn(token);
+        when(jwtService.isAccessTokenValid(token, user)).thenReturn(true);
+        when(userDetailsService.loadUserByUsername("a@b.c")).thenReturn(user);
+
+        for (int i = 0; i < 3; i++) {
+            SecurityContextHolder.clearContext();
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/track/history/1");
+            request.addHeader(JwtAuthenticationFilter.HEADER_NAME, JwtAuthenticationFilter.BEARER_PREFIX + "token");
+
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+            assertThat(SecurityContextHolder.getContext().getAuthentication().getPrincipal()).isEqualTo(user);
+        }
+        verify(userDetailsService, times(1)).loadUserByUsername("a@b.c");
+        verify(jwtService, times(3)).parse("token");
+        verify(jwtService, never()).extractEmail(anyString());
+    }
+}
@@ -0,0 +1,100 @@
+package com.sellerscope.security;
+
+import com.sellerscope.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PrincipalCacheTest {
+
+    private RTopic topic;
+    private SimpleMeterRegistry meterRegistry;
+    private PrincipalCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, UserDetails> loader = email -> {
+        loads.incrementAndGet();
+        return User.builder().email(email).password("hash").build();
+    };
+
+    @BeforeEach
+    void setUp() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        topic = mock(RTopic.class);
+        when(redissonClient.getTopic(PrincipalCache.INVALIDATION_TOPIC, StringCodec.INSTANCE)).thenReturn(topic);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new PrincipalCache(Duration.ofMinutes(5), 100, redissonClient, meterRegistry);
+    }
+
+    @Test
+    void shouldLoadPrincipalOnceAndReportHits() {
+        cache.get("a@b.c", loader);
+        cache.get("a@b.c", loader);
+        cache.get("a@b.c", loader);
+
+        assertThat(loads).hasValue(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "principals").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidateShouldEvictLocallyAndNotifyOtherInstances() {
+        cache.get("a@b.c", loader);
+
+        cache.invalidate("a@b.c");
+        cache.get("a@b.c", loader);
+
+        assertThat(loads).hasValue(2);
+        verify(topic).publish("a@b.c");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void invalidationMessageShouldEvictEntry() {
+        cache.subscribe();
+        ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addListener(eq(String.class), listener.capture());
+        cache.get("a@b.c", loader);
+
+        listener.getValue().onMessage(PrincipalCache.INVALIDATION_TOPIC, "a@b.c");
+        cache.get("a@b.c", loader);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void invalidateShouldNotFailWhenRedisIsDown() {
+        when(topic.publish(anyString())).thenThrow(new RedisConnectionException("down"));
+        cache.get("a@b.c", loader);
+
+        cache.invalidate("a@b.c");
+        cache.get("a@b.c", loader);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void subscribeShouldNotFailWhenRedisIsDown() {
+        when(topic.addListener(eq(String.class), any())).thenThrow(new RedisConnectionException("down"));
+
+        cache.subscribe();
+
+        assertThat(cache.get("a@b.c", loader)).isNotNull();
+    }
+}
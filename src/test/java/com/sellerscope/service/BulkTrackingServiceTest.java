@@ -0,0 +1,143 @@
+package com.sellerscope.service;
+
+import com.sellerscope.dto.BulkTrackResult;
+import com.sellerscope.dto.BulkTrackResult.Status;
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.TrackedProduct;
+import com.sellerscope.entity.User;
+import com.sellerscope.repository.TrackedProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class BulkTrackingServiceTest {
+
+    private final User user = User.builder().id(1L).email("test@mail.com").build();
+
+    private WbProductParserService wbService;
+    private SnapshotStorageService storage;
+    private TrackedProductRepository trackedProductRepository;
+    private LatestSnapshotCache latestSnapshotCache;
+    private SnapshotFetchCoalescer fetchCoalescer;
+    private SnapshotRollupService rollupService;
+    private BulkTrackingService bulkTrackingService;
+
+    @BeforeEach
+    void setUp() {
+        wbService = mock(WbProductParserService.class);
+        storage = mock(SnapshotStorageService.class);
+        trackedProductRepository = mock(TrackedProductRepository.class);
+        latestSnapshotCache = mock(LatestSnapshotCache.class);
+        fetchCoalescer = mock(SnapshotFetchCoalescer.class);
+        rollupService = mock(SnapshotRollupService.class);
+        bulkTrackingService = service(2, 10);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void trackProducts_shouldReportStatusPerArticleAndSaveInBatches() {
+        when(trackedProductRepository.findProductIdsByUserAndProductIdIn(eq(user), anyCollection()))
+                .thenReturn(List.of("2"));
+        when(fetchCoalescer.findFresh(anyCollection())).thenReturn(Map.of("3", snapshot("3", false)));
+        ProductSnapshot created = snapshot("1", true);
+        when(wbService.fetchSnapshotsByArticles(List.of("1", "4")))
+                .thenReturn(new BatchFetchResult(Map.of("1", created), Set.of(), Set.of(), Set.of("4"), Map.of("1", "fp")));
+        when(wbService.fetchSnapshotsByArticles(List.of("5")))
+                .thenReturn(new BatchFetchResult(Map.of(), Set.of("5"), Set.of()));
+
+        List<BulkTrackResult> results = bulkTrackingService.trackProducts(user,
+                List.of("1", " 2 ", "3", "1", "abc", "4", "5", ""));
+
+        assertThat(results).extracting(BulkTrackResult::getArticle).containsExactly("1", "2", "3", "abc", "4", "5");
+        assertThat(results).extracting(BulkTrackResult::getStatus).containsExactly(
+                Status.TRACKED, Status.ALREADY_TRACKED, Status.TRACKED, Status.INVALID, Status.TRACKED, Status.NOT_FOUND);
+        verify(storage).saveAll(List.of(created));
+        verify(latestSnapshotCache).putAll(List.of(created), Map.of("1", "fp"));
+        verify(rollupService).record(List.of(created));
+
+        ArgumentCaptor<List<TrackedProduct>> saved = ArgumentCaptor.forClass(List.class);
+        verify(trackedProductRepository).saveAll(saved.capture());
+        assertThat(saved.getValue()).extracting(TrackedProduct::getProductId).containsExactly("1", "3", "4");
+        verify(trackedProductRepository, never()).save(any(TrackedProduct.class));
+    }
+
+    @Test
+    void trackProducts_shouldMarkChunkFailedWhenFetchThrows() {
+        when(fetchCoalescer.findFresh(anyCollection())).thenReturn(Map.of());
+        when(wbService.fetchSnapshotsByArticles(anyList())).thenThrow(new RuntimeException("boom"));
+
+        List<BulkTrackResult> results = bulkTrackingService.trackProducts(user, List.of("1", "2", "3"));
+
+        assertThat(results).extracting(BulkTrackResult::getStatus).containsOnly(Status.FAILED);
+        verify(wbService, times(2)).fetchSnapshotsByArticles(anyList());
+        verify(trackedProductRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void trackProducts_shouldFallBackToSingleInsertsOnConflict() {
+        when(fetchCoalescer.findFresh(anyCollection()))
+                .thenReturn(Map.of("1", snapshot("1", false), "2", snapshot("2", false)));
+        when(trackedProductRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("duplicate"));
+        when(trackedProductRepository.save(argThat(product -> product != null && "2".equals(product.getProductId()))))
+                .thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        List<BulkTrackResult> results = bulkTrackingService.trackProducts(user, List.of("1", "2"));
+
+        assertThat(results).extracting(BulkTrackResult::getStatus).containsExactly(Status.TRACKED, Status.ALREADY_TRACKED);
+        verifyNoInteractions(wbService);
+    }
+
+    @Test
+    void trackProducts_shouldRejectTooManyArticles() {
+        BulkTrackingService limited = service(2, 1);
+
+        assertThatThrownBy(() -> limited.trackProducts(user, List.of("1", "2")))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(trackedProductRepository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void untrackProducts_shouldDeleteTrackedRowsInOneBatch() {
+        TrackedProduct tracked = TrackedProduct.builder().id(10L).user(user).productId("1").build();
+        when(trackedProductRepository.findByUserAndProductIdIn(eq(user), anyCollection())).thenReturn(List.of(tracked));
+
+        List<BulkTrackResult> results = bulkTrackingService.untrackProducts(user, List.of("1", "2", "x"));
+
+        assertThat(results).extracting(BulkTrackResult::getStatus)
+                .containsExactly(Status.UNTRACKED, Status.NOT_TRACKED, Status.INVALID);
+        ArgumentCaptor<Collection<String>> queried = ArgumentCaptor.forClass(Collection.class);
+        verify(trackedProductRepository).findByUserAndProductIdIn(eq(user), queried.capture());
+        assertThat(queried.getValue()).containsExactly("1", "2");
+        verify(trackedProductRepository).deleteAllInBatch(List.of(tracked));
+    }
+
+    private BulkTrackingService service(int chunkSize, int maxArticles) {
+        return new BulkTrackingService(wbService, storage, trackedProductRepository, latestSnapshotCache,
+                fetchCoalescer, rollupService, maxArticles, chunkSize, 2);
+    }
+
+    private static ProductSnapshot snapshot(String article, boolean changed) {
+        return ProductSnapshot.builder().productId(article).changed(changed).build();
+    }
+}
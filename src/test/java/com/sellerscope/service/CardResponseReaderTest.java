@@ -0,0 +1,105 @@
+package com.sellerscope.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardResponseReaderTest {
+
+    private final CardResponseReader reader = new CardResponseReader(new JsonFactory());
+
+    @Test
+    void shouldReadOnlyTopLevelProductFieldsAndSkipNestedOnes() throws Exception {
+        String json = """
+                {"state": 0, "meta": {"data": {"products": [{"id": 999}]}},
+                 "data": {"total": 1, "products": [
+                   {"id": 111, "brand": "Nike", "sizes": [{"name": "XL", "stocks": [{"wh": 1, "qty": 5}],
+                     "price": {"basic": 1, "total": 2}}],
+                    "name": "First", "priceU": 12990, "feedbacks": 7, "rating": 4.8,
+                    "colors": [{"name": "black", "id": 0}],
+                    "photos": ["a.jpg", "b.jpg", "c.jpg"], "description": "Описание"}
+                 ]}}
+                """;
+
+        Map<String, CardResponseReader.Card> cards = reader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(cards).containsOnlyKeys("111");
+        CardResponseReader.Card card = cards.get("111");
+        assertThat(card.name()).isEqualTo("First");
+        assertThat(card.priceU()).isEqualTo("12990");
+        assertThat(card.feedbacks()).isEqualTo(7);
+        assertThat(card.rating()).isEqualTo(4.8);
+        assertThat(card.photoHash()).isEqualTo(md5("a.jpg,b.jpg,c.jpg"));
+        assertThat(card.descriptionHash()).isEqualTo(md5("Описание"));
+    }
+
+    @Test
+    void shouldHashMissingPhotosAndDescriptionAsEmptyString() throws Exception {
+        String json = """
+                {"data": {"products": [
+                  {"id": "222", "name": "Second", "priceU": 100, "photos": null},
+                  {"id": 333, "name": "Third", "priceU": 100, "photos": []}
+                ]}}
+                """;
+
+        Map<String, CardResponseReader.Card> cards = reader.read(json);
+
+        assertThat(cards.get("222").photoHash()).isEqualTo(md5(""));
+        assertThat(cards.get("222").descriptionHash()).isEqualTo(md5(""));
+        assertThat(cards.get("333").photoHash()).isEqualTo(md5(""));
+    }
+
+    @Test
+    void shouldKeepFirstProductForDuplicateId() throws Exception {
+        String json = """
+                {"data": {"products": [
+                  {"id": 111, "name": "First", "priceU": 100},
+                  {"id": 111, "name": "Duplicate", "priceU": 200}
+                ]}}
+                """;
+
+        assertThat(reader.read(json).get("111").name()).isEqualTo("First");
+    }
+
+    @Test
+    void shouldReturnEmptyResultWithoutProducts() throws Exception {
+        assertThat(reader.read("{\"data\": {}}")).isEmpty();
+        assertThat(reader.read("{\"data\": {\"products\": null}}")).isEmpty();
+        assertThat(reader.read("[]")).isEmpty();
+    }
+
+    @Test
+    void shouldLeaveNameNullWhenMissing() throws Exception {
+        CardResponseReader.Card card = reader.read("{\"data\": {\"products\": [{\"id\": 1, \"priceU\": 100}]}}").get("1");
+
+        assertThat(card.name()).isNull();
+    }
+
+    @Test
+    void shouldFingerprintOnlyTrackedFields() throws Exception {
+        String base = """
+                {"data": {"products": [{"id": 1, "name": "P", "priceU": 100, "feedbacks": 2, "rating": 4.5,
+                  "photos": ["a.jpg", "b.jpg"], "description": "d", "sizes": [{"stocks": [{"qty": 5}]}]}]}}
+                """;
+        String otherStock = base.replace("\"qty\": 5", "\"qty\": 4");
+        String otherPrice = base.replace("\"priceU\": 100", "\"priceU\": 101");
+        String shiftedPhotos = base.replace("[\"a.jpg\", \"b.jpg\"]", "[\"a.jp\", \"gb.jpg\"]");
+
+        String fingerprint = reader.read(base).get("1").fingerprint();
+
+        assertThat(fingerprint).hasSize(16);
+        assertThat(reader.read(otherStock).get("1").fingerprint()).isEqualTo(fingerprint);
+        assertThat(reader.read(otherPrice).get("1").fingerprint()).isNotEqualTo(fingerprint);
+        assertThat(reader.read(shiftedPhotos).get("1").fingerprint()).isNotEqualTo(fingerprint);
+    }
+
+    private static String md5(String value) {
+        return DigestUtils.md5DigestAsHex(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,79 @@
+package com.sellerscope.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CircuitBreakerTest {
+
+    private final Clock clock = mock(Clock.class);
+    private final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(30), clock);
+
+    @Test
+    void shouldOpenAfterConsecutiveFailuresOnly() {
+        when(clock.millis()).thenReturn(0L);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        assertThat(breaker.onFailure()).isTrue();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.isCallPermitted()).isFalse();
+    }
+
+    @Test
+    void shouldAllowSingleTrialAfterOpenDuration() {
+        when(clock.millis()).thenReturn(0L);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        when(clock.millis()).thenReturn(30_000L);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void shouldReopenWhenTrialFails() {
+        when(clock.millis()).thenReturn(0L);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        when(clock.millis()).thenReturn(30_000L);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.onFailure()).isTrue();
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void releaseShouldFreeUnusedTrial() {
+        when(clock.millis()).thenReturn(0L);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        when(clock.millis()).thenReturn(30_000L);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.release();
+
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+}
@@ -0,0 +1,76 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.User;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtServiceTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private JwtService jwtService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = jwtService(60_000L);
+        user = User.builder().id(1L).email("a@b.c").password("hash").build();
+    }
+
+    @Test
+    void parseShouldReturnSubjectAndExpiry() {
+        String token = jwtService.generateAccessToken(user);
+
+        ParsedToken parsed = jwtService.parse(token);
+
+        assertThat(parsed.subject()).isEqualTo("a@b.c");
+        assertThat(parsed.expiration()).isAfter(Instant.now());
+        assertThat(jwtService.isAccessTokenValid(parsed, user)).isTrue();
+        assertThat(jwtService.isAccessTokenValid(token, user)).isTrue();
+    }
+
+    @Test
+    void tokenOfAnotherUserShouldBeInvalid() {
+        ParsedToken parsed = jwtService.parse(jwtService.generateAccessToken(user));
+        User other = User.builder().email("x@y.z").build();
+
+        assertThat(jwtService.isAccessTokenValid(parsed, other)).isFalse();
+    }
+
+    @Test
+    void parseShouldRejectTamperedToken() {
+        String token = jwtService.generateAccessToken(user);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertThatThrownBy(() -> jwtService.parse(tampered)).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void parseShouldRejectExpiredToken() {
+        String token = jwtService(-1_000L).generateAccessToken(user);
+
+        assertThatThrownBy(() -> jwtService.parse(token)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void parsedTokenWithoutExpiryShouldBeExpired() {
+        assertThat(new ParsedToken("a@b.c", null).isExpired()).isTrue();
+    }
+
+    private static JwtService jwtService(long accessExpiration) {
+        JwtService service = new JwtService();
+        ReflectionTestUtils.setField(service, "secretKey", SECRET);
+        ReflectionTestUtils.setField(service, "accessTokenExpiration", accessExpiration);
+        ReflectionTestUtils.setField(service, "refreshTokenExpiration", 60_000L);
+        service.init();
+        return service;
+    }
+}
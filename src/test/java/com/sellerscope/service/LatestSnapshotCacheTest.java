@@ -0,0 +1,99 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.codec.StringCodec;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class LatestSnapshotCacheTest {
+
+    private RedissonClient redissonClient;
+    private SimpleMeterRegistry meterRegistry;
+    private LatestSnapshotCache cache;
+
+    @BeforeEach
+    void setUp() {
+        redissonClient = mock(RedissonClient.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new LatestSnapshotCache(redissonClient, meterRegistry);
+    }
+
+    @Test
+    void shouldRoundTripSnapshotThroughCompactEncoding() {
+        ProductSnapshot snapshot = ProductSnapshot.builder()
+                .id(42L)
+                .productId("123")
+                .name("Name | with separator")
+                .price(new BigDecimal("129.90"))
+                .reviewCount(7)
+                .rating(4.8)
+                .photoHash("photo")
+                .descriptionHash("desc")
+                .createdAt(LocalDateTime.of(2024, 5, 1, 12, 30))
+                .build();
+
+        ProductSnapshot decoded = LatestSnapshotCache.decode("123", LatestSnapshotCache.encode(snapshot));
+
+        assertThat(decoded).usingRecursiveComparison()
+                .ignoringFields("changedFields")
+                .isEqualTo(snapshot);
+    }
+
+    @Test
+    void shouldStoreFingerprintAlongsideSnapshot() {
+        ProductSnapshot snapshot = ProductSnapshot.builder()
+                .productId("123")
+                .name("Name")
+                .price(new BigDecimal("1"))
+                .build();
+
+        String withFingerprint = LatestSnapshotCache.encode(snapshot, "00ff00ff00ff00ff");
+
+        assertThat(LatestSnapshotCache.fingerprint(withFingerprint)).isEqualTo("00ff00ff00ff00ff");
+        assertThat(LatestSnapshotCache.decode("123", withFingerprint).getName()).isEqualTo("Name");
+        assertThat(LatestSnapshotCache.fingerprint(LatestSnapshotCache.encode(snapshot))).isNull();
+    }
+
+    @Test
+    void shouldReportMissAndBackOffWhenRedisIsUnavailable() {
+        when(redissonClient.getMap(anyString(), any(StringCodec.class)))
+                .thenThrow(new RedisConnectionException("down"));
+
+        assertThat(cache.get("123")).isEmpty();
+        assertThat(cache.get("123")).isEmpty();
+
+        verify(redissonClient, times(1)).getMap(anyString(), any(StringCodec.class));
+        assertThat(meterRegistry.get("snapshot.cache.requests").tag("result", "error").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("snapshot.cache.requests").tag("result", "miss").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void retainAll_shouldEvictArticlesThatAreNoLongerTracked() {
+        RMap<String, String> map = mock(RMap.class);
+        when(redissonClient.<String, String>getMap(LatestSnapshotCache.MAP_NAME, StringCodec.INSTANCE)).thenReturn(map);
+        when(map.keySet(anyInt())).thenReturn(Set.of("1", "2", "3"));
+
+        assertThat(cache.retainAll(List.of("2"))).isEqualTo(2);
+
+        ArgumentCaptor<String[]> evicted = ArgumentCaptor.forClass(String[].class);
+        verify(map).fastRemove(evicted.capture());
+        assertThat(evicted.getValue()).containsExactlyInAnyOrder("1", "3");
+    }
+}
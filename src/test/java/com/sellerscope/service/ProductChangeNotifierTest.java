@@ -0,0 +1,186 @@
+package com.sellerscope.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.TrackedProduct;
+import com.sellerscope.entity.User;
+import com.sellerscope.repository.TrackedProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ProductChangeNotifierTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private RTopic topic;
+    private TrackedProductRepository trackedProductRepository;
+    private ProductChangeNotifier notifier;
+
+    @BeforeEach
+    void setUp() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        topic = mock(RTopic.class);
+        trackedProductRepository = mock(TrackedProductRepository.class);
+        when(redissonClient.getTopic(ProductChangeNotifier.CHANGES_TOPIC, StringCodec.INSTANCE)).thenReturn(topic);
+        notifier = new ProductChangeNotifier(redissonClient, trackedProductRepository, objectMapper,
+                Duration.ofMinutes(30), 2);
+    }
+
+    @Test
+    void publish_shouldSendChangedSnapshotsAsOneMessage() throws Exception {
+        ProductSnapshot snapshot = snapshot("1");
+
+        notifier.publish(List.of(snapshot));
+
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(topic).publish(message.capture());
+        assertThat(objectMapper.readValue(message.getValue(), ProductSnapshot[].class)).containsExactly(snapshot);
+    }
+
+    @Test
+    void publish_shouldSkipEmptyChunk() {
+        notifier.publish(List.of());
+
+        verifyNoInteractions(topic);
+    }
+
+    @Test
+    void deliver_shouldSendOnlyTrackedArticlesMatchingFilter() {
+        RecordingEmitter all = new RecordingEmitter();
+        RecordingEmitter filtered = new RecordingEmitter();
+        RecordingEmitter other = new RecordingEmitter();
+        notifier.register(1L, all, Set.of());
+        notifier.register(1L, filtered, Set.of("2"));
+        notifier.register(2L, other, Set.of());
+        when(trackedProductRepository.findByUserIdInAndProductIdIn(anyCollection(), anyCollection()))
+                .thenReturn(List.of(tracked(1L, "1"), tracked(1L, "2")));
+
+        notifier.deliver(List.of(snapshot("1"), snapshot("2"), snapshot("3")));
+
+        assertThat(all.sent).isEqualTo(2);
+        assertThat(filtered.sent).isEqualTo(1);
+        assertThat(other.sent).isZero();
+    }
+
+    @Test
+    void deliver_shouldSkipLookupWithoutSubscribers() {
+        notifier.deliver(List.of(snapshot("1")));
+
+        verify(trackedProductRepository, never()).findByUserIdInAndProductIdIn(anyCollection(), anyCollection());
+    }
+
+    @Test
+    void deliver_shouldDropDisconnectedClient() {
+        RecordingEmitter broken = new RecordingEmitter();
+        broken.fail = true;
+        notifier.register(1L, broken, Set.of());
+        when(trackedProductRepository.findByUserIdInAndProductIdIn(anyCollection(), anyCollection()))
+                .thenReturn(List.of(tracked(1L, "1")));
+
+        notifier.deliver(List.of(snapshot("1")));
+
+        assertThat(notifier.connections()).isZero();
+    }
+
+    @Test
+    void register_shouldLimitStreamsPerUser() {
+        notifier.register(1L, new RecordingEmitter(), Set.of());
+        notifier.register(1L, new RecordingEmitter(), Set.of());
+
+        assertThatThrownBy(() -> notifier.register(1L, new RecordingEmitter(), Set.of()))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(notifier.connections()).isEqualTo(2);
+    }
+
+    @Test
+    void heartbeat_shouldNotWaitForStalledClient() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch pinged = new CountDownLatch(1);
+        SseEmitter stalled = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        SseEmitter healthy = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                pinged.countDown();
+            }
+        };
+        notifier.register(1L, stalled, Set.of());
+        notifier.register(2L, healthy, Set.of());
+
+        notifier.heartbeat();
+        notifier.heartbeat();
+
+        assertThat(pinged.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+        assertThat(notifier.connections()).isEqualTo(2);
+    }
+
+    @Test
+    void subscribe_shouldListenToChangesTopic() {
+        notifier.subscribe();
+
+        verify(topic).addListener(eq(String.class), any());
+        verify(topic, never()).publish(anyString());
+    }
+
+    private static ProductSnapshot snapshot(String article) {
+        return ProductSnapshot.builder()
+                .productId(article)
+                .name("Товар")
+                .price(new BigDecimal("10.50"))
+                .createdAt(LocalDateTime.of(2025, 1, 1, 12, 0))
+                .changed(true)
+                .changedFields(Set.of("price"))
+                .build();
+    }
+
+    private static TrackedProduct tracked(Long userId, String article) {
+        return TrackedProduct.builder().user(User.builder().id(userId).build()).productId(article).build();
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+        private int sent;
+        private boolean fail;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (fail) {
+                throw new IOException("Broken pipe");
+            }
+            sent++;
+        }
+    }
+}
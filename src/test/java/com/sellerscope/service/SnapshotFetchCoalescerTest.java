@@ -0,0 +1,229 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RBucket;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.StringCodec;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class SnapshotFetchCoalescerTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T12:00:00Z");
+
+    private SnapshotStorageService storage;
+    private RBucket<String> marker;
+    private RTopic topic;
+    private SnapshotFetchCoalescer coalescer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        storage = mock(SnapshotStorageService.class);
+        marker = mock(RBucket.class);
+        topic = mock(RTopic.class);
+        when(redissonClient.<String>getBucket(SnapshotFetchCoalescer.IN_FLIGHT_PREFIX + "123", StringCodec.INSTANCE))
+                .thenReturn(marker);
+        when(redissonClient.getTopic(SnapshotFetchCoalescer.FETCHED_TOPIC, StringCodec.INSTANCE)).thenReturn(topic);
+        when(storage.findLatest("123")).thenReturn(Optional.empty());
+        coalescer = coalescer(redissonClient, Duration.ofSeconds(30));
+    }
+
+    private SnapshotFetchCoalescer coalescer(RedissonClient redissonClient, Duration waitTimeout) {
+        SnapshotFetchCoalescer created = new SnapshotFetchCoalescer(redissonClient, storage, Duration.ofMinutes(5),
+                waitTimeout, new SimpleMeterRegistry(), Clock.fixed(NOW, ZoneOffset.UTC));
+        created.subscribe();
+        return created;
+    }
+
+    @Test
+    void getLatest_shouldReuseFreshSnapshotWithoutFetching() {
+        ProductSnapshot fresh = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC).minusMinutes(1));
+        when(storage.findLatest("123")).thenReturn(Optional.of(fresh));
+
+        CompletableFuture<ProductSnapshot> result = coalescer.getLatest("123", () -> {
+            throw new AssertionError("must not fetch");
+        });
+
+        assertThat(result).isCompletedWithValue(fresh);
+        verifyNoInteractions(marker);
+    }
+
+    @Test
+    void findFresh_shouldKeepOnlySnapshotsYoungerThanReuseAge() {
+        ProductSnapshot fresh = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC).minusMinutes(1));
+        ProductSnapshot stale = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC).minusMinutes(10));
+        when(storage.findLatest(List.of("1", "2", "3"))).thenReturn(Map.of("1", fresh, "2", stale));
+
+        assertThat(coalescer.findFresh(List.of("1", "2", "3"))).containsOnlyKeys("1");
+        verifyNoInteractions(marker);
+    }
+
+    @Test
+    void getLatest_shouldFetchAgainWhenSnapshotIsStale() {
+        ProductSnapshot stale = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC).minusMinutes(10));
+        ProductSnapshot fetched = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC));
+        when(storage.findLatest("123")).thenReturn(Optional.of(stale));
+        when(marker.setIfAbsent(anyString(), any(Duration.class))).thenReturn(true);
+
+        CompletableFuture<ProductSnapshot> result = coalescer.getLatest("123", () -> CompletableFuture.completedFuture(fetched));
+
+        assertThat(result).isCompletedWithValue(fetched);
+    }
+
+    @Test
+    void getLatest_shouldShareInFlightFetchBetweenConcurrentCallers() {
+        ProductSnapshot fetched = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC));
+        when(marker.setIfAbsent(anyString(), any(Duration.class))).thenReturn(true);
+        CompletableFuture<ProductSnapshot> upstream = new CompletableFuture<>();
+        AtomicInteger fetches = new AtomicInteger();
+
+        CompletableFuture<ProductSnapshot> first = coalescer.getLatest("123", () -> {
+            fetches.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<ProductSnapshot> second = coalescer.getLatest("123", () -> {
+            fetches.incrementAndGet();
+            return upstream;
+        });
+
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+        upstream.complete(fetched);
+
+        assertThat(first).isCompletedWithValue(fetched);
+        assertThat(second).isCompletedWithValue(fetched);
+        assertThat(fetches).hasValue(1);
+        ArgumentCaptor<String> owner = ArgumentCaptor.forClass(String.class);
+        verify(marker, times(1)).setIfAbsent(owner.capture(), eq(Duration.ofSeconds(30)));
+        // Снимается только свой маркер, а не поставленный другим узлом после истечения таймаута
+        verify(marker).compareAndSet(owner.getValue(), null);
+        verify(marker, never()).delete();
+        verify(topic).publish("123");
+    }
+
+    @Test
+    void getLatest_shouldPropagateFetchFailureToAllCallers() {
+        when(marker.setIfAbsent(anyString(), any(Duration.class))).thenReturn(true);
+        CompletableFuture<ProductSnapshot> upstream = new CompletableFuture<>();
+
+        CompletableFuture<ProductSnapshot> first = coalescer.getLatest("123", () -> upstream);
+        CompletableFuture<ProductSnapshot> second = coalescer.getLatest("123", () -> upstream);
+        upstream.completeExceptionally(new RuntimeException("Product not found for article: 123"));
+
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).isCompletedExceptionally();
+        verify(marker).compareAndSet(anyString(), isNull());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getLatest_shouldWaitForFetchOnAnotherNode() {
+        ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addListener(eq(String.class), listener.capture());
+        when(marker.setIfAbsent(anyString(), any(Duration.class))).thenReturn(false);
+        ProductSnapshot published = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC));
+
+        CompletableFuture<ProductSnapshot> result = coalescer.getLatest("123", () -> {
+            throw new AssertionError("must not fetch");
+        });
+
+        assertThat(result).isNotDone();
+        when(storage.findLatest("123")).thenReturn(Optional.of(published));
+        listener.getValue().onMessage(SnapshotFetchCoalescer.FETCHED_TOPIC, "123");
+
+        assertThat(result).succeedsWithin(5, TimeUnit.SECONDS).isEqualTo(published);
+        verify(marker, never()).compareAndSet(anyString(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getLatest_shouldFetchLocallyWhenAnotherNodeDoesNotPublish() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.<String>getBucket(anyString(), eq(StringCodec.INSTANCE))).thenReturn(marker);
+        when(redissonClient.getTopic(SnapshotFetchCoalescer.FETCHED_TOPIC, StringCodec.INSTANCE)).thenReturn(topic);
+        coalescer = coalescer(redissonClient, Duration.ofMillis(50));
+        when(marker.setIfAbsent(anyString(), any(Duration.class))).thenReturn(false);
+        ProductSnapshot fetched = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC));
+
+        AtomicReference<Thread> loaderThread = new AtomicReference<>();
+
+        CompletableFuture<ProductSnapshot> result = coalescer.getLatest("123", () -> {
+            loaderThread.set(Thread.currentThread());
+            return CompletableFuture.completedFuture(fetched);
+        });
+
+        assertThat(result).succeedsWithin(5, TimeUnit.SECONDS).isEqualTo(fetched);
+        verify(topic, never()).publish(any());
+        // Блокирующий запрос после ожидания не занимает общий ForkJoinPool
+        assertThat(loaderThread.get().isVirtual()).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getLatest_shouldNotResolveNextWaitWithTimerOfPreviousOne() throws InterruptedException {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        topic = mock(RTopic.class);
+        when(redissonClient.<String>getBucket(anyString(), eq(StringCodec.INSTANCE))).thenReturn(marker);
+        when(redissonClient.getTopic(SnapshotFetchCoalescer.FETCHED_TOPIC, StringCodec.INSTANCE)).thenReturn(topic);
+        coalescer = coalescer(redissonClient, Duration.ofMillis(1000));
+        ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addListener(eq(String.class), listener.capture());
+        when(marker.setIfAbsent(anyString(), any(Duration.class))).thenReturn(false);
+        ProductSnapshot published = snapshot(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC));
+
+        // Первое ожидание разрешается публикацией задолго до своего таймаута
+        CompletableFuture<ProductSnapshot> first = coalescer.getLatest("123", () -> {
+            throw new AssertionError("must not fetch");
+        });
+        when(storage.findLatest("123")).thenReturn(Optional.of(published));
+        listener.getValue().onMessage(SnapshotFetchCoalescer.FETCHED_TOPIC, "123");
+        assertThat(first).succeedsWithin(5, TimeUnit.SECONDS).isEqualTo(published);
+
+        // Следующее ожидание того же артикула начинается позже
+        Thread.sleep(400);
+        when(storage.findLatest("123")).thenReturn(Optional.empty());
+        AtomicInteger fetches = new AtomicInteger();
+        CompletableFuture<ProductSnapshot> second = coalescer.getLatest("123", () -> {
+            fetches.incrementAndGet();
+            return CompletableFuture.completedFuture(published);
+        });
+
+        // Таймер первого ожидания уже сработал, таймаут второго ещё не истёк
+        Thread.sleep(800);
+        assertThat(fetches).hasValue(0);
+        assertThat(second).isNotDone();
+
+        assertThat(second).succeedsWithin(5, TimeUnit.SECONDS).isEqualTo(published);
+        assertThat(fetches).hasValue(1);
+    }
+
+    private static ProductSnapshot snapshot(LocalDateTime createdAt) {
+        return ProductSnapshot.builder().productId("123").createdAt(createdAt).build();
+    }
+}
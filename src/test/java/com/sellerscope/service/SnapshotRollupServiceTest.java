@@ -0,0 +1,170 @@
+package com.sellerscope.service;
+
+import com.sellerscope.dto.TrendPoint;
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.entity.RollupGranularity;
+import com.sellerscope.entity.SnapshotRollup;
+import com.sellerscope.repository.SnapshotRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+class SnapshotRollupServiceTest {
+
+    private static final String ARTICLE = "rollup-1";
+    // Понедельник
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 6, 10, 0);
+
+    @Autowired
+    private SnapshotRollupRepository repository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private SnapshotRollupService rollupService;
+
+    @BeforeEach
+    void setUp() {
+        rollupService = new SnapshotRollupService(repository, transactionTemplate);
+    }
+
+    @Test
+    @DisplayName("Снапшоты агрегируются по часам: open, close, min, max, средний рейтинг и прирост отзывов")
+    void shouldAggregateHourlyBuckets() {
+        rollupService.record(List.of(
+                snapshot(BASE.plusMinutes(5), 100, 10, 4.0),
+                snapshot(BASE.plusMinutes(20), 80, 12, 5.0),
+                snapshot(BASE.plusMinutes(40), 90, 15, 4.5)));
+        flush();
+
+        List<TrendPoint> trend = rollupService.getTrend(ARTICLE, RollupGranularity.HOUR, null, null, null);
+
+        assertThat(trend).hasSize(1);
+        TrendPoint hour = trend.get(0);
+        assertThat(hour.getBucketStart()).isEqualTo(BASE);
+        assertThat(hour.getOpenPrice()).isEqualByComparingTo("100");
+        assertThat(hour.getClosePrice()).isEqualByComparingTo("90");
+        assertThat(hour.getMinPrice()).isEqualByComparingTo("80");
+        assertThat(hour.getMaxPrice()).isEqualByComparingTo("100");
+        assertThat(hour.getAverageRating()).isEqualTo(4.5);
+        assertThat(hour.getReviewDelta()).isEqualTo(5);
+        assertThat(hour.getSamples()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Следующий интервал открывается закрытием предыдущего, в том числе между вызовами")
+    void shouldOpenNextBucketWithPreviousClose() {
+        rollupService.record(List.of(snapshot(BASE, 100, 10, 4.0)));
+        flush();
+        rollupService.record(List.of(snapshot(BASE.plusHours(2), 120, 14, 4.8)));
+        flush();
+
+        List<TrendPoint> hours = rollupService.getTrend(ARTICLE, RollupGranularity.HOUR, null, null, null);
+        assertThat(hours).extracting(TrendPoint::getBucketStart).containsExactly(BASE, BASE.plusHours(2));
+        TrendPoint second = hours.get(1);
+        assertThat(second.getOpenPrice()).isEqualByComparingTo("100");
+        assertThat(second.getMinPrice()).isEqualByComparingTo("100");
+        assertThat(second.getClosePrice()).isEqualByComparingTo("120");
+        assertThat(second.getReviewDelta()).isEqualTo(4);
+        assertThat(second.getAverageRating()).isEqualTo(4.8);
+
+        List<TrendPoint> days = rollupService.getTrend(ARTICLE, RollupGranularity.DAY, null, null, null);
+        assertThat(days).singleElement().satisfies(day -> {
+            assertThat(day.getBucketStart()).isEqualTo(BASE.toLocalDate().atStartOfDay());
+            assertThat(day.getOpenPrice()).isEqualByComparingTo("100");
+            assertThat(day.getClosePrice()).isEqualByComparingTo("120");
+            assertThat(day.getSamples()).isEqualTo(2);
+        });
+    }
+
+    @Test
+    @DisplayName("Тренд возвращает последние интервалы периода в порядке возрастания")
+    void shouldReturnLatestBucketsInAscendingOrder() {
+        rollupService.record(List.of(
+                snapshot(BASE, 100, 10, 4.0),
+                snapshot(BASE.plusDays(1), 110, 11, 4.0),
+                snapshot(BASE.plusDays(7), 120, 12, 4.0),
+                snapshot(BASE.plusDays(8), 130, 13, 4.0)));
+        flush();
+
+        assertThat(rollupService.getTrend(ARTICLE, RollupGranularity.DAY, null, null, 2))
+                .extracting(TrendPoint::getBucketStart)
+                .containsExactly(BASE.plusDays(7).toLocalDate().atStartOfDay(), BASE.plusDays(8).toLocalDate().atStartOfDay());
+        assertThat(rollupService.getTrend(ARTICLE, RollupGranularity.DAY, BASE.plusHours(1), BASE.plusDays(2), null))
+                .extracting(TrendPoint::getClosePrice)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(BigDecimal.valueOf(100), BigDecimal.valueOf(110));
+        assertThat(rollupService.getTrend(ARTICLE, RollupGranularity.WEEK, null, null, null))
+                .extracting(TrendPoint::getReviewDelta)
+                .containsExactly(1, 2);
+    }
+
+    @Test
+    @DisplayName("Снапшоты старше последнего интервала не учитываются")
+    void shouldIgnoreSnapshotsOlderThanLatestBucket() {
+        rollupService.record(List.of(snapshot(BASE.plusHours(3), 100, 10, 4.0)));
+        flush();
+        rollupService.record(List.of(snapshot(BASE, 50, 5, 1.0)));
+        flush();
+
+        assertThat(rollupService.getTrend(ARTICLE, RollupGranularity.HOUR, null, null, null))
+                .singleElement()
+                .satisfies(hour -> assertThat(hour.getMinPrice()).isEqualByComparingTo("100"));
+        assertThat(rollupService.getTrend(ARTICLE, RollupGranularity.DAY, null, null, null))
+                .singleElement()
+                .satisfies(day -> assertThat(day.getMinPrice()).isEqualByComparingTo("50"));
+    }
+
+    @Test
+    @DisplayName("Конфликт с параллельным обновлением интервала повторяет пересчёт от свежих агрегатов")
+    void shouldRetryOnConcurrentUpdate() {
+        SnapshotRollupRepository conflicting = mock(SnapshotRollupRepository.class);
+        when(conflicting.saveAllAndFlush(any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(SnapshotRollup.class, 1L))
+                .thenReturn(List.of());
+        SnapshotRollupService service = new SnapshotRollupService(conflicting,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+
+        service.record(List.of(snapshot(BASE, 100, 10, 4.0)));
+
+        verify(conflicting, times(2)).findLatestByProductIdIn(any());
+        verify(conflicting, times(2)).saveAllAndFlush(any());
+    }
+
+    private void flush() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static ProductSnapshot snapshot(LocalDateTime createdAt, int price, int reviews, double rating) {
+        return ProductSnapshot.builder()
+                .productId(ARTICLE)
+                .name("Товар")
+                .price(BigDecimal.valueOf(price))
+                .reviewCount(reviews)
+                .rating(rating)
+                .createdAt(createdAt)
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotSegmentCodecTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 5, 1, 10, 0, 0, 123_456_000);
+
+    @Test
+    @DisplayName("Сегмент восстанавливает все поля, включая пустые значения")
+    void shouldRoundTripAllFields() throws IOException {
+        List<ProductSnapshot> snapshots = List.of(
+                snapshot(1L, BASE, "12.50", 10, 4.7, "Товар", Set.of("new")),
+                snapshot(2L, BASE.plusMinutes(10), "11.99", 12, 4.8, "Товар", Set.of("price", "reviewCount")),
+                snapshot(null, BASE.plusHours(1), null, 12, 4.8, null, Set.of()),
+                snapshot(7L, BASE.plusDays(1), "1000", 9, 0.0, "Другой товар", Set.of("photos")));
+
+        List<ProductSnapshot> restored = SnapshotSegmentCodec.read("42", new ByteArrayInputStream(encode(snapshots)));
+
+        assertThat(restored).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(snapshots);
+        assertThat(restored.get(1).getPrice().scale()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Неизменные значения колонок сжимаются до долей байта на снапшот")
+    void shouldCompressRepeatedValues() throws IOException {
+        List<ProductSnapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            snapshots.add(snapshot(i + 1L, BASE.plusMinutes(10L * i), "199.90", 500 + i / 100, 4.6,
+                    "Длинное название товара для проверки словаря", Set.of()));
+        }
+
+        byte[] segment = encode(snapshots);
+
+        assertThat(segment.length).isLessThan(snapshots.size());
+        assertThat(SnapshotSegmentCodec.read("42", new ByteArrayInputStream(segment))).isEqualTo(snapshots);
+    }
+
+    @Test
+    @DisplayName("Файл другого формата не читается")
+    void shouldRejectUnknownFormat() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(new byte[]{1, 2, 3, 4, 5});
+        }
+
+        assertThatThrownBy(() -> SnapshotSegmentCodec.read("42", new ByteArrayInputStream(out.toByteArray())))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static byte[] encode(List<ProductSnapshot> snapshots) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SnapshotSegmentCodec.write(snapshots, out);
+        return out.toByteArray();
+    }
+
+    private static ProductSnapshot snapshot(Long id, LocalDateTime createdAt, String price, int reviews, double rating,
+                                            String name, Set<String> changedFields) {
+        return ProductSnapshot.builder()
+                .id(id)
+                .productId("42")
+                .name(name)
+                .price(price == null ? null : new BigDecimal(price).setScale(2))
+                .reviewCount(reviews)
+                .rating(rating)
+                .photoHash(name == null ? null : "photo-" + name.length())
+                .descriptionHash("description")
+                .createdAt(createdAt)
+                .changed(!changedFields.isEmpty())
+                .changedFields(changedFields)
+                .build();
+    }
+}
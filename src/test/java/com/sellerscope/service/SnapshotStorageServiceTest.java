@@ -0,0 +1,256 @@
+package com.sellerscope.service;
+
+import com.sellerscope.entity.ProductSnapshot;
+import com.sellerscope.repository.ProductSnapshotRepository;
+import com.sellerscope.repository.SnapshotDeltaRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class SnapshotStorageServiceTest {
+
+    private static final String ARTICLE = "delta-1";
+
+    @Autowired
+    private ProductSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private SnapshotDeltaRepository deltaRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @TempDir
+    private Path archiveDir;
+
+    private SnapshotStorageService storage;
+    private LocalDateTime base;
+
+    @BeforeEach
+    void setUp() {
+        storage = new SnapshotStorageService(snapshotRepository, deltaRepository, new SnapshotArchive(archiveDir), "delta", 3);
+        base = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).minusHours(1);
+    }
+
+    @Test
+    @DisplayName("В режиме delta ключевой снапшот пишется для нового товара и на каждое N-е изменение")
+    void shouldWriteKeyframeEveryNthChange() {
+        storage.save(snapshot(0, 100, 10, Set.of("new")));
+        storage.save(snapshot(1, 110, 10, Set.of("price")));
+        storage.save(snapshot(2, 110, 11, Set.of("reviewCount")));
+        storage.save(snapshot(3, 120, 11, Set.of("price")));
+        storage.save(snapshot(4, 120, 11, Set.of()));
+
+        assertThat(snapshotRepository.findByProductIdOrderByCreatedAtDesc(ARTICLE)).hasSize(2);
+        assertThat(deltaRepository.findAll()).hasSize(3);
+    }
+
+    @Test
+    @DisplayName("История восстанавливается из ключевых снапшотов и дельт")
+    void shouldReconstructHistory() {
+        storage.save(snapshot(0, 100, 10, Set.of("new")));
+        storage.save(snapshot(1, 110, 10, Set.of("price")));
+        storage.save(snapshot(2, 110, 11, Set.of("reviewCount")));
+        storage.save(snapshot(3, 120, 11, Set.of("price")));
+        storage.save(snapshot(4, 120, 11, Set.of()));
+
+        List<ProductSnapshot> history = storage.findHistory(ARTICLE);
+
+        assertThat(history).extracting(ProductSnapshot::getCreatedAt)
+                .containsExactly(base.plusMinutes(4), base.plusMinutes(3), base.plusMinutes(2), base.plusMinutes(1), base);
+        assertThat(history).extracting(s -> s.getPrice().intValue()).containsExactly(120, 120, 110, 110, 100);
+        assertThat(history).extracting(ProductSnapshot::getReviewCount).containsExactly(11, 11, 11, 10, 10);
+        assertThat(history.get(2).getChangedFields()).containsExactly("reviewCount");
+        assertThat(history.get(0).isChanged()).isFalse();
+        assertThat(history).allMatch(s -> "Товар".equals(s.getName()));
+    }
+
+    @Test
+    @DisplayName("Последний снапшот и страницы истории восстанавливаются в режиме delta")
+    void shouldReconstructLatestAndPages() {
+        storage.save(snapshot(0, 100, 10, Set.of("new")));
+        storage.save(snapshot(1, 110, 10, Set.of("price")));
+        storage.save(snapshot(2, 110, 11, Set.of("reviewCount")));
+        storage.save(snapshot(3, 110, 11, Set.of()));
+
+        ProductSnapshot latest = storage.findLatest(ARTICLE).orElseThrow();
+        assertThat(latest.getPrice()).isEqualByComparingTo("110");
+        assertThat(latest.getReviewCount()).isEqualTo(11);
+        assertThat(latest.getCreatedAt()).isEqualTo(base.plusMinutes(3));
+
+        List<ProductSnapshot> firstPage = storage.findHistoryPage(ARTICLE, null, 2, false);
+        assertThat(firstPage).extracting(ProductSnapshot::getCreatedAt)
+                .containsExactly(base.plusMinutes(3), base.plusMinutes(2));
+
+        List<ProductSnapshot> secondPage = storage.findHistoryPage(ARTICLE, firstPage.get(1).getCreatedAt(), 2, false);
+        assertThat(secondPage).extracting(ProductSnapshot::getCreatedAt)
+                .containsExactly(base.plusMinutes(1), base);
+        assertThat(secondPage.get(0).getPrice()).isEqualByComparingTo("110");
+
+        List<ProductSnapshot> changes = storage.findHistoryPage(ARTICLE, null, 10, true);
+        assertThat(changes).extracting(ProductSnapshot::getCreatedAt)
+                .containsExactly(base.plusMinutes(2), base.plusMinutes(1), base);
+    }
+
+    @Test
+    @DisplayName("Снапшоты чанка пишутся пакетами JDBC, а не отдельным запросом на каждый")
+    void shouldInsertSnapshotsInJdbcBatches() {
+        int count = 200;
+        int batchSize = 50;
+        SnapshotStorageService fullStorage = new SnapshotStorageService(snapshotRepository, deltaRepository,
+                new SnapshotArchive(archiveDir), "full", 10);
+        List<ProductSnapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ProductSnapshot snapshot = snapshot(i, 100 + i, 10, Set.of("price"));
+            snapshot.setProductId("batch-" + i);
+            snapshots.add(snapshot);
+        }
+        entityManager.flush();
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        fullStorage.saveAll(snapshots);
+        entityManager.flush();
+
+        // count / batchSize пакетов вставки плюс выборки блоков идентификаторов из последовательности
+        long sequenceCalls = count / batchSize + 1;
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(count);
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(count / batchSize + sequenceCalls);
+    }
+
+    @Test
+    @DisplayName("В режиме delta в архив переносится история до ключевого снапшота, история читается без изменений")
+    void shouldArchiveDeltaHistoryUpToKeyframe() {
+        storage.save(snapshot(0, 100, 10, Set.of("new")));
+        storage.save(snapshot(1, 110, 10, Set.of("price")));
+        storage.save(snapshot(2, 110, 11, Set.of("reviewCount")));
+        storage.save(snapshot(3, 120, 11, Set.of("price")));
+        storage.save(snapshot(4, 120, 12, Set.of("reviewCount")));
+        List<ProductSnapshot> before = storage.findHistory(ARTICLE);
+        entityManager.clear();
+
+        // Граница сдвигается к ключевому снапшоту на третьей минуте
+        assertThat(storage.findArticlesWithHistoryBefore(base.plusMinutes(4))).containsExactly(ARTICLE);
+        assertThat(storage.archiveBefore(ARTICLE, base.plusMinutes(4))).isEqualTo(3);
+        entityManager.clear();
+
+        assertThat(snapshotRepository.findByProductIdOrderByCreatedAtDesc(ARTICLE))
+                .extracting(ProductSnapshot::getCreatedAt).containsExactly(base.plusMinutes(3));
+        assertThat(deltaRepository.findAll()).extracting(d -> d.getCreatedAt()).containsExactly(base.plusMinutes(4));
+        List<ProductSnapshot> after = storage.findHistory(ARTICLE);
+        assertThat(after).usingRecursiveFieldByFieldElementComparatorIgnoringFields("id", "price")
+                .containsExactlyElementsOf(before);
+        assertThat(after).extracting(s -> s.getPrice().intValue()).containsExactly(120, 120, 110, 110, 100);
+        assertThat(storage.findLatest(ARTICLE).orElseThrow().getReviewCount()).isEqualTo(12);
+    }
+
+    @Test
+    @DisplayName("Последний снапшот не переносится, архив продолжает страницы после записей в БД")
+    void shouldKeepLatestAndContinuePagesFromArchive() {
+        SnapshotStorageService fullStorage = new SnapshotStorageService(snapshotRepository, deltaRepository,
+                new SnapshotArchive(archiveDir), "full", 10);
+        fullStorage.save(snapshot(0, 100, 10, Set.of("new")));
+        fullStorage.save(snapshot(1, 110, 10, Set.of("price")));
+        fullStorage.save(snapshot(2, 110, 10, Set.of()));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(fullStorage.archiveBefore(ARTICLE, base.plusHours(1))).isEqualTo(2);
+        entityManager.clear();
+
+        assertThat(snapshotRepository.findByProductIdOrderByCreatedAtDesc(ARTICLE)).hasSize(1);
+        assertThat(fullStorage.findHistory(ARTICLE)).extracting(ProductSnapshot::getCreatedAt)
+                .containsExactly(base.plusMinutes(2), base.plusMinutes(1), base);
+        assertThat(fullStorage.findArchived(ARTICLE, null, null, 10, true)).extracting(ProductSnapshot::getCreatedAt)
+                .containsExactly(base.plusMinutes(1), base);
+        assertThat(fullStorage.findArchived(ARTICLE, base.plusMinutes(1), null, 10, false)).extracting(ProductSnapshot::getCreatedAt)
+                .containsExactly(base);
+        assertThat(fullStorage.archiveBefore(ARTICLE, base.plusHours(1))).isZero();
+    }
+
+    @Test
+    @DisplayName("К переносу выбираются только артикулы с записями раньше своего последнего снапшота")
+    void shouldSkipStableArticlesWhenSelectingForArchive() {
+        SnapshotStorageService fullStorage = new SnapshotStorageService(snapshotRepository, deltaRepository,
+                new SnapshotArchive(archiveDir), "full", 10);
+        fullStorage.save(snapshot(0, 100, 10, Set.of("new")));
+        fullStorage.save(snapshot(1, 110, 10, Set.of("price")));
+        ProductSnapshot stable = snapshot(0, 100, 10, Set.of("new"));
+        stable.setProductId("stable-1");
+        fullStorage.save(stable);
+        entityManager.flush();
+
+        assertThat(fullStorage.findArticlesWithHistoryBefore(base.plusHours(1))).containsExactly(ARTICLE);
+        assertThat(fullStorage.findArticlesWithHistoryBefore(base)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Без настроенного архива продолжение истории не обращается к БД")
+    void shouldNotQueryDatabaseForArchiveWhenNotConfigured() {
+        SnapshotStorageService fullStorage = new SnapshotStorageService(snapshotRepository, deltaRepository,
+                new SnapshotArchive((Path) null), "full", 10);
+        fullStorage.save(snapshot(0, 100, 10, Set.of("new")));
+        entityManager.flush();
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        assertThat(fullStorage.findArchived(ARTICLE, null, null, Integer.MAX_VALUE, true)).isEmpty();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Сегменты архива, начинающиеся не раньше курсора, не читаются")
+    void shouldSkipArchiveSegmentsStartingAfterCursor() throws IOException {
+        SnapshotArchive archive = new SnapshotArchive(archiveDir);
+        archive.write(ARTICLE, List.of(snapshot(0, 100, 10, Set.of("new")), snapshot(1, 110, 10, Set.of("price"))));
+        archive.write(ARTICLE, List.of(snapshot(5, 120, 10, Set.of("price"))));
+        // Поздний сегмент испорчен: чтение с курсором раньше его начала не должно его распаковывать
+        try (Stream<Path> files = Files.list(archiveDir.resolve(ARTICLE))) {
+            Path late = files.filter(path -> !path.getFileName().toString().startsWith(
+                    DateTimeFormatter.ofPattern("yyyyMMddHHmm").format(base))).findFirst().orElseThrow();
+            Files.write(late, new byte[]{1, 2, 3});
+        }
+
+        assertThat(archive.read(ARTICLE, base.plusMinutes(5))).extracting(ProductSnapshot::getCreatedAt)
+                .containsExactly(base.plusMinutes(1), base);
+    }
+
+    private ProductSnapshot snapshot(int minute, int price, int reviews, Set<String> changedFields) {
+        return ProductSnapshot.builder()
+                .productId(ARTICLE)
+                .name("Товар")
+                .price(BigDecimal.valueOf(price))
+                .reviewCount(reviews)
+                .rating(4.5)
+                .photoHash("photo")
+                .descriptionHash("description")
+                .createdAt(base.plusMinutes(minute))
+                .changed(!changedFields.isEmpty())
+                .changedFields(new HashSet<>(changedFields))
+                .build();
+    }
+}
@@ -3,29 +3,43 @@ package com.sellerscope.service;
 import com.sellerscope.entity.ProductSnapshot;
 import com.sellerscope.entity.TrackedProduct;
 import com.sellerscope.entity.User;
-import com.sellerscope.repository.ProductSnapshotRepository;
 import com.sellerscope.repository.TrackedProductRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class TrackingServiceTest {
 
     private WbProductParserService wbService;
-    private ProductSnapshotRepository snapshotRepository;
+    private SnapshotStorageService snapshotStorage;
     private TrackedProductRepository trackedProductRepository;
+    private LatestSnapshotCache latestSnapshotCache;
+    private SnapshotFetchCoalescer fetchCoalescer;
+    private SnapshotRollupService rollupService;
     private TrackingService trackingService;
 
     @BeforeEach
+    @SuppressWarnings("unchecked")
     void setUp() {
         wbService = mock(WbProductParserService.class);
-        snapshotRepository = mock(ProductSnapshotRepository.class);
+        snapshotStorage = mock(SnapshotStorageService.class);
         trackedProductRepository = mock(TrackedProductRepository.class);
-        trackingService = new TrackingService(wbService, snapshotRepository, trackedProductRepository);
+        latestSnapshotCache = mock(LatestSnapshotCache.class);
+        fetchCoalescer = mock(SnapshotFetchCoalescer.class);
+        when(fetchCoalescer.getLatest(anyString(), any()))
+                .thenAnswer(invocation -> ((Supplier<CompletableFuture<ProductSnapshot>>) invocation.getArgument(1)).get());
+        rollupService = mock(SnapshotRollupService.class);
+        trackingService = new TrackingService(wbService, snapshotStorage, trackedProductRepository, latestSnapshotCache,
+                fetchCoalescer, rollupService);
     }
 
     @Test
@@ -40,7 +54,20 @@ class TrackingServiceTest {
         ProductSnapshot result = trackingService.trackProduct(user, article);
 
         assertThat(result).isEqualTo(snapshot);
-        verify(snapshotRepository).save(snapshot);
+        verify(snapshotStorage).save(snapshot);
+        verify(latestSnapshotCache).put(snapshot);
+        verify(rollupService).record(List.of(snapshot));
+        verify(trackedProductRepository).save(any(TrackedProduct.class));
+    }
+
+    @Test
+    void shouldTrackProductWhenRollupUpdateFails() {
+        User user = User.builder().id(1L).email("test@mail.com").build();
+        ProductSnapshot snapshot = ProductSnapshot.builder().productId("123").build();
+        when(wbService.fetchSnapshotByArticle("123")).thenReturn(snapshot);
+        doThrow(new RuntimeException("conflict")).when(rollupService).record(List.of(snapshot));
+
+        assertThat(trackingService.trackProduct(user, "123")).isEqualTo(snapshot);
         verify(trackedProductRepository).save(any(TrackedProduct.class));
     }
 
@@ -55,6 +82,55 @@ class TrackingServiceTest {
                 .isInstanceOf(IllegalStateException.class)
                 .hasMessageContaining("User already tracking product");
         verifyNoInteractions(wbService);
-        verifyNoInteractions(snapshotRepository);
+        verifyNoInteractions(snapshotStorage);
+    }
+
+    @Test
+    void shouldTrackProductAfterAsyncFetchCompletes() {
+        User user = User.builder().id(1L).email("test@mail.com").build();
+        String article = "123";
+        ProductSnapshot snapshot = ProductSnapshot.builder().productId(article).build();
+        CompletableFuture<ProductSnapshot> fetch = new CompletableFuture<>();
+
+        when(trackedProductRepository.existsByUserAndProductId(user, article)).thenReturn(false);
+        when(wbService.fetchSnapshotAsync(article)).thenReturn(fetch);
+
+        CompletableFuture<ProductSnapshot> result = trackingService.trackProductAsync(user, article);
+
+        assertThat(result).isNotDone();
+        verifyNoInteractions(snapshotStorage);
+
+        fetch.complete(snapshot);
+
+        assertThat(result).isCompletedWithValue(snapshot);
+        verify(snapshotStorage).save(snapshot);
+        verify(latestSnapshotCache).put(snapshot);
+        verify(trackedProductRepository).save(any(TrackedProduct.class));
+    }
+
+    @Test
+    void shouldTrackWithReusedSnapshotWithoutSavingIt() {
+        User user = User.builder().id(1L).email("test@mail.com").build();
+        ProductSnapshot fresh = ProductSnapshot.builder().productId("123").build();
+
+        when(trackedProductRepository.existsByUserAndProductId(user, "123")).thenReturn(false);
+        when(fetchCoalescer.getLatest(eq("123"), any())).thenReturn(CompletableFuture.completedFuture(fresh));
+
+        CompletableFuture<ProductSnapshot> result = trackingService.trackProductAsync(user, "123");
+
+        assertThat(result).isCompletedWithValue(fresh);
+        verifyNoInteractions(wbService, snapshotStorage, latestSnapshotCache, rollupService);
+        verify(trackedProductRepository).save(any(TrackedProduct.class));
+    }
+
+    @Test
+    void shouldRejectAsyncTrackingIfAlreadyTracked() {
+        User user = User.builder().id(1L).email("test@mail.com").build();
+
+        when(trackedProductRepository.existsByUserAndProductId(user, "123")).thenReturn(true);
+
+        assertThatThrownBy(() -> trackingService.trackProductAsync(user, "123"))
+                .isInstanceOf(IllegalStateException.class);
+        verifyNoInteractions(wbService);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+package com.sellerscope.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBucket;
+import org.redisson.api.RRateLimiter;
+import org.redisson.api.RateIntervalUnit;
+import org.redisson.api.RateType;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class UpstreamGuardTest {
+
+    private static final Duration ADJUST_INTERVAL = Duration.ofSeconds(1);
+
+    private RRateLimiter limiter;
+    private RAtomicLong rate;
+    private RBucket<String> increased;
+    private RBucket<String> decreased;
+    private Clock clock;
+    private SimpleMeterRegistry meterRegistry;
+    private UpstreamGuard guard;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        limiter = mock(RRateLimiter.class);
+        rate = mock(RAtomicLong.class);
+        increased = mock(RBucket.class);
+        decreased = mock(RBucket.class);
+        when(redissonClient.getRateLimiter(UpstreamGuard.RATE_LIMITER)).thenReturn(limiter);
+        when(redissonClient.getAtomicLong(UpstreamGuard.RATE)).thenReturn(rate);
+        when(redissonClient.<String>getBucket(UpstreamGuard.INCREASED_MARKER, StringCodec.INSTANCE)).thenReturn(increased);
+        when(redissonClient.<String>getBucket(UpstreamGuard.DECREASED_MARKER, StringCodec.INSTANCE)).thenReturn(decreased);
+        when(limiter.tryAcquire(anyLong(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+        when(rate.get()).thenReturn(20L);
+        when(increased.setIfAbsent(anyString(), any(Duration.class))).thenReturn(true);
+        when(decreased.setIfAbsent(anyString(), any(Duration.class))).thenReturn(true);
+        clock = mock(Clock.class);
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new UpstreamGuard(redissonClient, 1, 20, 1, 0.5, ADJUST_INTERVAL, Duration.ofSeconds(10),
+                3, Duration.ofSeconds(30), meterRegistry, clock);
+    }
+
+    @Test
+    void call_shouldRunUpstreamCallWithClusterPermit() {
+        assertThat(guard.call(() -> "cards")).isEqualTo("cards");
+
+        verify(limiter).tryAcquire(1, 10_000, TimeUnit.MILLISECONDS);
+        assertThat(meterRegistry.get("wb.upstream.calls").tag("outcome", "success").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void call_shouldHalveRateWhenThrottled() {
+        assertThatThrownBy(() -> guard.call(() -> {
+            throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null);
+        })).isInstanceOf(HttpClientErrorException.class);
+
+        verify(rate).set(10);
+        verify(limiter).setRate(RateType.OVERALL, 10, 1, RateIntervalUnit.SECONDS);
+        assertThat(meterRegistry.get("wb.upstream.rate.permitted").gauge().value()).isEqualTo(10);
+        assertThat(meterRegistry.get("wb.upstream.calls").tag("outcome", "throttled").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void call_shouldDecreaseRateOncePerAdjustInterval() {
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> guard.call(() -> {
+                throw HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Unavailable", null, null, null);
+            })).isInstanceOf(HttpServerErrorException.class);
+        }
+
+        verify(limiter, times(1)).setRate(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void call_shouldIncreaseRateAdditivelyAfterSuccess() {
+        when(rate.get()).thenReturn(10L);
+        when(decreased.isExists()).thenReturn(false);
+        guard.init();
+
+        guard.call(() -> "cards");
+
+        verify(rate).set(11);
+        verify(limiter).setRate(RateType.OVERALL, 11, 1, RateIntervalUnit.SECONDS);
+        assertThat(meterRegistry.get("wb.upstream.rate.permitted").gauge().value()).isEqualTo(11);
+    }
+
+    @Test
+    void call_shouldIncreaseSharedRateLoweredByAnotherNode() {
+        guard.init();
+        // Этот экземпляр видел максимальную частоту, затем другой экземпляр её снизил
+        when(rate.get()).thenReturn(10L);
+
+        guard.call(() -> "cards");
+
+        verify(rate).set(11);
+        verify(limiter).setRate(RateType.OVERALL, 11, 1, RateIntervalUnit.SECONDS);
+    }
+
+    @Test
+    void call_shouldNotIncreaseRateRightAfterDecrease() {
+        when(rate.get()).thenReturn(10L);
+        when(decreased.isExists()).thenReturn(true);
+        guard.init();
+
+        guard.call(() -> "cards");
+
+        verify(limiter, never()).setRate(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void call_shouldOpenCircuitAndRejectWithoutCallingUpstream() {
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> guard.call(() -> {
+                throw HttpServerErrorException.create(HttpStatus.BAD_GATEWAY, "Bad Gateway", null, null, null);
+            })).isInstanceOf(HttpServerErrorException.class);
+        }
+        clearInvocations(limiter);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> guard.call(calls::incrementAndGet))
+                .isInstanceOf(UpstreamUnavailableException.class);
+
+        assertThat(calls).hasValue(0);
+        verifyNoInteractions(limiter);
+        assertThat(guard.isCircuitOpen()).isTrue();
+        assertThat(meterRegistry.get("wb.upstream.circuit.state").tag("state", "open").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("wb.upstream.calls").tag("outcome", "rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void call_shouldNotCountClientErrorsAsThrottling() {
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> guard.call(() -> {
+                throw HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null);
+            })).isInstanceOf(HttpClientErrorException.class);
+        }
+
+        assertThat(guard.isCircuitOpen()).isFalse();
+        verify(limiter, never()).setRate(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void call_shouldNotIncreaseRateAfterClientErrorOtherThanNotFound() {
+        when(rate.get()).thenReturn(10L);
+        when(decreased.isExists()).thenReturn(false);
+        guard.init();
+
+        assertThatThrownBy(() -> guard.call(() -> {
+            throw HttpClientErrorException.create(HttpStatus.FORBIDDEN, "Forbidden", null, null, null);
+        })).isInstanceOf(HttpClientErrorException.class);
+
+        assertThat(guard.isCircuitOpen()).isFalse();
+        verify(rate, never()).set(anyLong());
+        verify(limiter, never()).setRate(any(), anyLong(), anyLong(), any());
+        assertThat(meterRegistry.get("wb.upstream.calls").tag("outcome", "success").counter().count()).isZero();
+    }
+
+    @Test
+    void call_shouldIncreaseRateAfterNotFound() {
+        when(rate.get()).thenReturn(10L);
+        when(decreased.isExists()).thenReturn(false);
+        guard.init();
+
+        assertThatThrownBy(() -> guard.call(() -> {
+            throw HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null);
+        })).isInstanceOf(HttpClientErrorException.class);
+
+        verify(rate).set(11);
+    }
+
+    @Test
+    void call_shouldRejectWhenRatePermitIsNotGrantedInTime() {
+        when(limiter.tryAcquire(eq(1L), anyLong(), any(TimeUnit.class))).thenReturn(false);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> guard.call(calls::incrementAndGet))
+                .isInstanceOf(UpstreamUnavailableException.class)
+                .hasMessageContaining("rate limit");
+
+        assertThat(calls).hasValue(0);
+        assertThat(guard.isCircuitOpen()).isFalse();
+    }
+
+    @Test
+    void init_shouldSetSharedRateOnlyIfAbsent() {
+        guard.init();
+
+        verify(rate).compareAndSet(0, 20);
+        verify(limiter).trySetRate(RateType.OVERALL, 20, 1, RateIntervalUnit.SECONDS);
+    }
+}
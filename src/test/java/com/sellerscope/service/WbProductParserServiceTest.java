@@ -1,30 +1,60 @@
 package com.sellerscope.service;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.sellerscope.entity.ProductSnapshot;
-import com.sellerscope.repository.ProductSnapshotRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.redisson.api.RMapCache;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 import static org.mockito.Mockito.*;
 
 class WbProductParserServiceTest {
 
-    private ProductSnapshotRepository repository;
+    private SnapshotStorageService storage;
     private RedissonClient redissonClient;
+    private LatestSnapshotCache latestSnapshotCache;
+    private RestTemplate restTemplate;
     private WbProductParserService service;
 
     @BeforeEach
     void setUp() {
-        repository = mock(ProductSnapshotRepository.class);
+        storage = mock(SnapshotStorageService.class);
         redissonClient = mock(RedissonClient.class);
-        service = new WbProductParserService(repository, redissonClient);
+        latestSnapshotCache = mock(LatestSnapshotCache.class);
+        restTemplate = new RestTemplate();
+        service = new WbProductParserService(storage, redissonClient, latestSnapshotCache, restTemplate, passThroughGuard());
     }
 
     @Test
@@ -53,8 +83,8 @@ class WbProductParserServiceTest {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        when(repository.findByProductIdOrderByCreatedAtDesc("123"))
-                .thenReturn(List.of(last));
+        when(storage.findLatest("123"))
+                .thenReturn(Optional.of(last));
 
         boolean changed = service.compareWithLastSnapshot(current);
 
@@ -76,8 +106,8 @@ class WbProductParserServiceTest {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        when(repository.findByProductIdOrderByCreatedAtDesc("456"))
-                .thenReturn(List.of(snap));
+        when(storage.findLatest("456"))
+                .thenReturn(Optional.of(snap));
 
         boolean changed = service.compareWithLastSnapshot(snap);
         assertThat(changed).isFalse();
@@ -98,11 +128,311 @@ class WbProductParserServiceTest {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        when(repository.findByProductIdOrderByCreatedAtDesc("789"))
-                .thenReturn(List.of());
+        when(storage.findLatest("789"))
+                .thenReturn(Optional.empty());
 
         boolean changed = service.compareWithLastSnapshot(current);
         assertThat(changed).isTrue();
         assertThat(current.getChangedFields()).isNotEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldCompareWithCachedSnapshotWithoutQueryingDatabase() {
+        ProductSnapshot cached = ProductSnapshot.builder()
+                .productId("321")
+                .price(BigDecimal.valueOf(100))
+                .reviewCount(10)
+                .rating(4.5)
+                .photoHash("abc")
+                .descriptionHash("xyz")
+                .build();
+        ProductSnapshot current = ProductSnapshot.builder()
+                .productId("321")
+                .price(BigDecimal.valueOf(100))
+                .reviewCount(11)
+                .rating(4.5)
+                .photoHash("abc")
+                .descriptionHash("xyz")
+                .changedFields(new HashSet<>())
+                .build();
+
+        when(latestSnapshotCache.get("321")).thenReturn(Optional.of(cached));
+
+        boolean changed = service.compareWithLastSnapshot(current);
+
+        assertThat(changed).isTrue();
+        assertThat(current.getChangedFields()).containsExactly("reviewCount");
+        verifyNoInteractions(storage);
+    }
+
+    @Test
+    void shouldSplitBatchResponseIntoSnapshotsPerArticle() throws Exception {
+        String json = """
+                {"data": {"products": [
+                  {"id": 111, "name": "First", "priceU": 12990, "feedbacks": 7, "rating": 4.8,
+                   "photos": ["a.jpg", "b.jpg"], "description": "desc"},
+                  {"id": 222, "name": "Second", "priceU": 50000, "feedbacks": 0, "rating": 0}
+                ]}}
+                """;
+
+        BatchFetchResult result = service.parseProducts(json, List.of("111", "222", "333"));
+
+        assertThat(result.snapshots()).containsOnlyKeys("111", "222");
+        assertThat(result.missing()).containsExactly("333");
+        assertThat(result.failed()).isEmpty();
+
+        ProductSnapshot first = result.snapshots().get("111");
+        assertThat(first.getName()).isEqualTo("First");
+        assertThat(first.getPrice()).isEqualByComparingTo("129.90");
+        assertThat(first.getReviewCount()).isEqualTo(7);
+        assertThat(first.getRating()).isEqualTo(4.8);
+        assertThat(first.getPhotoHash()).isEqualTo(DigestUtils.md5DigestAsHex("a.jpg,b.jpg".getBytes(StandardCharsets.UTF_8)));
+        assertThat(first.getDescriptionHash()).isEqualTo(DigestUtils.md5DigestAsHex("desc".getBytes(StandardCharsets.UTF_8)));
+        assertThat(result.snapshots().get("222").getDescriptionHash())
+                .isEqualTo(DigestUtils.md5DigestAsHex(new byte[0]));
+    }
+
+    @Test
+    void shouldMarkProductWithInvalidPriceAsFailed() throws Exception {
+        String json = """
+                {"data": {"products": [
+                  {"id": 111, "name": "Broken", "priceU": "n/a", "feedbacks": 1, "rating": 5}
+                ]}}
+                """;
+
+        BatchFetchResult result = service.parseProducts(json, List.of("111"));
+
+        assertThat(result.snapshots()).isEmpty();
+        assertThat(result.failed()).containsExactly("111");
+    }
+
+    @Test
+    void shouldMarkProductWithoutNameAsFailed() throws Exception {
+        String json = """
+                {"data": {"products": [
+                  {"id": 111, "priceU": 100, "feedbacks": 1, "rating": 5}
+                ]}}
+                """;
+
+        BatchFetchResult result = service.parseProducts(json, List.of("111"));
+
+        assertThat(result.snapshots()).isEmpty();
+        assertThat(result.failed()).containsExactly("111");
+    }
+
+    @Test
+    void fetchSnapshotsAsync_shouldPublishComparedSnapshotPerBatch() throws Exception {
+        AtomicInteger requests = respondWithRequestedArticles();
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        service.fetchSnapshotsAsync(List.of("1", "2", "3", "2")).subscribe(subscriber);
+        subscriber.done.get(5, TimeUnit.SECONDS);
+
+        assertThat(requests).hasValue(2);
+        assertThat(subscriber.results).hasSize(2);
+        assertThat(subscriber.results.get(0).snapshots()).containsOnlyKeys("1", "2");
+        assertThat(subscriber.results.get(1).snapshots()).containsOnlyKeys("3");
+        assertThat(subscriber.results).allSatisfy(result -> assertThat(result.snapshots().values())
+                .allSatisfy(snapshot -> assertThat(snapshot.getChangedFields()).containsExactly("new")));
+    }
+
+    @Test
+    void fetchSnapshotsAsync_shouldNotRunAheadOfSubscriberDemand() throws Exception {
+        AtomicInteger requests = respondWithRequestedArticles();
+        ReflectionTestUtils.setField(service, "batchSize", 1);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        service.fetchSnapshotsAsync(List.of("1", "2", "3", "4", "5", "6", "7", "8")).subscribe(subscriber);
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        // Один пакет отдан подписчику, ещё два ждут в буфере, один запрошен и ждёт места в буфере
+        assertThat(requests.get()).isBetween(1, 4);
+        assertThat(subscriber.results).hasSize(1);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.done.get(5, TimeUnit.SECONDS);
+
+        assertThat(requests).hasValue(8);
+        assertThat(subscriber.results).hasSize(8);
+    }
+
+    @Test
+    void fetchSnapshotAsync_shouldFetchWithoutLockingArticle() {
+        MockRestServiceServer.bindTo(restTemplate).build()
+                .expect(requestTo(endsWith("nm=111")))
+                .andRespond(withSuccess("{\"data\": {\"products\": [{\"id\": 111, \"name\": \"P\", \"priceU\": 100}]}}",
+                        MediaType.APPLICATION_JSON));
+
+        CompletableFuture<ProductSnapshot> result = service.fetchSnapshotAsync("111");
+
+        assertThat(result).succeedsWithin(5, TimeUnit.SECONDS)
+                .satisfies(snapshot -> assertThat(snapshot.isChanged()).isTrue());
+        verifyNoInteractions(redissonClient);
+    }
+
+    @Test
+    void fetchSnapshotAsync_shouldCompleteExceptionallyWhenProductIsMissing() {
+        MockRestServiceServer.bindTo(restTemplate).build()
+                .expect(requestTo(endsWith("nm=111")))
+                .andRespond(withSuccess("{\"data\": {\"products\": []}}", MediaType.APPLICATION_JSON));
+
+        CompletableFuture<ProductSnapshot> result = service.fetchSnapshotAsync("111");
+
+        assertThat(result).failsWithin(5, TimeUnit.SECONDS)
+                .withThrowableThat()
+                .withMessageContaining("Error processing article: 111");
+    }
+
+    @Test
+    void fetchSnapshotsByArticles_shouldFailBatchRejectedByUpstreamGuard() {
+        UpstreamGuard guard = mock(UpstreamGuard.class);
+        when(guard.call(any())).thenThrow(new UpstreamUnavailableException("Wildberries circuit is open"));
+        service = new WbProductParserService(storage, redissonClient, latestSnapshotCache, restTemplate, guard);
+
+        BatchFetchResult result = service.fetchSnapshotsByArticles(List.of("1", "2"));
+
+        assertThat(result.snapshots()).isEmpty();
+        assertThat(result.failed()).containsExactly("1", "2");
+    }
+
+    @SuppressWarnings("unchecked")
+    static UpstreamGuard passThroughGuard() {
+        UpstreamGuard guard = mock(UpstreamGuard.class);
+        when(guard.call(any())).thenAnswer(invocation -> ((Supplier<Object>) invocation.getArgument(0)).get());
+        return guard;
+    }
+
+    @Test
+    void fetchSnapshotsByArticles_shouldShortCircuitProductsWithKnownFingerprint() throws Exception {
+        String json = """
+                {"data": {"products": [
+                  {"id": 1, "name": "P1", "priceU": 100, "stocks": [{"qty": 3}]},
+                  {"id": 2, "name": "P2", "priceU": 200}
+                ]}}
+                """;
+        String first = fingerprintOf(json, "1");
+        when(latestSnapshotCache.getFingerprints(List.of("1", "2"))).thenReturn(Map.of("1", first));
+        MockRestServiceServer.bindTo(restTemplate).build()
+                .expect(requestTo(endsWith("nm=1;2")))
+                .andRespond(withSuccess(json, MediaType.APPLICATION_JSON));
+
+        BatchFetchResult result = service.fetchSnapshotsByArticles(List.of("1", "2"));
+
+        assertThat(result.unchanged()).containsExactly("1");
+        assertThat(result.snapshots()).containsOnlyKeys("2");
+        assertThat(result.fingerprints()).containsOnlyKeys("2");
+        verify(latestSnapshotCache).getAll(Set.of("2"));
+    }
+
+    @Test
+    void fetchSnapshotsByArticles_shouldRememberFingerprintAndValidatorWhenNothingChanged() throws Exception {
+        String json = "{\"data\": {\"products\": [{\"id\": 1, \"name\": \"P1\", \"priceU\": 100}]}}";
+        ProductSnapshot latest = ProductSnapshot.builder()
+                .id(7L)
+                .productId("1")
+                .price(BigDecimal.ONE)
+                .photoHash(DigestUtils.md5DigestAsHex(new byte[0]))
+                .descriptionHash(DigestUtils.md5DigestAsHex(new byte[0]))
+                .build();
+        when(latestSnapshotCache.getAll(Set.of("1"))).thenReturn(Map.of("1", latest));
+        RMapCache<String, String> validators = validators();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"v1\"");
+        MockRestServiceServer.bindTo(restTemplate).build()
+                .expect(requestTo(endsWith("nm=1")))
+                .andRespond(withSuccess(json, MediaType.APPLICATION_JSON).headers(headers));
+
+        BatchFetchResult result = service.fetchSnapshotsByArticles(List.of("1"));
+
+        assertThat(result.snapshots().get("1").isChanged()).isFalse();
+        verify(latestSnapshotCache).putAll(List.of(latest), Map.of("1", fingerprintOf(json, "1")));
+        verify(validators).fastPut("1", "E\"v1\"", 24, TimeUnit.HOURS);
+    }
+
+    @Test
+    void fetchSnapshotsByArticles_shouldSendConditionalRequestAndTreat304AsUnchanged() {
+        when(latestSnapshotCache.getFingerprints(List.of("1", "2"))).thenReturn(Map.of("1", "a", "2", "b"));
+        RMapCache<String, String> validators = validators();
+        when(validators.get("1;2")).thenReturn("E\"v1\"");
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(requestTo(endsWith("nm=1;2")))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        BatchFetchResult result = service.fetchSnapshotsByArticles(List.of("1", "2"));
+
+        server.verify();
+        assertThat(result.unchanged()).containsExactly("1", "2");
+        assertThat(result.snapshots()).isEmpty();
+        verify(latestSnapshotCache, never()).getAll(anyCollection());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RMapCache<String, String> validators() {
+        RMapCache<String, String> validators = mock(RMapCache.class);
+        when(redissonClient.<String, String>getMapCache(WbProductParserService.VALIDATOR_MAP, StringCodec.INSTANCE))
+                .thenReturn(validators);
+        return validators;
+    }
+
+    private static String fingerprintOf(String json, String article) throws Exception {
+        return new CardResponseReader(new JsonFactory()).read(json).get(article).fingerprint();
+    }
+
+    // Отвечает карточками ровно тех артикулов, что перечислены в параметре nm
+    private AtomicInteger respondWithRequestedArticles() {
+        AtomicInteger requests = new AtomicInteger();
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+        server.expect(ExpectedCount.manyTimes(), method(org.springframework.http.HttpMethod.GET))
+                .andRespond(request -> {
+                    requests.incrementAndGet();
+                    String query = request.getURI().getQuery();
+                    String[] articles = query.substring(query.indexOf("nm=") + 3).split(";");
+                    StringBuilder products = new StringBuilder();
+                    for (String article : articles) {
+                        if (!products.isEmpty()) {
+                            products.append(',');
+                        }
+                        products.append("{\"id\": ").append(article)
+                                .append(", \"name\": \"P").append(article).append("\", \"priceU\": 100}");
+                    }
+                    return withSuccess("{\"data\": {\"products\": [" + products + "]}}", MediaType.APPLICATION_JSON)
+                            .createResponse(request);
+                });
+        return requests;
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<BatchFetchResult> {
+
+        private final long initialDemand;
+        private final List<BatchFetchResult> results = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile Flow.Subscription subscription;
+
+        RecordingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialDemand);
+        }
+
+        @Override
+        public void onNext(BatchFetchResult item) {
+            results.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+}